@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mobvoi.design.demo;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.ticwear.design.demo.PreferenceXml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import ticwear.design.preference.CompiledPreferences;
+import ticwear.design.preference.DialogPreference;
+import ticwear.design.preference.ListPreference;
+import ticwear.design.preference.Preference;
+import ticwear.design.preference.PreferenceGroup;
+import ticwear.design.preference.PreferenceManager;
+import ticwear.design.preference.PreferenceScreen;
+import ticwear.design.preference.TwoStatePreference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks every hierarchy compiled by preference-compiler.gradle against the one
+ * inflated from its XML: the preferences, their attributes and order, and the
+ * default values they write.
+ *
+ * Created by tankery on 10/18/16.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompiledPreferencesTest {
+
+    private static final String COMPILED_PREFERENCES = "compiled_preferences_test";
+    private static final String INFLATED_PREFERENCES = "inflated_preferences_test";
+
+    private Activity mActivity;
+
+    @Before
+    public void setUp() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Intent intent = new Intent(instrumentation.getTargetContext(), MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        mActivity = instrumentation.startActivitySync(intent);
+    }
+
+    @After
+    public void tearDown() {
+        clearPreferences(COMPILED_PREFERENCES);
+        clearPreferences(INFLATED_PREFERENCES);
+        mActivity.finish();
+    }
+
+    @Test
+    public void testCompilesDemoPreferences() throws Exception {
+        assertTrue(getCompiledPreferences().contains(PreferenceXml.preferences_power_save));
+    }
+
+    @Test
+    public void testMatchesXml() throws Exception {
+        for (CompiledPreferences compiled : getCompiledPreferences()) {
+            clearPreferences(COMPILED_PREFERENCES);
+            clearPreferences(INFLATED_PREFERENCES);
+
+            PreferenceManager compiledManager = createPreferenceManager(COMPILED_PREFERENCES);
+            PreferenceScreen compiledScreen =
+                    compiledManager.inflateFromCompiled(mActivity, compiled);
+            PreferenceManager inflatedManager = createPreferenceManager(INFLATED_PREFERENCES);
+            PreferenceScreen inflatedScreen = inflatedManager.inflateFromResource(
+                    mActivity, compiled.getXmlResourceId(), null);
+
+            assertSamePreference(compiled + ":", compiledScreen, inflatedScreen);
+            assertEquals(compiled + ": default values",
+                    inflatedManager.getSharedPreferences().getAll(),
+                    compiledManager.getSharedPreferences().getAll());
+        }
+    }
+
+    @Test
+    public void testWritesDefaultValues() throws Exception {
+        PreferenceManager manager = createPreferenceManager(COMPILED_PREFERENCES);
+        manager.inflateFromCompiled(mActivity, PreferenceXml.preferences_power_save);
+
+        Map<String, ?> values = manager.getSharedPreferences().getAll();
+        assertEquals(Boolean.FALSE, values.get("power_save_mode"));
+        assertEquals(Boolean.TRUE, values.get("auto_power_save_mode"));
+        assertEquals("15", values.get("auto_power_save_level"));
+        assertEquals(Boolean.TRUE, values.get("wifi_power_save_mode"));
+        // Not persistent.
+        assertFalse(values.containsKey("screen_always_on"));
+    }
+
+    private static List<CompiledPreferences> getCompiledPreferences() throws Exception {
+        List<CompiledPreferences> compiledList = new ArrayList<>();
+        for (Field field : PreferenceXml.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers())
+                    && CompiledPreferences.class.isAssignableFrom(field.getType())) {
+                compiledList.add((CompiledPreferences) field.get(null));
+            }
+        }
+        return compiledList;
+    }
+
+    private PreferenceManager createPreferenceManager(String sharedPreferencesName) {
+        PreferenceManager manager = new PreferenceManager(mActivity, 100);
+        manager.setSharedPreferencesName(sharedPreferencesName);
+        return manager;
+    }
+
+    private void clearPreferences(String sharedPreferencesName) {
+        SharedPreferences sharedPreferences =
+                mActivity.getSharedPreferences(sharedPreferencesName, Activity.MODE_PRIVATE);
+        sharedPreferences.edit().clear().commit();
+    }
+
+    private static void assertSamePreference(String path, Preference compiled,
+                                             Preference inflated) {
+        path = path + "/" + inflated.getKey();
+        assertEquals(path + " class", inflated.getClass(), compiled.getClass());
+        assertEquals(path + " key", inflated.getKey(), compiled.getKey());
+        assertEquals(path + " title", string(inflated.getTitle()), string(compiled.getTitle()));
+        assertEquals(path + " summary",
+                string(inflated.getSummary()), string(compiled.getSummary()));
+        assertEquals(path + " order", inflated.getOrder(), compiled.getOrder());
+        assertEquals(path + " enabled", inflated.isEnabled(), compiled.isEnabled());
+        assertEquals(path + " selectable", inflated.isSelectable(), compiled.isSelectable());
+        assertEquals(path + " persistent", inflated.isPersistent(), compiled.isPersistent());
+        assertEquals(path + " dependency", inflated.getDependency(), compiled.getDependency());
+        assertEquals(path + " fragment", inflated.getFragment(), compiled.getFragment());
+        assertEquals(path + " layout",
+                inflated.getLayoutResource(), compiled.getLayoutResource());
+        assertEquals(path + " widget layout",
+                inflated.getWidgetLayoutResource(), compiled.getWidgetLayoutResource());
+
+        if (inflated instanceof TwoStatePreference) {
+            TwoStatePreference compiledTwoState = (TwoStatePreference) compiled;
+            TwoStatePreference inflatedTwoState = (TwoStatePreference) inflated;
+            assertEquals(path + " checked",
+                    inflatedTwoState.isChecked(), compiledTwoState.isChecked());
+            assertEquals(path + " summary on", string(inflatedTwoState.getSummaryOn()),
+                    string(compiledTwoState.getSummaryOn()));
+            assertEquals(path + " summary off", string(inflatedTwoState.getSummaryOff()),
+                    string(compiledTwoState.getSummaryOff()));
+            assertEquals(path + " disable dependents state",
+                    inflatedTwoState.getDisableDependentsState(),
+                    compiledTwoState.getDisableDependentsState());
+        }
+        if (inflated instanceof DialogPreference) {
+            DialogPreference compiledDialog = (DialogPreference) compiled;
+            DialogPreference inflatedDialog = (DialogPreference) inflated;
+            assertEquals(path + " dialog title", string(inflatedDialog.getDialogTitle()),
+                    string(compiledDialog.getDialogTitle()));
+            assertEquals(path + " dialog message", string(inflatedDialog.getDialogMessage()),
+                    string(compiledDialog.getDialogMessage()));
+        }
+        if (inflated instanceof ListPreference) {
+            ListPreference compiledList = (ListPreference) compiled;
+            ListPreference inflatedList = (ListPreference) inflated;
+            assertEquals(path + " value", inflatedList.getValue(), compiledList.getValue());
+            assertEquals(path + " entries", strings(inflatedList.getEntries()),
+                    strings(compiledList.getEntries()));
+            assertEquals(path + " entry values", strings(inflatedList.getEntryValues()),
+                    strings(compiledList.getEntryValues()));
+        }
+        if (inflated instanceof PreferenceGroup) {
+            PreferenceGroup compiledGroup = (PreferenceGroup) compiled;
+            PreferenceGroup inflatedGroup = (PreferenceGroup) inflated;
+            assertEquals(path + " ordering as added",
+                    inflatedGroup.isOrderingAsAdded(), compiledGroup.isOrderingAsAdded());
+            assertEquals(path + " children",
+                    inflatedGroup.getPreferenceCount(), compiledGroup.getPreferenceCount());
+            for (int i = 0; i < inflatedGroup.getPreferenceCount(); i++) {
+                assertSamePreference(path, compiledGroup.getPreference(i),
+                        inflatedGroup.getPreference(i));
+            }
+        }
+    }
+
+    private static String string(CharSequence text) {
+        return text == null ? null : text.toString();
+    }
+
+    private static List<String> strings(CharSequence[] texts) {
+        if (texts == null) {
+            return null;
+        }
+        String[] strings = new String[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            strings[i] = string(texts[i]);
+        }
+        return Arrays.asList(strings);
+    }
+}
@@ -18,6 +18,7 @@ package com.mobvoi.design.demo.fragments;
 
 import android.os.Bundle;
 
+import com.ticwear.design.demo.PreferenceXml;
 import com.ticwear.design.demo.R;
 
 import ticwear.design.preference.PreferenceFragment;
@@ -36,6 +37,8 @@ public class SettingsFragment extends PreferenceFragment {
             addPreferencesFromResource(R.xml.preferences);
         } else if ("about".equals(settings)) {
             addPreferencesFromResource(R.xml.preferences_about);
+        } else if ("power_save".equals(settings)) {
+            setPreferencesFromCompiled(PreferenceXml.preferences_power_save);
         }
     }
 }
\ No newline at end of file
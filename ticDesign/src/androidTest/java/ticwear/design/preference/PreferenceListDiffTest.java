@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextThemeWrapper;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import ticwear.design.R;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replaying the notifications dispatched for two preference lists on the old list
+ * must give the new one, item by item.
+ *
+ * Created by tankery on 10/18/16.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreferenceListDiffTest {
+
+    private static final long SEED = 20161018L;
+    private static final int SEQUENCES = 20000;
+    private static final int MAX_OLD_SIZE = 12;
+    private static final int MAX_EDITS = 8;
+
+    private static final int KEYED_COUNT = 24;
+    private static final int UNKEYED_COUNT = 8;
+
+    // Keyed preferences, and their replacements of the same class and key.
+    private final List<Preference> mKeyed = new ArrayList<>();
+    private final List<Preference> mTwins = new ArrayList<>();
+    private final List<Preference> mUnkeyed = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(
+                InstrumentationRegistry.getTargetContext(), R.style.Theme_Ticwear);
+        for (int i = 0; i < KEYED_COUNT; i++) {
+            // Some keys are shared by two classes, which must not be taken as the same item.
+            String key = "key" + (i / 2);
+            mKeyed.add(newPreference(context, key, i % 2 == 0));
+            mTwins.add(newPreference(context, key, i % 2 == 0));
+        }
+        for (int i = 0; i < UNKEYED_COUNT; i++) {
+            mUnkeyed.add(newPreference(context, null, i % 2 == 0));
+        }
+    }
+
+    @Test
+    public void testSameListDispatchesNothing() {
+        List<Preference> list = new ArrayList<>(mKeyed.subList(0, 5));
+        RecordingAdapter adapter = new RecordingAdapter(list);
+
+        PreferenceListDiff.dispatch(list, new ArrayList<>(list), adapter);
+
+        assertEquals(0, adapter.mNotifyCount);
+    }
+
+    @Test
+    public void testReplacementIsChange() {
+        List<Preference> oldList = new ArrayList<>(mKeyed.subList(0, 3));
+        List<Preference> newList = new ArrayList<>(oldList);
+        newList.set(1, mTwins.get(1));
+        RecordingAdapter adapter = new RecordingAdapter(oldList);
+
+        PreferenceListDiff.dispatch(oldList, newList, adapter);
+
+        assertEquals(1, adapter.mNotifyCount);
+        assertEquals(1, adapter.mChangedCount);
+        adapter.assertReplayed(oldList, newList);
+    }
+
+    @Test
+    public void testMovedPreferenceIsMove() {
+        List<Preference> oldList = new ArrayList<>(mKeyed.subList(0, 4));
+        List<Preference> newList = new ArrayList<>(oldList);
+        newList.add(newList.remove(0));
+        RecordingAdapter adapter = new RecordingAdapter(oldList);
+
+        PreferenceListDiff.dispatch(oldList, newList, adapter);
+
+        assertEquals(1, adapter.mNotifyCount);
+        assertEquals(1, adapter.mMovedCount);
+        adapter.assertReplayed(oldList, newList);
+    }
+
+    @Test
+    public void testRandomEditSequences() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < SEQUENCES; i++) {
+            List<Preference> oldList = randomList(random);
+            List<Preference> newList = randomEdits(random, oldList);
+            RecordingAdapter adapter = new RecordingAdapter(oldList);
+
+            PreferenceListDiff.dispatch(oldList, newList, adapter);
+
+            adapter.assertReplayed(oldList, newList);
+        }
+    }
+
+    private static Preference newPreference(Context context, String key, boolean plain) {
+        Preference preference = plain
+                ? new Preference(context) : new CheckBoxPreference(context);
+        preference.setKey(key);
+        return preference;
+    }
+
+    private List<Preference> randomList(Random random) {
+        List<Preference> candidates = new ArrayList<>(mKeyed);
+        candidates.addAll(mUnkeyed);
+        Collections.shuffle(candidates, random);
+        return new ArrayList<>(candidates.subList(0, random.nextInt(MAX_OLD_SIZE + 1)));
+    }
+
+    private List<Preference> randomEdits(Random random, List<Preference> oldList) {
+        List<Preference> list = new ArrayList<>(oldList);
+        int edits = random.nextInt(MAX_EDITS + 1);
+        for (int i = 0; i < edits; i++) {
+            int index = list.isEmpty() ? 0 : random.nextInt(list.size());
+            switch (random.nextInt(4)) {
+                case 0:
+                    if (!list.isEmpty()) {
+                        list.remove(index);
+                    }
+                    break;
+                case 1: {
+                    Preference unused = randomUnused(random, list);
+                    if (unused != null) {
+                        list.add(random.nextInt(list.size() + 1), unused);
+                    }
+                    break;
+                }
+                case 2:
+                    if (!list.isEmpty()) {
+                        Preference preference = list.remove(index);
+                        list.add(random.nextInt(list.size() + 1), preference);
+                    }
+                    break;
+                case 3:
+                    if (!list.isEmpty()) {
+                        list.set(index, replacementOf(list.get(index)));
+                    }
+                    break;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return a preference not in the list, that has no same item in the list either.
+     */
+    private Preference randomUnused(Random random, List<Preference> list) {
+        List<Preference> candidates = new ArrayList<>();
+        for (int i = 0; i < KEYED_COUNT; i++) {
+            if (!list.contains(mKeyed.get(i)) && !list.contains(mTwins.get(i))) {
+                candidates.add(random.nextBoolean() ? mKeyed.get(i) : mTwins.get(i));
+            }
+        }
+        for (Preference preference : mUnkeyed) {
+            if (!list.contains(preference)) {
+                candidates.add(preference);
+            }
+        }
+        return candidates.isEmpty() ? null : candidates.get(random.nextInt(candidates.size()));
+    }
+
+    /**
+     * @return the other preference of the same class and key, or itself if it has no key.
+     */
+    private Preference replacementOf(Preference preference) {
+        int index = mKeyed.indexOf(preference);
+        if (index >= 0) {
+            return mTwins.get(index);
+        }
+        index = mTwins.indexOf(preference);
+        if (index >= 0) {
+            return mKeyed.get(index);
+        }
+        return preference;
+    }
+
+    /**
+     * Adapter that replays its notifications on a copy of the old list. Inserted and
+     * changed positions hold null, since a notification doesn't tell the new item.
+     */
+    private static class RecordingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        private final List<Preference> mItems;
+        private final List<Preference> mRemoved = new ArrayList<>();
+        private int mNotifyCount;
+        private int mChangedCount;
+        private int mMovedCount;
+
+        RecordingAdapter(List<Preference> oldList) {
+            mItems = new ArrayList<>(oldList);
+            registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    mNotifyCount++;
+                    mChangedCount++;
+                    assertRange(positionStart, itemCount, mItems.size());
+                    for (int i = positionStart; i < positionStart + itemCount; i++) {
+                        mRemoved.add(mItems.set(i, null));
+                    }
+                }
+
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mNotifyCount++;
+                    assertRange(positionStart, itemCount, mItems.size() + itemCount);
+                    for (int i = 0; i < itemCount; i++) {
+                        mItems.add(positionStart, null);
+                    }
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mNotifyCount++;
+                    assertRange(positionStart, itemCount, mItems.size());
+                    for (int i = 0; i < itemCount; i++) {
+                        mRemoved.add(mItems.remove(positionStart));
+                    }
+                }
+
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    mNotifyCount++;
+                    mMovedCount++;
+                    assertEquals(1, itemCount);
+                    assertRange(fromPosition, 1, mItems.size());
+                    assertRange(toPosition, 1, mItems.size());
+                    mItems.add(toPosition, mItems.remove(fromPosition));
+                }
+            });
+        }
+
+        private static void assertRange(int positionStart, int itemCount, int size) {
+            assertTrue(itemCount > 0);
+            assertTrue(positionStart >= 0 && positionStart + itemCount <= size);
+        }
+
+        void assertReplayed(List<Preference> oldList, List<Preference> newList) {
+            String message = "from " + keysOf(oldList) + " to " + keysOf(newList);
+            assertEquals(message, newList.size(), mItems.size());
+            for (int i = 0; i < newList.size(); i++) {
+                Preference item = mItems.get(i);
+                if (item != null) {
+                    assertSame(message, newList.get(i), item);
+                } else {
+                    // Inserted or changed, only a preference not kept can go here.
+                    assertFalse(message, containsIdentity(mItems, newList.get(i)));
+                }
+            }
+            for (Preference removed : mRemoved) {
+                // A kept preference must be moved, not removed and inserted again.
+                assertFalse(message, containsIdentity(newList, removed));
+            }
+        }
+
+        private static boolean containsIdentity(List<Preference> list, Preference preference) {
+            for (Preference item : list) {
+                if (item == preference) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String keysOf(List<Preference> list) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Preference preference : list) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(preference.getClass().getSimpleName())
+                        .append(':').append(preference.getKey())
+                        .append('@').append(System.identityHashCode(preference));
+            }
+            return builder.append(']').toString();
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getItemCount() {
+            return mItems.size();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * {@link IntrinsicBlur} approximates the golden images with a gaussian kernel.
+ * RenderScript is not available on the JVM, so this one runs on a device.
+ *
+ * Created by tankery on 10/18/16.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IntrinsicBlurTest extends BlurEngineTestCase {
+
+    @Override
+    protected BlurEngine createEngine() {
+        IntrinsicBlur engine = IntrinsicBlur.create(InstrumentationRegistry.getTargetContext(),
+                new StackBlur(1));
+        assertNotNull("RenderScript is not available", engine);
+        return engine;
+    }
+
+    @Override
+    protected int getMaxDifference() {
+        return 48;
+    }
+
+    @Override
+    protected double getMeanDifference() {
+        return 6;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ticwear.design.widget;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.ContextThemeWrapper;
+import android.view.Gravity;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ticwear.design.R;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Views anchored in a chain must follow the views they are anchored to, on each
+ * dependency dispatch, whether those move by their frame or by their translation.
+ *
+ * Created by tankery on 10/18/16.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CoordinatorLayoutAnchorTest {
+
+    private static final int SIZE = 400;
+    private static final int CHILD_SIZE = 50;
+    private static final int OFFSET = 30;
+
+    private CoordinatorLayout mLayout;
+    // Anchored: mMiddle to mBase, and mTop to mMiddle.
+    private View mBase;
+    private View mMiddle;
+    private View mTop;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(
+                InstrumentationRegistry.getTargetContext(), R.style.Theme_Ticwear);
+        mLayout = new CoordinatorLayout(context);
+        mBase = addChild(context, null);
+        mMiddle = addChild(context, mBase);
+        mTop = addChild(context, mMiddle);
+
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, SIZE, SIZE);
+        // Record the geometry of the laid out children.
+        mLayout.dispatchOnDependentViewChanged(false);
+    }
+
+    @Test
+    public void testChainFollowsFrameOfBase() {
+        final int middleTop = mMiddle.getTop();
+        final int topTop = mTop.getTop();
+
+        mBase.offsetTopAndBottom(OFFSET);
+        mLayout.dispatchOnDependentViewChanged(false);
+
+        assertEquals(middleTop + OFFSET, mMiddle.getTop());
+        assertEquals(topTop + OFFSET, mTop.getTop());
+    }
+
+    @Test
+    public void testChainFollowsTranslationOfBase() {
+        final int middleTop = mMiddle.getTop();
+        final int topTop = mTop.getTop();
+
+        mBase.setTranslationY(OFFSET);
+        mLayout.dispatchOnDependentViewChanged(false);
+
+        assertEquals(middleTop + OFFSET, mMiddle.getTop());
+        assertEquals(topTop + OFFSET, mTop.getTop());
+    }
+
+    @Test
+    public void testChainFollowsTranslationOfMiddle() {
+        final int middleTop = mMiddle.getTop();
+        final int topTop = mTop.getTop();
+
+        // Only the translation of the middle changes, its frame stays.
+        mMiddle.setTranslationY(OFFSET);
+        mLayout.dispatchOnDependentViewChanged(false);
+
+        assertEquals(middleTop, mMiddle.getTop());
+        assertEquals(topTop + OFFSET, mTop.getTop());
+
+        // And keeps following on later passes.
+        mMiddle.setTranslationY(0);
+        mLayout.dispatchOnDependentViewChanged(false);
+        assertEquals(topTop, mTop.getTop());
+    }
+
+    private View addChild(Context context, View anchor) {
+        View child = new View(context);
+        child.setId(View.generateViewId());
+        CoordinatorLayout.LayoutParams lp =
+                new CoordinatorLayout.LayoutParams(CHILD_SIZE, CHILD_SIZE);
+        if (anchor != null) {
+            lp.setAnchorId(anchor.getId());
+            lp.anchorGravity = Gravity.BOTTOM | Gravity.END;
+            lp.gravity = Gravity.BOTTOM | Gravity.END;
+        }
+        mLayout.addView(child, lp);
+        return child;
+    }
+}
@@ -32,5 +32,6 @@ public class DesignConfig {
     public static final boolean DEBUG_RECYCLER_VIEW = DEBUG && false;
     public static final boolean DEBUG_SCROLLBAR = DEBUG && false;
     public static final boolean DEBUG_COORDINATOR = DEBUG && false;
+    public static final boolean DEBUG_PREFERENCES = DEBUG && false;
 
 }
@@ -41,6 +41,9 @@ import android.widget.ImageButton;
 import android.widget.ListAdapter;
 import android.widget.ListView;
 
+import java.util.BitSet;
+import java.util.List;
+
 import ticwear.design.internal.app.AlertController;
 import ticwear.design.internal.app.AlertController.DelayConfirmRequest;
 import ticwear.design.utils.ThemeUtils;
@@ -869,6 +872,34 @@ public class AlertDialog extends Dialog implements DialogInterface {
             return this;
         }
 
+        /**
+         * Set a list of items to be displayed in the dialog as the content,
+         * you will be notified of the selected item via the supplied listener.
+         * The list will have a check mark displayed to the right of the text
+         * for each checked item. Clicking on an item in the list will not
+         * dismiss the dialog. Clicking on a button will dismiss the dialog.
+         * <p>
+         * Items are only retrieved from the list when they are shown, so the list
+         * can load them on demand.
+         *
+         * @param items the text of the items to be displayed in the list.
+         * @param checkedItems specifies which items are checked. It should be null in which case no
+         *        items are checked. If non null, it will be updated as items are clicked.
+         * @param listener notified when an item on the list is clicked. The dialog will not be
+         *        dismissed when an item is clicked. It will only be dismissed if clicked on a
+         *        button, if no buttons are supplied it's up to the user to dismiss the dialog.
+         *
+         * @return This Builder object to allow for chaining of calls to set methods
+         */
+        public Builder setMultiChoiceItems(List<? extends CharSequence> items, BitSet checkedItems,
+                final OnMultiChoiceClickListener listener) {
+            P.mItemList = items;
+            P.mOnCheckboxClickListener = listener;
+            P.mCheckedItemSet = checkedItems;
+            P.mIsMultiChoice = true;
+            return this;
+        }
+
         /**
          * Set a list of items to be displayed in the dialog as the content,
          * you will be notified of the selected item via the supplied listener.
@@ -970,6 +1001,32 @@ public class AlertDialog extends Dialog implements DialogInterface {
             return this;
         }
 
+        /**
+         * Set a list of items to be displayed in the dialog as the content, you will be notified of
+         * the selected item via the supplied listener. The list will have a check mark displayed to
+         * the right of the text for the checked item. Clicking on an item in the list will not
+         * dismiss the dialog. Clicking on a button will dismiss the dialog.
+         * <p>
+         * Items are only retrieved from the list when they are shown, so the list
+         * can load them on demand.
+         *
+         * @param items the items to be displayed.
+         * @param checkedItem specifies which item is checked. If -1 no items are checked.
+         * @param listener notified when an item on the list is clicked. The dialog will not be
+         *        dismissed when an item is clicked. It will only be dismissed if clicked on a
+         *        button, if no buttons are supplied it's up to the user to dismiss the dialog.
+         *
+         * @return This Builder object to allow for chaining of calls to set methods
+         */
+        public Builder setSingleChoiceItems(List<? extends CharSequence> items, int checkedItem,
+                final OnClickListener listener) {
+            P.mItemList = items;
+            P.mOnClickListener = listener;
+            P.mCheckedItem = checkedItem;
+            P.mIsSingleChoice = true;
+            return this;
+        }
+
         /**
          * Set a list of items to be displayed in the dialog as the content, you will be notified of
          * the selected item via the supplied listener. The list will have a check mark displayed to
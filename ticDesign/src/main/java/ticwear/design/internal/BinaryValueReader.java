@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static ticwear.design.internal.BinaryValueWriter.MAGIC;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_BOOLEAN_ARRAY;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_BOOLEAN_FALSE;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_BOOLEAN_TRUE;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_BYTE_ARRAY;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_DOUBLE;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_DOUBLE_ARRAY;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_FLOAT;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_INT;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_INT_ARRAY;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_LIST;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_LONG;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_LONG_ARRAY;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_MAP;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_NULL;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_SET;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_STRING;
+import static ticwear.design.internal.BinaryValueWriter.TYPE_STRING_ARRAY;
+import static ticwear.design.internal.BinaryValueWriter.VERSION;
+
+/**
+ * Streaming reader of the binary values written by {@link BinaryValueWriter}.
+ *
+ * Values are read back as the same types {@link XmlUtils#readValueXml} gives:
+ * maps are HashMap, lists are ArrayList and sets are HashSet.
+ *
+ * {@hide}
+ */
+public class BinaryValueReader implements Closeable {
+
+    private static final int BUFFER_LEN = 8192;
+
+    private final InputStream mIn;
+    private final byte[] mBuffer = new byte[BUFFER_LEN];
+    private int mPos;
+    private int mLimit;
+
+    private char[] mChars = new char[64];
+
+    public BinaryValueReader(InputStream in) {
+        mIn = in;
+    }
+
+    /**
+     * Read and check the stream header, must be called before the first value.
+     */
+    public void startDocument() throws IOException {
+        if (readRawInt() != MAGIC) {
+            throw new ProtocolException("Not a binary value stream");
+        }
+        int version = readVarInt();
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported binary value version " + version);
+        }
+    }
+
+    /**
+     * Read a value with its type tag.
+     */
+    public Object readValue() throws IOException {
+        int type = readType();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString();
+            case TYPE_INT:
+                return readRawInt();
+            case TYPE_LONG:
+                return readRawLong();
+            case TYPE_FLOAT:
+                return Float.intBitsToFloat(readRawInt());
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(readRawLong());
+            case TYPE_BOOLEAN_FALSE:
+                return Boolean.FALSE;
+            case TYPE_BOOLEAN_TRUE:
+                return Boolean.TRUE;
+            case TYPE_BYTE_ARRAY:
+                return readThisByteArray();
+            case TYPE_INT_ARRAY:
+                return readThisIntArray();
+            case TYPE_LONG_ARRAY:
+                return readThisLongArray();
+            case TYPE_DOUBLE_ARRAY:
+                return readThisDoubleArray();
+            case TYPE_STRING_ARRAY:
+                return readThisStringArray();
+            case TYPE_BOOLEAN_ARRAY:
+                return readThisBooleanArray();
+            case TYPE_MAP:
+                return readThisMap();
+            case TYPE_LIST:
+                return readThisList();
+            case TYPE_SET:
+                return readThisSet();
+            default:
+                throw new ProtocolException("Unknown value type: " + type);
+        }
+    }
+
+    /**
+     * Read a map value, the stream must be at a map or null value.
+     */
+    @SuppressWarnings("unchecked")
+    public HashMap<String, ?> readMap() throws IOException {
+        Object value = readValue();
+        if (value != null && !(value instanceof HashMap)) {
+            throw new ProtocolException("Expected map, found " + value.getClass());
+        }
+        return (HashMap<String, ?>) value;
+    }
+
+    private HashMap<String, Object> readThisMap() throws IOException {
+        final int N = readLength();
+        HashMap<String, Object> map = new HashMap<>(Math.max(N * 4 / 3 + 1, 16));
+        for (int i = 0; i < N; i++) {
+            String name = readString();
+            map.put(name, readValue());
+        }
+        return map;
+    }
+
+    private ArrayList<Object> readThisList() throws IOException {
+        final int N = readLength();
+        ArrayList<Object> list = new ArrayList<>(N);
+        for (int i = 0; i < N; i++) {
+            list.add(readValue());
+        }
+        return list;
+    }
+
+    private HashSet<Object> readThisSet() throws IOException {
+        final int N = readLength();
+        HashSet<Object> set = new HashSet<>(Math.max(N * 4 / 3 + 1, 16));
+        for (int i = 0; i < N; i++) {
+            set.add(readValue());
+        }
+        return set;
+    }
+
+    private byte[] readThisByteArray() throws IOException {
+        final int N = readLength();
+        byte[] array = new byte[N];
+        int read = 0;
+        while (read < N) {
+            if (mPos == mLimit) {
+                fill(1);
+            }
+            int len = Math.min(N - read, mLimit - mPos);
+            System.arraycopy(mBuffer, mPos, array, read, len);
+            mPos += len;
+            read += len;
+        }
+        return array;
+    }
+
+    private int[] readThisIntArray() throws IOException {
+        final int N = readLength();
+        int[] array = new int[N];
+        for (int i = 0; i < N; i++) {
+            array[i] = readRawInt();
+        }
+        return array;
+    }
+
+    private long[] readThisLongArray() throws IOException {
+        final int N = readLength();
+        long[] array = new long[N];
+        for (int i = 0; i < N; i++) {
+            array[i] = readRawLong();
+        }
+        return array;
+    }
+
+    private double[] readThisDoubleArray() throws IOException {
+        final int N = readLength();
+        double[] array = new double[N];
+        for (int i = 0; i < N; i++) {
+            array[i] = Double.longBitsToDouble(readRawLong());
+        }
+        return array;
+    }
+
+    private String[] readThisStringArray() throws IOException {
+        final int N = readLength();
+        String[] array = new String[N];
+        for (int i = 0; i < N; i++) {
+            array[i] = readString();
+        }
+        return array;
+    }
+
+    private boolean[] readThisBooleanArray() throws IOException {
+        final int N = readLength();
+        boolean[] array = new boolean[N];
+        for (int i = 0; i < N; i += 8) {
+            if (mPos == mLimit) {
+                fill(1);
+            }
+            int b = mBuffer[mPos++];
+            for (int j = 0; j < 8 && i + j < N; j++) {
+                array[i + j] = (b & (1 << j)) != 0;
+            }
+        }
+        return array;
+    }
+
+    private int readType() throws IOException {
+        if (mPos == mLimit) {
+            fill(1);
+        }
+        return mBuffer[mPos++] & 0xff;
+    }
+
+    private int readLength() throws IOException {
+        int length = readVarInt();
+        if (length < 0) {
+            throw new ProtocolException("Negative length " + length);
+        }
+        return length;
+    }
+
+    private int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (mPos == mLimit) {
+                fill(1);
+            }
+            int b = mBuffer[mPos++];
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ProtocolException("Malformed var-int");
+    }
+
+    private int readRawInt() throws IOException {
+        if (mLimit - mPos < 4) {
+            fill(4);
+        }
+        final byte[] buffer = mBuffer;
+        int pos = mPos;
+        mPos = pos + 4;
+        return (buffer[pos] << 24) | ((buffer[pos + 1] & 0xff) << 16) |
+                ((buffer[pos + 2] & 0xff) << 8) | (buffer[pos + 3] & 0xff);
+    }
+
+    private long readRawLong() throws IOException {
+        long high = readRawInt();
+        long low = readRawInt() & 0xffffffffL;
+        return (high << 32) | low;
+    }
+
+    private String readString() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length <= BUFFER_LEN) {
+            if (mLimit - mPos < length) {
+                fill(length);
+            }
+            String s = decodeUtf8(mBuffer, mPos, length);
+            mPos += length;
+            return s;
+        }
+
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (mPos == mLimit) {
+                fill(1);
+            }
+            int len = Math.min(length - read, mLimit - mPos);
+            System.arraycopy(mBuffer, mPos, bytes, read, len);
+            mPos += len;
+            read += len;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String decodeUtf8(byte[] bytes, int offset, int length) {
+        // Most of keys and values are ASCII, decode them without a CharsetDecoder.
+        if (mChars.length < length) {
+            mChars = new char[Math.max(length, mChars.length * 2)];
+        }
+        final char[] chars = mChars;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[offset + i];
+            if (b < 0) {
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Make sure at least {@code len} bytes (no more than buffer size) are in the buffer.
+     */
+    private void fill(int len) throws IOException {
+        int remain = mLimit - mPos;
+        if (remain > 0 && mPos > 0) {
+            System.arraycopy(mBuffer, mPos, mBuffer, 0, remain);
+        }
+        mPos = 0;
+        mLimit = remain;
+        while (mLimit < len) {
+            int read = mIn.read(mBuffer, mLimit, BUFFER_LEN - mLimit);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of binary value stream");
+            }
+            mLimit += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
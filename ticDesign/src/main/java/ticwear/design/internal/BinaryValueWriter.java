@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming writer of the compact binary form of the values supported by
+ * {@link XmlUtils#writeValueXml}. The output can be read back with {@link BinaryValueReader}.
+ *
+ * The stream starts with a header ({@link #MAGIC} and {@link #VERSION}), followed by one
+ * value. Every value is a type tag byte followed by its payload. Lengths and counts are
+ * unsigned var-ints, numbers are big-endian, strings are UTF-8 with their byte length + 1
+ * as prefix (0 is a null string).
+ *
+ * {@hide}
+ */
+public class BinaryValueWriter implements Closeable, Flushable {
+
+    static final int MAGIC = 0x54564D31; // "TVM1"
+    static final int VERSION = 1;
+
+    static final int TYPE_NULL = 0;
+    static final int TYPE_STRING = 1;
+    static final int TYPE_INT = 2;
+    static final int TYPE_LONG = 3;
+    static final int TYPE_FLOAT = 4;
+    static final int TYPE_DOUBLE = 5;
+    static final int TYPE_BOOLEAN_FALSE = 6;
+    static final int TYPE_BOOLEAN_TRUE = 7;
+    static final int TYPE_BYTE_ARRAY = 8;
+    static final int TYPE_INT_ARRAY = 9;
+    static final int TYPE_LONG_ARRAY = 10;
+    static final int TYPE_DOUBLE_ARRAY = 11;
+    static final int TYPE_STRING_ARRAY = 12;
+    static final int TYPE_BOOLEAN_ARRAY = 13;
+    static final int TYPE_MAP = 14;
+    static final int TYPE_LIST = 15;
+    static final int TYPE_SET = 16;
+
+    private static final int BUFFER_LEN = 8192;
+
+    private final OutputStream mOut;
+    private final byte[] mBuffer = new byte[BUFFER_LEN];
+    private int mPos;
+
+    public BinaryValueWriter(OutputStream out) {
+        mOut = out;
+    }
+
+    /**
+     * Write the stream header, must be called before the first value.
+     */
+    public void startDocument() throws IOException {
+        writeRawInt(MAGIC);
+        writeVarInt(VERSION);
+    }
+
+    /**
+     * Flush all buffered values to the output stream.
+     */
+    public void endDocument() throws IOException {
+        flush();
+    }
+
+    /**
+     * Write a value with its type tag.
+     *
+     * Currently supported value types are: null, String, Integer, Long, Float, Double,
+     * Boolean, byte[], int[], long[], double[], String[], boolean[], Map, List, Set,
+     * and CharSequence (written as String).
+     */
+    public void writeValue(Object v) throws IOException {
+        if (v == null) {
+            writeType(TYPE_NULL);
+        } else if (v instanceof String) {
+            writeType(TYPE_STRING);
+            writeString((String) v);
+        } else if (v instanceof Integer) {
+            writeType(TYPE_INT);
+            writeRawInt((Integer) v);
+        } else if (v instanceof Long) {
+            writeType(TYPE_LONG);
+            writeRawLong((Long) v);
+        } else if (v instanceof Float) {
+            writeType(TYPE_FLOAT);
+            writeRawInt(Float.floatToIntBits((Float) v));
+        } else if (v instanceof Double) {
+            writeType(TYPE_DOUBLE);
+            writeRawLong(Double.doubleToLongBits((Double) v));
+        } else if (v instanceof Boolean) {
+            writeType((Boolean) v ? TYPE_BOOLEAN_TRUE : TYPE_BOOLEAN_FALSE);
+        } else if (v instanceof byte[]) {
+            writeByteArray((byte[]) v);
+        } else if (v instanceof int[]) {
+            writeIntArray((int[]) v);
+        } else if (v instanceof long[]) {
+            writeLongArray((long[]) v);
+        } else if (v instanceof double[]) {
+            writeDoubleArray((double[]) v);
+        } else if (v instanceof String[]) {
+            writeStringArray((String[]) v);
+        } else if (v instanceof boolean[]) {
+            writeBooleanArray((boolean[]) v);
+        } else if (v instanceof Map) {
+            writeMap((Map) v);
+        } else if (v instanceof List) {
+            writeList((List) v);
+        } else if (v instanceof Set) {
+            writeSet((Set) v);
+        } else if (v instanceof CharSequence) {
+            // Styling information is dropped, the same as writeValueXml.
+            writeType(TYPE_STRING);
+            writeString(v.toString());
+        } else {
+            throw new RuntimeException("writeValue: unable to write value " + v);
+        }
+    }
+
+    public void writeMap(Map<?, ?> val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_MAP);
+        writeVarInt(val.size());
+        for (Map.Entry<?, ?> e : val.entrySet()) {
+            writeString((String) e.getKey());
+            writeValue(e.getValue());
+        }
+    }
+
+    public void writeList(List<?> val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_LIST);
+        final int N = val.size();
+        writeVarInt(N);
+        for (int i = 0; i < N; i++) {
+            writeValue(val.get(i));
+        }
+    }
+
+    public void writeSet(Set<?> val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_SET);
+        writeVarInt(val.size());
+        for (Object v : val) {
+            writeValue(v);
+        }
+    }
+
+    public void writeByteArray(byte[] val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_BYTE_ARRAY);
+        writeVarInt(val.length);
+        writeRawBytes(val, 0, val.length);
+    }
+
+    public void writeIntArray(int[] val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_INT_ARRAY);
+        writeVarInt(val.length);
+        for (int v : val) {
+            writeRawInt(v);
+        }
+    }
+
+    public void writeLongArray(long[] val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_LONG_ARRAY);
+        writeVarInt(val.length);
+        for (long v : val) {
+            writeRawLong(v);
+        }
+    }
+
+    public void writeDoubleArray(double[] val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_DOUBLE_ARRAY);
+        writeVarInt(val.length);
+        for (double v : val) {
+            writeRawLong(Double.doubleToLongBits(v));
+        }
+    }
+
+    public void writeStringArray(String[] val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_STRING_ARRAY);
+        writeVarInt(val.length);
+        for (String v : val) {
+            writeString(v);
+        }
+    }
+
+    public void writeBooleanArray(boolean[] val) throws IOException {
+        if (val == null) {
+            writeType(TYPE_NULL);
+            return;
+        }
+        writeType(TYPE_BOOLEAN_ARRAY);
+        final int N = val.length;
+        writeVarInt(N);
+        // Packed 8 booleans a byte, lowest bit first.
+        for (int i = 0; i < N; i += 8) {
+            int b = 0;
+            for (int j = 0; j < 8 && i + j < N; j++) {
+                if (val[i + j]) {
+                    b |= 1 << j;
+                }
+            }
+            ensure(1);
+            mBuffer[mPos++] = (byte) b;
+        }
+    }
+
+    private void writeType(int type) throws IOException {
+        ensure(1);
+        mBuffer[mPos++] = (byte) type;
+    }
+
+    private void writeVarInt(int v) throws IOException {
+        ensure(5);
+        while ((v & ~0x7f) != 0) {
+            mBuffer[mPos++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        mBuffer[mPos++] = (byte) v;
+    }
+
+    private void writeRawInt(int v) throws IOException {
+        ensure(4);
+        final byte[] buffer = mBuffer;
+        int pos = mPos;
+        buffer[pos] = (byte) (v >>> 24);
+        buffer[pos + 1] = (byte) (v >>> 16);
+        buffer[pos + 2] = (byte) (v >>> 8);
+        buffer[pos + 3] = (byte) v;
+        mPos = pos + 4;
+    }
+
+    private void writeRawLong(long v) throws IOException {
+        writeRawInt((int) (v >>> 32));
+        writeRawInt((int) v);
+    }
+
+    private void writeRawBytes(byte[] b, int off, int len) throws IOException {
+        if (len > BUFFER_LEN - mPos) {
+            flushBuffer();
+            if (len > BUFFER_LEN) {
+                mOut.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, mBuffer, mPos, len);
+        mPos += len;
+    }
+
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        final int N = s.length();
+        int utfLength = 0;
+        for (int i = 0; i < N; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                utfLength++;
+            } else if (c < 0x800) {
+                utfLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < N &&
+                    Character.isLowSurrogate(s.charAt(i + 1))) {
+                utfLength += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate is replaced by '?', the same as String.getBytes.
+                utfLength++;
+            } else {
+                utfLength += 3;
+            }
+        }
+        writeVarInt(utfLength + 1);
+
+        final byte[] buffer = mBuffer;
+        for (int i = 0; i < N; i++) {
+            if (mPos > BUFFER_LEN - 4) {
+                flushBuffer();
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer[mPos++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[mPos++] = (byte) (0xc0 | (c >> 6));
+                buffer[mPos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < N &&
+                    Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer[mPos++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[mPos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[mPos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[mPos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer[mPos++] = '?';
+            } else {
+                buffer[mPos++] = (byte) (0xe0 | (c >> 12));
+                buffer[mPos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[mPos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void ensure(int len) throws IOException {
+        if (mPos + len > BUFFER_LEN) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mPos > 0) {
+            mOut.write(mBuffer, 0, mPos);
+            mPos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        mOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        mOut.close();
+    }
+}
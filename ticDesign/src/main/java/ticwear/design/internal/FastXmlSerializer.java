@@ -24,18 +24,25 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
 
 /**
  * This is a quick and dirty implementation of XmlSerializer that isn't horribly
  * painfully slow like the normal one.  It only does what is needed for the
  * specific XML files being written with it.
+ *
+ * When the output is UTF-8 bytes (an OutputStream with "utf-8" encoding, a
+ * ByteBuffer or a channel), text is encoded straight into the byte buffer,
+ * without going through the char buffer and a CharsetEncoder.
  */
 public class FastXmlSerializer implements XmlSerializer {
     private static final String ESCAPE_TABLE[] = new String[] {
@@ -49,8 +56,20 @@ public class FastXmlSerializer implements XmlSerializer {
         null,     null,     null,     null,     "&lt;",   null,     "&gt;",   null,  // 56-63
     };
 
+    private static final byte ESCAPE_BYTES[][] = new byte[ESCAPE_TABLE.length][];
+    static {
+        for (int i = 0; i < ESCAPE_TABLE.length; i++) {
+            if (ESCAPE_TABLE[i] != null) {
+                ESCAPE_BYTES[i] = ESCAPE_TABLE[i].getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+    }
+
     private static final int BUFFER_LEN = 8192;
 
+    // Longest bytes appended for one char: an escape, or a surrogate pair in UTF-8.
+    private static final int MAX_BYTES_PER_CHAR = 6;
+
     private static String sSpace = "                                                              ";
 
     private final char[] mText = new char[BUFFER_LEN];
@@ -62,13 +81,30 @@ public class FastXmlSerializer implements XmlSerializer {
     private CharsetEncoder mCharset;
     private ByteBuffer mBytes = ByteBuffer.allocate(BUFFER_LEN);
 
+    // UTF-8 fast path, text is encoded directly into mBytes.
+    private boolean mUtf8;
+    private int mBytePos;
+    private ByteBuffer mOutputBuffer;
+    private WritableByteChannel mOutputChannel;
+
     private boolean mIndent = false;
+    private boolean mPackArrays = false;
     private boolean mInTag;
 
     private int mNesting = 0;
     private boolean mLineStart = true;
 
     private void append(char c) throws IOException {
+        if (mUtf8 && c < 0x80) {
+            if (mBytePos >= BUFFER_LEN) {
+                flushBytes();
+            }
+            mBytes.array()[mBytePos++] = (byte) c;
+            return;
+        } else if (mUtf8) {
+            appendUtf8(String.valueOf(c), null, 0, 1, false);
+            return;
+        }
         int pos = mPos;
         if (pos >= (BUFFER_LEN-1)) {
             flush();
@@ -79,6 +115,10 @@ public class FastXmlSerializer implements XmlSerializer {
     }
 
     private void append(String str, int i, final int length) throws IOException {
+        if (mUtf8) {
+            appendUtf8(str, null, i, i + length, false);
+            return;
+        }
         if (length > BUFFER_LEN) {
             final int end = i + length;
             while (i < end) {
@@ -98,6 +138,10 @@ public class FastXmlSerializer implements XmlSerializer {
     }
 
     private void append(char[] buf, int i, final int length) throws IOException {
+        if (mUtf8) {
+            appendUtf8(null, buf, i, i + length, false);
+            return;
+        }
         if (length > BUFFER_LEN) {
             final int end = i + length;
             while (i < end) {
@@ -130,6 +174,10 @@ public class FastXmlSerializer implements XmlSerializer {
 
     private void escapeAndAppendString(final String string) throws IOException {
         final int N = string.length();
+        if (mUtf8) {
+            appendUtf8(string, null, 0, N, true);
+            return;
+        }
         final char NE = (char)ESCAPE_TABLE.length;
         final String[] escapes = ESCAPE_TABLE;
         int lastPos = 0;
@@ -147,6 +195,10 @@ public class FastXmlSerializer implements XmlSerializer {
     }
 
     private void escapeAndAppendString(char[] buf, int start, int len) throws IOException {
+        if (mUtf8) {
+            appendUtf8(null, buf, start, start + len, true);
+            return;
+        }
         final char NE = (char)ESCAPE_TABLE.length;
         final String[] escapes = ESCAPE_TABLE;
         int end = start+len;
@@ -164,6 +216,58 @@ public class FastXmlSerializer implements XmlSerializer {
         if (lastPos < pos) append(buf, lastPos, pos-lastPos);
     }
 
+    /**
+     * Encode chars of str (or buf if str is null) from i to end into mBytes as UTF-8,
+     * with the XML escapes applied if escape is true.
+     */
+    private void appendUtf8(String str, char[] buf, int i, final int end, boolean escape)
+            throws IOException {
+        final byte[] bytes = mBytes.array();
+        final byte[][] escapes = ESCAPE_BYTES;
+        final char NE = (char)escapes.length;
+        int pos = mBytePos;
+        while (i < end) {
+            if (pos > BUFFER_LEN - MAX_BYTES_PER_CHAR) {
+                mBytePos = pos;
+                flushBytes();
+                pos = 0;
+            }
+            char c = str != null ? str.charAt(i) : buf[i];
+            i++;
+            if (c < 0x80) {
+                byte[] e;
+                if (escape && c < NE && (e = escapes[c]) != null) {
+                    for (byte b : e) {
+                        bytes[pos++] = b;
+                    }
+                } else {
+                    bytes[pos++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xc0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                char low = i < end ? (str != null ? str.charAt(i) : buf[i]) : 0;
+                if (!Character.isHighSurrogate(c) || !Character.isLowSurrogate(low)) {
+                    // The same as the CharsetEncoder path, which reports malformed input.
+                    mBytePos = pos;
+                    throw new IOException("Malformed input: unpaired surrogate at " + (i - 1));
+                }
+                i++;
+                int codePoint = Character.toCodePoint(c, low);
+                bytes[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                bytes[pos++] = (byte) (0xe0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        mBytePos = pos;
+    }
+
     public XmlSerializer attribute(String namespace, String name, String value) throws IOException,
             IllegalArgumentException, IllegalStateException {
         append(' ');
@@ -227,17 +331,38 @@ public class FastXmlSerializer implements XmlSerializer {
     }
 
     private void flushBytes() throws IOException {
-        int position;
-        if ((position = mBytes.position()) > 0) {
-            mBytes.flip();
-            mOutputStream.write(mBytes.array(), 0, position);
+        int position = mUtf8 ? mBytePos : mBytes.position();
+        if (position > 0) {
+            if (mOutputStream != null) {
+                mOutputStream.write(mBytes.array(), 0, position);
+            } else if (mOutputChannel != null) {
+                mBytes.position(0);
+                mBytes.limit(position);
+                while (mBytes.hasRemaining()) {
+                    mOutputChannel.write(mBytes);
+                }
+            } else {
+                try {
+                    mOutputBuffer.put(mBytes.array(), 0, position);
+                } catch (BufferOverflowException e) {
+                    throw new IOException("Output buffer is full", e);
+                }
+            }
             mBytes.clear();
+            mBytePos = 0;
         }
     }
 
     public void flush() throws IOException {
         //Log.i("PackageManager", "flush mPos=" + mPos);
-        if (mPos > 0) {
+        if (mUtf8) {
+            if (mBytePos > 0) {
+                flushBytes();
+                if (mOutputStream != null) {
+                    mOutputStream.flush();
+                }
+            }
+        } else if (mPos > 0) {
             if (mOutputStream != null) {
                 CharBuffer charBuffer = CharBuffer.wrap(mText, 0, mPos);
                 CoderResult result = mCharset.encode(charBuffer, mBytes, true);
@@ -266,6 +391,12 @@ public class FastXmlSerializer implements XmlSerializer {
     }
 
     public boolean getFeature(String name) {
+        if (name.equals("http://xmlpull.org/v1/doc/features.html#indent-output")) {
+            return mIndent;
+        }
+        if (name.equals(XmlUtils.FEATURE_PACKED_ARRAYS)) {
+            return mPackArrays;
+        }
         throw new UnsupportedOperationException();
     }
 
@@ -302,6 +433,10 @@ public class FastXmlSerializer implements XmlSerializer {
             mIndent = true;
             return;
         }
+        if (name.equals(XmlUtils.FEATURE_PACKED_ARRAYS)) {
+            mPackArrays = state;
+            return;
+        }
         throw new UnsupportedOperationException();
     }
 
@@ -320,6 +455,10 @@ public class FastXmlSerializer implements XmlSerializer {
                         encoding).initCause(e));
             }
             mOutputStream = os;
+            mWriter = null;
+            mOutputChannel = null;
+            mOutputBuffer = null;
+            mUtf8 = StandardCharsets.UTF_8.equals(mCharset.charset());
         } else {
             setOutput(
                 encoding == null
@@ -331,6 +470,39 @@ public class FastXmlSerializer implements XmlSerializer {
     public void setOutput(Writer writer) throws IOException, IllegalArgumentException,
             IllegalStateException {
         mWriter = writer;
+        mOutputStream = null;
+        mOutputChannel = null;
+        mOutputBuffer = null;
+        mUtf8 = false;
+    }
+
+    /**
+     * Write UTF-8 encoded output into a channel, e.g. a {@link java.nio.channels.FileChannel}.
+     */
+    public void setOutput(WritableByteChannel channel) throws IOException,
+            IllegalArgumentException, IllegalStateException {
+        if (channel == null)
+            throw new IllegalArgumentException();
+        mOutputChannel = channel;
+        mWriter = null;
+        mOutputStream = null;
+        mOutputBuffer = null;
+        mUtf8 = true;
+    }
+
+    /**
+     * Write UTF-8 encoded output into the buffer, from its current position.
+     * An IOException is thrown on flush if the buffer has not enough room.
+     */
+    public void setOutput(ByteBuffer buffer) throws IOException, IllegalArgumentException,
+            IllegalStateException {
+        if (buffer == null)
+            throw new IllegalArgumentException();
+        mOutputBuffer = buffer;
+        mWriter = null;
+        mOutputStream = null;
+        mOutputChannel = null;
+        mUtf8 = true;
     }
 
     public void setPrefix(String prefix, String namespace) throws IOException,
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only map view of a document written by {@link XmlUtils#writeMapXml}, which only
+ * decodes the values that are asked for.
+ *
+ * The document is scanned once to find the name and the character range of each top level
+ * value. A value is parsed with {@link XmlUtils#readValueXml} the first time it's accessed,
+ * so it has exactly the same type and content as in the map read by
+ * {@link XmlUtils#readMapXml}.
+ *
+ * Because a value is parsed on access, a malformed value is reported by an
+ * {@link IllegalStateException} from {@link #get}, instead of failing the whole read.
+ *
+ * {@hide}
+ */
+public class LazyXmlMap extends AbstractMap<String, Object> {
+
+    private static final Object NOT_DECODED = new Object();
+
+    private final char[] mText;
+    private final XmlUtils.ReadMapCallback mCallback;
+
+    // name -> index of value in mStarts/mEnds/mValues
+    private final HashMap<String, Integer> mIndex = new HashMap<>();
+    private final String[] mNames;
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private final Object[] mValues;
+
+    private Set<Entry<String, Object>> mEntrySet;
+
+    /**
+     * Scan the map document.
+     *
+     * @param text the whole document.
+     * @param callback Method to call when a value tag is not recognized.
+     *
+     * @throws XmlPullParserException if the document is not a map.
+     */
+    LazyXmlMap(char[] text, int length, XmlUtils.ReadMapCallback callback)
+            throws XmlPullParserException {
+        mText = text;
+        mCallback = callback;
+
+        Scanner scanner = new Scanner(text, length);
+        scanner.scan();
+
+        final int N = scanner.mCount;
+        mNames = new String[N];
+        mStarts = new int[N];
+        mEnds = new int[N];
+        mValues = new Object[N];
+        for (int i = 0; i < N; i++) {
+            mNames[i] = scanner.mNames[i];
+            mStarts[i] = scanner.mStarts[i];
+            mEnds[i] = scanner.mEnds[i];
+            mValues[i] = NOT_DECODED;
+            // Later value wins, the same as readThisMapXml.
+            mIndex.put(mNames[i], i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return mIndex.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return mIndex.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer index = mIndex.get(key);
+        return index == null ? null : valueAt(index);
+    }
+
+    /**
+     * @return whether the value of key has been decoded.
+     */
+    public synchronized boolean isDecoded(String key) {
+        Integer index = mIndex.get(key);
+        return index != null && mValues[index] != NOT_DECODED;
+    }
+
+    private synchronized Object valueAt(int index) {
+        Object value = mValues[index];
+        if (value == NOT_DECODED) {
+            try {
+                value = decode(index);
+            } catch (XmlPullParserException | IOException e) {
+                throw new IllegalStateException("Malformed value of " + mNames[index], e);
+            }
+            mValues[index] = value;
+        }
+        return value;
+    }
+
+    private Object decode(int index) throws XmlPullParserException, IOException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(new CharArrayReader(mText, mStarts[index], mEnds[index] - mStarts[index]));
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.START_TAG) {
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of value");
+            }
+            eventType = parser.next();
+        }
+        return XmlUtils.readThisValueXml(parser, new String[1], mCallback);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (mEntrySet == null) {
+            mEntrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<Entry<String, Integer>> iterator =
+                            mIndex.entrySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            return new LazyEntry(iterator.next());
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return mIndex.size();
+                }
+            };
+        }
+        return mEntrySet;
+    }
+
+    private class LazyEntry implements Entry<String, Object> {
+        private final Entry<String, Integer> mIndexEntry;
+
+        LazyEntry(Entry<String, Integer> indexEntry) {
+            mIndexEntry = indexEntry;
+        }
+
+        @Override
+        public String getKey() {
+            return mIndexEntry.getKey();
+        }
+
+        @Override
+        public Object getValue() {
+            return valueAt(mIndexEntry.getValue());
+        }
+
+        @Override
+        public Object setValue(Object object) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object value = getValue();
+            return (getKey() == null ? e.getKey() == null : getKey().equals(e.getKey())) &&
+                    (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return (getKey() == null ? 0 : getKey().hashCode()) ^
+                    (value == null ? 0 : value.hashCode());
+        }
+    }
+
+    /**
+     * Finds top level values of the map without building any object for their content.
+     */
+    private static class Scanner {
+        private final char[] mText;
+        private final int mLength;
+        private int mPos;
+
+        int mCount;
+        String[] mNames = new String[16];
+        int[] mStarts = new int[16];
+        int[] mEnds = new int[16];
+
+        // name attribute of last start tag.
+        private String mTagName;
+        private String mNameAttribute;
+
+        Scanner(char[] text, int length) {
+            mText = text;
+            mLength = length;
+        }
+
+        void scan() throws XmlPullParserException {
+            // Find the root tag.
+            int type;
+            while ((type = nextMarkup()) != MARKUP_START_TAG && type != MARKUP_EMPTY_TAG) {
+                if (type == MARKUP_END) {
+                    throw new XmlPullParserException("No start tag found");
+                }
+                if (type == MARKUP_END_TAG) {
+                    throw new XmlPullParserException("Unexpected end tag");
+                }
+            }
+            if (!"map".equals(mTagName)) {
+                throw new XmlPullParserException("Unexpected start tag: found " + mTagName +
+                        ", expected map");
+            }
+            if (type == MARKUP_EMPTY_TAG) {
+                return;
+            }
+
+            // Then every child of root.
+            while (true) {
+                int start = skipToMarkup();
+                type = nextMarkup();
+                if (type == MARKUP_END) {
+                    throw new XmlPullParserException("Document ended before map end tag");
+                } else if (type == MARKUP_END_TAG) {
+                    return;
+                } else if (type == MARKUP_START_TAG || type == MARKUP_EMPTY_TAG) {
+                    String name = mNameAttribute;
+                    if (type == MARKUP_START_TAG) {
+                        skipElement();
+                    }
+                    add(name, start, mPos);
+                }
+            }
+        }
+
+        private void add(String name, int start, int end) {
+            if (mCount == mNames.length) {
+                int size = mCount * 2;
+                String[] names = new String[size];
+                int[] starts = new int[size];
+                int[] ends = new int[size];
+                System.arraycopy(mNames, 0, names, 0, mCount);
+                System.arraycopy(mStarts, 0, starts, 0, mCount);
+                System.arraycopy(mEnds, 0, ends, 0, mCount);
+                mNames = names;
+                mStarts = starts;
+                mEnds = ends;
+            }
+            mNames[mCount] = name;
+            mStarts[mCount] = start;
+            mEnds[mCount] = end;
+            mCount++;
+        }
+
+        /**
+         * Skip to the end of current element, whose start tag has just been read.
+         */
+        private void skipElement() throws XmlPullParserException {
+            int depth = 1;
+            while (depth > 0) {
+                int type = nextMarkup();
+                if (type == MARKUP_START_TAG) {
+                    depth++;
+                } else if (type == MARKUP_END_TAG) {
+                    depth--;
+                } else if (type == MARKUP_END) {
+                    throw new XmlPullParserException("Unexpected end of document");
+                }
+            }
+        }
+
+        private int skipToMarkup() {
+            while (mPos < mLength && mText[mPos] != '<') {
+                mPos++;
+            }
+            return mPos;
+        }
+
+        private static final int MARKUP_END = 0;
+        private static final int MARKUP_START_TAG = 1;
+        private static final int MARKUP_EMPTY_TAG = 2;
+        private static final int MARKUP_END_TAG = 3;
+        private static final int MARKUP_OTHER = 4;
+
+        /**
+         * Skip text and read next markup, position after it.
+         */
+        private int nextMarkup() throws XmlPullParserException {
+            if (skipToMarkup() >= mLength) {
+                return MARKUP_END;
+            }
+            final char[] text = mText;
+            int pos = mPos + 1;
+            if (startsWith(pos, "!--")) {
+                mPos = indexOf(pos + 3, "-->") + 3;
+                return MARKUP_OTHER;
+            } else if (startsWith(pos, "![CDATA[")) {
+                mPos = indexOf(pos + 8, "]]>") + 3;
+                return MARKUP_OTHER;
+            } else if (pos < mLength && (text[pos] == '?' || text[pos] == '!')) {
+                mPos = indexOf(pos, ">") + 1;
+                return MARKUP_OTHER;
+            } else if (pos < mLength && text[pos] == '/') {
+                mPos = indexOf(pos, ">") + 1;
+                return MARKUP_END_TAG;
+            }
+
+            // Start tag, read its name and name attribute.
+            int nameStart = pos;
+            while (pos < mLength && !isTagNameEnd(text[pos])) {
+                pos++;
+            }
+            mTagName = new String(text, nameStart, pos - nameStart);
+            mNameAttribute = null;
+
+            while (pos < mLength) {
+                char c = text[pos];
+                if (c == '>') {
+                    mPos = pos + 1;
+                    return text[pos - 1] == '/' ? MARKUP_EMPTY_TAG : MARKUP_START_TAG;
+                } else if (c == '"' || c == '\'') {
+                    pos = indexOf(pos + 1, c == '"' ? "\"" : "'") + 1;
+                } else if (c == 'n' && startsWith(pos, "name") && isAttributeStart(pos)) {
+                    pos = readNameAttribute(pos + 4);
+                } else {
+                    pos++;
+                }
+            }
+            throw new XmlPullParserException("Unexpected end of document in tag " + mTagName);
+        }
+
+        private boolean isAttributeStart(int pos) {
+            return Character.isWhitespace(mText[pos - 1]);
+        }
+
+        private int readNameAttribute(int pos) throws XmlPullParserException {
+            final char[] text = mText;
+            while (pos < mLength && Character.isWhitespace(text[pos])) {
+                pos++;
+            }
+            if (pos >= mLength || text[pos] != '=') {
+                // Another attribute name starts with "name".
+                return pos;
+            }
+            pos++;
+            while (pos < mLength && Character.isWhitespace(text[pos])) {
+                pos++;
+            }
+            if (pos >= mLength) {
+                throw new XmlPullParserException("Unexpected end of document in attribute");
+            }
+            char quote = text[pos];
+            int valueStart = pos + 1;
+            int valueEnd = indexOf(valueStart, quote == '"' ? "\"" : "'");
+            mNameAttribute = unescape(valueStart, valueEnd);
+            return valueEnd + 1;
+        }
+
+        private String unescape(int start, int end) throws XmlPullParserException {
+            final char[] text = mText;
+            int amp = start;
+            while (amp < end && text[amp] != '&') {
+                amp++;
+            }
+            if (amp == end) {
+                return new String(text, start, end - start);
+            }
+
+            StringBuilder sb = new StringBuilder(end - start);
+            sb.append(text, start, amp - start);
+            int pos = amp;
+            while (pos < end) {
+                char c = text[pos];
+                if (c != '&') {
+                    sb.append(c);
+                    pos++;
+                    continue;
+                }
+                int semicolon = indexOf(pos, ";");
+                String entity = new String(text, pos + 1, semicolon - pos - 1);
+                if (entity.equals("amp")) {
+                    sb.append('&');
+                } else if (entity.equals("lt")) {
+                    sb.append('<');
+                } else if (entity.equals("gt")) {
+                    sb.append('>');
+                } else if (entity.equals("quot")) {
+                    sb.append('"');
+                } else if (entity.equals("apos")) {
+                    sb.append('\'');
+                } else if (entity.startsWith("#")) {
+                    try {
+                        int codePoint = entity.startsWith("#x") ?
+                                Integer.parseInt(entity.substring(2), 16) :
+                                Integer.parseInt(entity.substring(1));
+                        sb.appendCodePoint(codePoint);
+                    } catch (IllegalArgumentException e) {
+                        throw new XmlPullParserException("Bad character reference &" +
+                                entity + ";");
+                    }
+                } else {
+                    throw new XmlPullParserException("Unknown entity &" + entity + ";");
+                }
+                pos = semicolon + 1;
+            }
+            return sb.toString();
+        }
+
+        private static boolean isTagNameEnd(char c) {
+            return c == '>' || c == '/' || Character.isWhitespace(c);
+        }
+
+        private boolean startsWith(int pos, String s) {
+            if (pos + s.length() > mLength) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (mText[pos + i] != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int indexOf(int pos, String s) throws XmlPullParserException {
+            final char first = s.charAt(0);
+            for (int i = pos; i < mLength; i++) {
+                if (mText[i] == first && startsWith(i, s)) {
+                    return i;
+                }
+            }
+            throw new XmlPullParserException("Unexpected end of document, expected " + s);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import java.net.ProtocolException;
+
+/**
+ * Packed form of primitive arrays, used by the "base64" encoding of array tags in
+ * {@link XmlUtils}.
+ *
+ * Elements are packed big-endian (doubles as their long bits, booleans 8 a byte, lowest
+ * bit first) and encoded as base64 with padding and without line breaks. Encoding and
+ * decoding work on char arrays, so no String is made for the elements or the text.
+ *
+ * {@hide}
+ */
+final class PackedArrays {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final byte[] DECODE_TABLE = new byte[128];
+    static {
+        for (int i = 0; i < DECODE_TABLE.length; i++) {
+            DECODE_TABLE[i] = -1;
+        }
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE_TABLE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private PackedArrays() {
+    }
+
+    static char[] encode(int[] val) {
+        byte[] bytes = new byte[val.length * 4];
+        int pos = 0;
+        for (int v : val) {
+            pos = putInt(bytes, pos, v);
+        }
+        return encodeBase64(bytes);
+    }
+
+    static char[] encode(long[] val) {
+        byte[] bytes = new byte[val.length * 8];
+        int pos = 0;
+        for (long v : val) {
+            pos = putInt(bytes, pos, (int) (v >>> 32));
+            pos = putInt(bytes, pos, (int) v);
+        }
+        return encodeBase64(bytes);
+    }
+
+    static char[] encode(double[] val) {
+        byte[] bytes = new byte[val.length * 8];
+        int pos = 0;
+        for (double d : val) {
+            long v = Double.doubleToLongBits(d);
+            pos = putInt(bytes, pos, (int) (v >>> 32));
+            pos = putInt(bytes, pos, (int) v);
+        }
+        return encodeBase64(bytes);
+    }
+
+    static char[] encode(boolean[] val) {
+        byte[] bytes = new byte[byteCountOfBooleans(val.length)];
+        for (int i = 0; i < val.length; i++) {
+            if (val[i]) {
+                bytes[i >> 3] |= 1 << (i & 7);
+            }
+        }
+        return encodeBase64(bytes);
+    }
+
+    static int[] toIntArray(byte[] bytes, int num) {
+        int[] array = new int[num];
+        for (int i = 0, pos = 0; i < num; i++, pos += 4) {
+            array[i] = getInt(bytes, pos);
+        }
+        return array;
+    }
+
+    static long[] toLongArray(byte[] bytes, int num) {
+        long[] array = new long[num];
+        for (int i = 0, pos = 0; i < num; i++, pos += 8) {
+            array[i] = getLong(bytes, pos);
+        }
+        return array;
+    }
+
+    static double[] toDoubleArray(byte[] bytes, int num) {
+        double[] array = new double[num];
+        for (int i = 0, pos = 0; i < num; i++, pos += 8) {
+            array[i] = Double.longBitsToDouble(getLong(bytes, pos));
+        }
+        return array;
+    }
+
+    static boolean[] toBooleanArray(byte[] bytes, int num) {
+        boolean[] array = new boolean[num];
+        for (int i = 0; i < num; i++) {
+            array[i] = (bytes[i >> 3] & (1 << (i & 7))) != 0;
+        }
+        return array;
+    }
+
+    static int byteCountOfBooleans(int num) {
+        return (num + 7) >> 3;
+    }
+
+    private static int putInt(byte[] bytes, int pos, int v) {
+        bytes[pos] = (byte) (v >>> 24);
+        bytes[pos + 1] = (byte) (v >>> 16);
+        bytes[pos + 2] = (byte) (v >>> 8);
+        bytes[pos + 3] = (byte) v;
+        return pos + 4;
+    }
+
+    private static int getInt(byte[] bytes, int pos) {
+        return (bytes[pos] << 24) | ((bytes[pos + 1] & 0xff) << 16) |
+                ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] bytes, int pos) {
+        return ((long) getInt(bytes, pos) << 32) | (getInt(bytes, pos + 4) & 0xffffffffL);
+    }
+
+    private static char[] encodeBase64(byte[] bytes) {
+        final int N = bytes.length;
+        char[] chars = new char[(N + 2) / 3 * 4];
+        int pos = 0;
+        int i = 0;
+        for (; i + 2 < N; i += 3) {
+            int v = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+            chars[pos++] = ALPHABET[v >> 18];
+            chars[pos++] = ALPHABET[(v >> 12) & 0x3f];
+            chars[pos++] = ALPHABET[(v >> 6) & 0x3f];
+            chars[pos++] = ALPHABET[v & 0x3f];
+        }
+        if (i < N) {
+            int v = (bytes[i] & 0xff) << 16;
+            if (i + 1 < N) {
+                v |= (bytes[i + 1] & 0xff) << 8;
+            }
+            chars[pos++] = ALPHABET[v >> 18];
+            chars[pos++] = ALPHABET[(v >> 12) & 0x3f];
+            chars[pos++] = i + 1 < N ? ALPHABET[(v >> 6) & 0x3f] : '=';
+            chars[pos] = '=';
+        }
+        return chars;
+    }
+
+    /**
+     * Streaming base64 decoder into a byte array of known length. The text may come in
+     * several chunks, whitespace is ignored.
+     */
+    static class Decoder {
+        private final byte[] mBytes;
+        private int mPos;
+        private int mBits;
+        private int mBitCount;
+        private boolean mPadding;
+
+        Decoder(int byteCount) {
+            mBytes = new byte[byteCount];
+        }
+
+        void decode(char[] buf, int start, int len) throws ProtocolException {
+            final byte[] bytes = mBytes;
+            for (int i = start, end = start + len; i < end; i++) {
+                char c = buf[i];
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    continue;
+                }
+                if (c == '=') {
+                    mPadding = true;
+                    continue;
+                }
+                int v = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+                if (v < 0 || mPadding) {
+                    throw new ProtocolException("Bad base64 character '" + c + "'");
+                }
+                mBits = (mBits << 6) | v;
+                mBitCount += 6;
+                if (mBitCount >= 8) {
+                    mBitCount -= 8;
+                    if (mPos == bytes.length) {
+                        throw new ProtocolException("Too much data in packed array");
+                    }
+                    bytes[mPos++] = (byte) (mBits >> mBitCount);
+                    mBits &= (1 << mBitCount) - 1;
+                }
+            }
+        }
+
+        byte[] finish() throws ProtocolException {
+            if (mPos != mBytes.length) {
+                throw new ProtocolException("Packed array needs " + mBytes.length
+                        + " bytes, found " + mPos);
+            }
+            return mBytes;
+        }
+    }
+}
@@ -33,6 +33,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,6 +48,18 @@ import java.util.Set;
 /** {@hide} */
 public class XmlUtils {
 
+    /**
+     * Serializer feature to write int, long, double and boolean arrays as a single
+     * base64 text of their packed elements, instead of one item tag per element.
+     * Both forms are read back by the readThis*ArrayXml methods.
+     *
+     * @see #writeMapXml(Map, OutputStream, boolean)
+     */
+    public static final String FEATURE_PACKED_ARRAYS =
+            "http://ticwear.com/xml/features/packed-arrays";
+
+    private static final String PACKED_ENCODING = "base64";
+
     public static void skipCurrentTag(XmlPullParser parser)
             throws XmlPullParserException, IOException {
         int outerDepth = parser.getDepth();
@@ -181,10 +197,30 @@ public class XmlUtils {
      */
     public static final void writeMapXml(Map val, OutputStream out)
             throws XmlPullParserException, java.io.IOException {
+        writeMapXml(val, out, false);
+    }
+
+    /**
+     * Flatten a Map into an output stream as XML.  The map can later be
+     * read back with readMapXml().
+     *
+     * @param val The map to be flattened.
+     * @param out Where to write the XML data.
+     * @param packArrays Whether to write primitive arrays in packed form,
+     *                   see {@link #FEATURE_PACKED_ARRAYS}.
+     *
+     * @see #writeMapXml(Map, OutputStream)
+     * @see #readMapXml
+     */
+    public static final void writeMapXml(Map val, OutputStream out, boolean packArrays)
+            throws XmlPullParserException, java.io.IOException {
         XmlSerializer serializer = new FastXmlSerializer();
         serializer.setOutput(out, "utf-8");
         serializer.startDocument(null, true);
         serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        if (packArrays) {
+            serializer.setFeature(FEATURE_PACKED_ARRAYS, true);
+        }
         writeMapXml(val, null, serializer);
         serializer.endDocument();
     }
@@ -430,10 +466,14 @@ public class XmlUtils {
         final int N = val.length;
         out.attribute(null, "num", Integer.toString(N));
 
-        for (int i=0; i<N; i++) {
-            out.startTag(null, "item");
-            out.attribute(null, "value", Integer.toString(val[i]));
-            out.endTag(null, "item");
+        if (isPackingArrays(out)) {
+            writePackedArrayXml(PackedArrays.encode(val), out);
+        } else {
+            for (int i=0; i<N; i++) {
+                out.startTag(null, "item");
+                out.attribute(null, "value", Integer.toString(val[i]));
+                out.endTag(null, "item");
+            }
         }
 
         out.endTag(null, "int-array");
@@ -469,10 +509,14 @@ public class XmlUtils {
         final int N = val.length;
         out.attribute(null, "num", Integer.toString(N));
 
-        for (int i=0; i<N; i++) {
-            out.startTag(null, "item");
-            out.attribute(null, "value", Long.toString(val[i]));
-            out.endTag(null, "item");
+        if (isPackingArrays(out)) {
+            writePackedArrayXml(PackedArrays.encode(val), out);
+        } else {
+            for (int i=0; i<N; i++) {
+                out.startTag(null, "item");
+                out.attribute(null, "value", Long.toString(val[i]));
+                out.endTag(null, "item");
+            }
         }
 
         out.endTag(null, "long-array");
@@ -508,10 +552,14 @@ public class XmlUtils {
         final int N = val.length;
         out.attribute(null, "num", Integer.toString(N));
 
-        for (int i=0; i<N; i++) {
-            out.startTag(null, "item");
-            out.attribute(null, "value", Double.toString(val[i]));
-            out.endTag(null, "item");
+        if (isPackingArrays(out)) {
+            writePackedArrayXml(PackedArrays.encode(val), out);
+        } else {
+            for (int i=0; i<N; i++) {
+                out.startTag(null, "item");
+                out.attribute(null, "value", Double.toString(val[i]));
+                out.endTag(null, "item");
+            }
         }
 
         out.endTag(null, "double-array");
@@ -586,15 +634,36 @@ public class XmlUtils {
         final int N = val.length;
         out.attribute(null, "num", Integer.toString(N));
 
-        for (int i=0; i<N; i++) {
-            out.startTag(null, "item");
-            out.attribute(null, "value", Boolean.toString(val[i]));
-            out.endTag(null, "item");
+        if (isPackingArrays(out)) {
+            writePackedArrayXml(PackedArrays.encode(val), out);
+        } else {
+            for (int i=0; i<N; i++) {
+                out.startTag(null, "item");
+                out.attribute(null, "value", Boolean.toString(val[i]));
+                out.endTag(null, "item");
+            }
         }
 
         out.endTag(null, "boolean-array");
     }
 
+    private static boolean isPackingArrays(XmlSerializer out) {
+        try {
+            return out.getFeature(FEATURE_PACKED_ARRAYS);
+        } catch (RuntimeException e) {
+            // Serializers don't know the feature may throw instead of returning false.
+            return false;
+        }
+    }
+
+    private static void writePackedArrayXml(char[] packed, XmlSerializer out)
+            throws java.io.IOException {
+        out.attribute(null, "encoding", PACKED_ENCODING);
+        if (packed.length > 0) {
+            out.text(packed, 0, packed.length);
+        }
+    }
+
     /**
      * Flatten an object's value into an XmlSerializer.  The value can later
      * be read back with readThisValueXml().
@@ -736,6 +805,83 @@ public class XmlUtils {
         return (HashMap<String, ?>) readValueXml(parser, new String[1]);
     }
 
+    /**
+     * Read a map from an InputStream containing XML written by writeMapXml(),
+     * without decoding its values.  The document is scanned once to index
+     * the values by name, and each value is decoded the first time it is
+     * accessed, the same as readThisValueXml() does.  Use this instead of
+     * readMapXml() when only a few values of a large map are needed.
+     *
+     * @param in The InputStream from which to read.
+     *
+     * @return Map The read-only lazy map.
+     *
+     * @see #readMapXml
+     * @see LazyXmlMap
+     */
+    public static final Map<String, ?> readLazyMapXml(InputStream in)
+            throws XmlPullParserException, java.io.IOException {
+        return readLazyMapXml(in, null);
+    }
+
+    /**
+     * Read a map from an InputStream containing XML written by writeMapXml(),
+     * without decoding its values.
+     *
+     * @param in The InputStream from which to read.
+     * @param callback Method to call when a value tag is not recognized.
+     *
+     * @return Map The read-only lazy map.
+     *
+     * @see #readLazyMapXml(InputStream)
+     * @hide
+     */
+    public static final Map<String, ?> readLazyMapXml(InputStream in, ReadMapCallback callback)
+            throws XmlPullParserException, java.io.IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+
+        byte[] data = bytes.toByteArray();
+        CharBuffer chars = detectXmlCharset(data).decode(ByteBuffer.wrap(data));
+        return new LazyXmlMap(chars.array(), chars.limit(), callback);
+    }
+
+    /**
+     * Get the charset from encoding declaration of the XML prolog, UTF-8 by default.
+     */
+    private static Charset detectXmlCharset(byte[] data) {
+        int end = 0;
+        while (end < data.length && end < 200 && data[end] != '>') {
+            end++;
+        }
+        String prolog = new String(data, 0, end, StandardCharsets.ISO_8859_1);
+        if (prolog.startsWith("<?xml")) {
+            int index = prolog.indexOf("encoding");
+            if (index >= 0) {
+                int start = index + "encoding".length();
+                while (start < prolog.length() && prolog.charAt(start) != '"'
+                        && prolog.charAt(start) != '\'') {
+                    start++;
+                }
+                if (start < prolog.length()) {
+                    int close = prolog.indexOf(prolog.charAt(start), start + 1);
+                    if (close > 0) {
+                        try {
+                            return Charset.forName(prolog.substring(start + 1, close));
+                        } catch (IllegalArgumentException e) {
+                            // Unknown charset, fall back to UTF-8.
+                        }
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
     /**
      * Read an ArrayList from an InputStream containing XML.  The stream can
      * previously have been written by writeListXml().
@@ -780,6 +926,88 @@ public class XmlUtils {
         return (HashSet) readValueXml(parser, new String[1]);
     }
 
+    /**
+     * Flatten a Map into an output stream in the compact binary format.  The
+     * map can later be read back with readMapBinary().  It holds the same
+     * values as writeMapXml(), but is much faster to read.
+     *
+     * @param val The map to be flattened.
+     * @param out Where to write the binary data.
+     *
+     * @see #readMapBinary
+     * @see #convertXmlToBinary
+     * @see BinaryValueWriter
+     */
+    public static final void writeMapBinary(Map val, OutputStream out)
+            throws java.io.IOException {
+        BinaryValueWriter writer = new BinaryValueWriter(out);
+        writer.startDocument();
+        writer.writeMap(val);
+        writer.endDocument();
+    }
+
+    /**
+     * Read a HashMap from an InputStream containing binary data written by
+     * writeMapBinary().
+     *
+     * @param in The InputStream from which to read.
+     *
+     * @return HashMap The resulting map.
+     *
+     * @see #writeMapBinary
+     * @see BinaryValueReader
+     */
+    public static final HashMap<String, ?> readMapBinary(InputStream in)
+            throws java.io.IOException {
+        BinaryValueReader reader = new BinaryValueReader(in);
+        reader.startDocument();
+        return reader.readMap();
+    }
+
+    /**
+     * Convert a value written as XML (by writeMapXml(), writeListXml() or
+     * writeValueXml()) into the binary format.
+     *
+     * @param in The InputStream containing XML.
+     * @param out Where to write the binary data.
+     *
+     * @see #convertBinaryToXml
+     */
+    public static final void convertXmlToBinary(InputStream in, OutputStream out)
+            throws XmlPullParserException, java.io.IOException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(in, null);
+        Object value = readValueXml(parser, new String[1]);
+
+        BinaryValueWriter writer = new BinaryValueWriter(out);
+        writer.startDocument();
+        writer.writeValue(value);
+        writer.endDocument();
+    }
+
+    /**
+     * Convert a value written in the binary format back into XML, which can
+     * be read by readMapXml(), readListXml() or readValueXml().
+     *
+     * @param in The InputStream containing binary data.
+     * @param out Where to write the XML data.
+     *
+     * @see #convertXmlToBinary
+     */
+    public static final void convertBinaryToXml(InputStream in, OutputStream out)
+            throws XmlPullParserException, java.io.IOException {
+        BinaryValueReader reader = new BinaryValueReader(in);
+        reader.startDocument();
+        Object value = reader.readValue();
+
+        XmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(out, "utf-8");
+        serializer.startDocument(null, true);
+        serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        writeValueXml(value, null, serializer);
+        serializer.endDocument();
+    }
+
     /**
      * Read a HashMap object from an XmlPullParser.  The XML data could
      * previously have been generated by writeMapXml().  The XmlPullParser
@@ -989,6 +1217,9 @@ public class XmlUtils {
             throw new XmlPullParserException(
                     "Not a number in num attribute in byte-array");
         }
+        if (isPackedArrayXml(parser)) {
+            return PackedArrays.toIntArray(readPackedArrayXml(parser, endTag, num * 4), num);
+        }
         parser.next();
 
         int[] array = new int[num];
@@ -1056,6 +1287,9 @@ public class XmlUtils {
         } catch (NumberFormatException e) {
             throw new XmlPullParserException("Not a number in num attribute in long-array");
         }
+        if (isPackedArrayXml(parser)) {
+            return PackedArrays.toLongArray(readPackedArrayXml(parser, endTag, num * 8), num);
+        }
         parser.next();
 
         long[] array = new long[num];
@@ -1116,6 +1350,9 @@ public class XmlUtils {
         } catch (NumberFormatException e) {
             throw new XmlPullParserException("Not a number in num attribute in double-array");
         }
+        if (isPackedArrayXml(parser)) {
+            return PackedArrays.toDoubleArray(readPackedArrayXml(parser, endTag, num * 8), num);
+        }
         parser.next();
 
         double[] array = new double[num];
@@ -1236,6 +1473,10 @@ public class XmlUtils {
         } catch (NumberFormatException e) {
             throw new XmlPullParserException("Not a number in num attribute in string-array");
         }
+        if (isPackedArrayXml(parser)) {
+            return PackedArrays.toBooleanArray(readPackedArrayXml(parser, endTag,
+                    PackedArrays.byteCountOfBooleans(num)), num);
+        }
         parser.next();
 
         boolean[] array = new boolean[num];
@@ -1271,6 +1512,40 @@ public class XmlUtils {
         throw new XmlPullParserException("Document ended before " + endTag + " end tag");
     }
 
+    private static boolean isPackedArrayXml(XmlPullParser parser) {
+        return PACKED_ENCODING.equals(parser.getAttributeValue(null, "encoding"));
+    }
+
+    /**
+     * Decode the packed text of an array tag, straight from the text buffer of parser.
+     * The XmlPullParser must be positioned <em>at</em> the tag that begins the array.
+     */
+    private static byte[] readPackedArrayXml(XmlPullParser parser, String endTag, int byteCount)
+            throws XmlPullParserException, java.io.IOException {
+        PackedArrays.Decoder decoder = new PackedArrays.Decoder(byteCount);
+        int[] holder = new int[2];
+
+        int eventType = parser.next();
+        do {
+            if (eventType == parser.TEXT) {
+                char[] buf = parser.getTextCharacters(holder);
+                decoder.decode(buf, holder[0], holder[1]);
+            } else if (eventType == parser.START_TAG) {
+                throw new XmlPullParserException("Unexpected start tag in packed " + endTag
+                        + ": " + parser.getName());
+            } else if (eventType == parser.END_TAG) {
+                if (parser.getName().equals(endTag)) {
+                    return decoder.finish();
+                }
+                throw new XmlPullParserException("Expected " + endTag + " end tag at: " +
+                        parser.getName());
+            }
+            eventType = parser.next();
+        } while (eventType != parser.END_DOCUMENT);
+
+        throw new XmlPullParserException("Document ended before " + endTag + " end tag");
+    }
+
     /**
      * Read a flattened object from an XmlPullParser.  The XML data could
      * previously have been written with writeMapXml(), writeListXml(), or
@@ -1308,7 +1583,7 @@ public class XmlUtils {
             "Unexpected end of document");
     }
 
-    private static final Object readThisValueXml(XmlPullParser parser, String[] name,
+    static final Object readThisValueXml(XmlPullParser parser, String[] name,
             ReadMapCallback callback)  throws XmlPullParserException, java.io.IOException {
         final String valueName = parser.getAttributeValue(null, "name");
         final String tagName = parser.getName();
@@ -52,6 +52,9 @@ import android.widget.Space;
 import android.widget.TextView;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 import ticwear.design.R;
 import ticwear.design.app.AlertDialog;
@@ -915,6 +918,7 @@ public class AlertController {
         public DialogInterface.OnKeyListener mOnKeyListener;
         public DelayConfirmRequest mDelayConfirmRequest;
         public CharSequence[] mItems;
+        public List<? extends CharSequence> mItemList;
         public RecyclerView.Adapter mAdapter;
         public DialogInterface.OnClickListener mOnClickListener;
         public int mViewLayoutResId;
@@ -925,6 +929,7 @@ public class AlertController {
         public int mViewSpacingBottom;
         public boolean mViewSpacingSpecified = false;
         public boolean[] mCheckedItems;
+        public BitSet mCheckedItemSet;
         public boolean mIsMultiChoice;
         public boolean mIsSingleChoice;
         public int mCheckedItem = -1;
@@ -993,9 +998,10 @@ public class AlertController {
             if (mDelayConfirmRequest != null) {
                 dialog.setDelayConfirmAction(mDelayConfirmRequest);
             }
-            // For a list, the client can either supply an array of items or an
+            // For a list, the client can either supply an array (or a list) of items or an
             // adapter or a cursor
-            if ((mItems != null) || (mCursor != null) || (mAdapter != null)) {
+            if ((mItems != null) || (mItemList != null) || (mCursor != null)
+                    || (mAdapter != null)) {
                 createListView(dialog);
             }
             if (mView != null) {
@@ -1022,7 +1028,8 @@ public class AlertController {
                     : (mIsMultiChoice ? dialog.mMultiChoiceItemLayout : dialog.mListItemLayout);
             if (mCursor == null) {
                 adapter = (mAdapter != null) ? mAdapter
-                        : new CheckedItemAdapter(mContext, layout, android.R.id.text1, mItems);
+                        : new CheckedItemAdapter(mContext, layout, android.R.id.text1,
+                        mItems != null ? Arrays.asList(mItems) : mItemList);
             } else {
                 adapter = (mAdapter instanceof CursorRecyclerViewAdapter) ? mAdapter
                         : new CursorRecyclerViewAdapter(mContext, mCursor) {
@@ -1075,6 +1082,11 @@ public class AlertController {
                         if (isItemChecked != isItemChecked(position)) {
                             setItemChecked(position, isItemChecked);
                         }
+                    } else if (mCheckedItemSet != null) {
+                        boolean isItemChecked = mCheckedItemSet.get(position);
+                        if (isItemChecked != isItemChecked(position)) {
+                            setItemChecked(position, isItemChecked);
+                        }
                     } else if (mCheckedItem > -1) {
                         setItemChecked(mCheckedItem, true);
 //                        setSelection(checkedItem);
@@ -1106,6 +1118,8 @@ public class AlertController {
                     public void onItemClick(TrackSelectionAdapterWrapper<?> parent, View v, int position, long id) {
                         if (mCheckedItems != null) {
                             mCheckedItems[position] = dialog.mAdapter.isItemChecked(position);
+                        } else if (mCheckedItemSet != null) {
+                            mCheckedItemSet.set(position, dialog.mAdapter.isItemChecked(position));
                         }
                         mOnCheckboxClickListener.onClick(
                                 dialog.mDialogInterface, position, dialog.mAdapter.isItemChecked(position));
@@ -1142,10 +1156,10 @@ public class AlertController {
         private final Context mContext;
         private final int mLayoutResource;
         private final int mTextViewResourceId;
-        private final CharSequence[] mObjects;
+        private final List<? extends CharSequence> mObjects;
 
         public CheckedItemAdapter(Context context, int resource, int textViewResourceId,
-                CharSequence[] objects) {
+                List<? extends CharSequence> objects) {
             super();
 
             this.mContext = context;
@@ -1165,12 +1179,12 @@ public class AlertController {
         @Override
         public void onBindViewHolder(ViewHolder viewHolder, int position) {
             TextView text1 = (TextView) viewHolder.itemView.findViewById(mTextViewResourceId);
-            text1.setText(mObjects[position]);
+            text1.setText(mObjects.get(position));
         }
 
         @Override
         public int getItemCount() {
-            return mObjects.length;
+            return mObjects.size();
         }
 
         @Override
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.content.Context;
+
+/**
+ * A preference hierarchy compiled ahead of time from a preference XML.
+ *
+ * The compiled hierarchy creates its preferences with their constructors and setters,
+ * so loading it needs no XML parsing and no reflection. Implementations are generated
+ * by the {@code compilePreferences} task of {@code preference-compiler.gradle}, into
+ * a {@code PreferenceXml} class of the app, with a field per compiled XML:
+ *
+ * <pre>
+ * setPreferencesFromCompiled(PreferenceXml.preferences);
+ * </pre>
+ *
+ * @see PreferenceManager#inflateFromCompiled(Context, CompiledPreferences)
+ * @see PreferenceFragment#setPreferencesFromCompiled(CompiledPreferences)
+ *
+ * Created by tankery on 10/18/16.
+ */
+public interface CompiledPreferences {
+
+    /**
+     * Creates the preference hierarchy, the same as inflated from its XML.
+     * Don't call this directly, use
+     * {@link PreferenceManager#inflateFromCompiled(Context, CompiledPreferences)}.
+     *
+     * @param context The context of the preferences.
+     * @param preferenceManager The manager to create the root of the hierarchy.
+     * @return The root of the hierarchy.
+     */
+    PreferenceScreen createHierarchy(Context context, PreferenceManager preferenceManager);
+
+    /**
+     * Returns the resource ID of the XML this is compiled from.
+     */
+    int getXmlResourceId();
+}
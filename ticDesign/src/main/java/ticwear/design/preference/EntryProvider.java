@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Entries and entry values of a {@link ListPreference} or a {@link MultiSelectListPreference}.
+ *
+ * Entries are retrieved by index when they are needed, so a provider for a huge entry set
+ * doesn't need to hold all of them in memory. See {@link PagedEntryProvider}.
+ *
+ * The index of a value is found in a value to index map, built on the first lookup.
+ * Call {@link #notifyChanged()} when the entries changed, to drop the map.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public abstract class EntryProvider {
+
+    private HashMap<String, Integer> mValueIndex;
+
+    /**
+     * Creates a provider of the given arrays.
+     *
+     * @param entries The human-readable entries.
+     * @param entryValues The values to save for the entries.
+     */
+    public static EntryProvider of(CharSequence[] entries, CharSequence[] entryValues) {
+        return new ArrayEntryProvider(entries, entryValues);
+    }
+
+    /**
+     * Returns the count of entries.
+     */
+    public abstract int getCount();
+
+    /**
+     * Returns the human-readable entry at index.
+     */
+    public abstract CharSequence getEntry(int index);
+
+    /**
+     * Returns the value to save for the entry at index.
+     */
+    public abstract CharSequence getEntryValue(int index);
+
+    /**
+     * Returns the index of the given value.
+     *
+     * The default implementation looks the value up in a map of all entry values.
+     * Override this if the provider can find it without reading all values.
+     *
+     * @param value The value whose index should be returned.
+     * @return The index of the value, or -1 if not found.
+     */
+    public int findIndexOfValue(String value) {
+        if (value == null) {
+            return -1;
+        }
+        if (mValueIndex == null) {
+            final int count = getCount();
+            HashMap<String, Integer> valueIndex = new HashMap<>(count * 4 / 3 + 1);
+            // The last one wins for duplicated values.
+            for (int i = 0; i < count; i++) {
+                valueIndex.put(getEntryValue(i).toString(), i);
+            }
+            mValueIndex = valueIndex;
+        }
+        Integer index = mValueIndex.get(value);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Notify the entries or entry values have changed.
+     */
+    public void notifyChanged() {
+        mValueIndex = null;
+    }
+
+    /**
+     * Returns a read-only list view of entries, that retrieves them from this provider.
+     */
+    List<CharSequence> getEntryList() {
+        return new AbstractList<CharSequence>() {
+            @Override
+            public CharSequence get(int location) {
+                return getEntry(location);
+            }
+
+            @Override
+            public int size() {
+                return getCount();
+            }
+        };
+    }
+
+    private static class ArrayEntryProvider extends EntryProvider {
+        private final CharSequence[] mEntries;
+        private final CharSequence[] mEntryValues;
+
+        ArrayEntryProvider(CharSequence[] entries, CharSequence[] entryValues) {
+            mEntries = entries;
+            mEntryValues = entryValues;
+        }
+
+        @Override
+        public int getCount() {
+            return mEntryValues.length;
+        }
+
+        @Override
+        public CharSequence getEntry(int index) {
+            return mEntries[index];
+        }
+
+        @Override
+        public CharSequence getEntryValue(int index) {
+            return mEntryValues[index];
+        }
+
+        @Override
+        List<CharSequence> getEntryList() {
+            return Arrays.asList(mEntries);
+        }
+    }
+}
@@ -19,7 +19,12 @@ package ticwear.design.preference;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -32,6 +37,8 @@ import android.view.ContextThemeWrapper;
 import android.view.InflateException;
 import android.view.LayoutInflater;
 
+import ticwear.design.internal.XmlUtils;
+
 // TODO: fix generics
 /**
  * Generic XML inflater. This has been adapted from {@link LayoutInflater} and
@@ -56,10 +63,22 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
     private static final Class[] mConstructorSignature = new Class[] {
             Context.class, AttributeSet.class};
 
-    private static final HashMap sConstructorMap = new HashMap();
+    // Shared by inflaters on all threads.
+    private static final Map<String, Constructor<?>> sConstructorMap =
+            new ConcurrentHashMap<>();
 
     private String mDefaultPackage;
 
+    // Inflating resource, and the path to the tag of current parent, by the indices
+    // of child tags from the root tag. Only set when inflating from a resource.
+    private int mResource;
+    private final List<Integer> mPath = new ArrayList<>();
+
+    // Which child tags rInflate handles.
+    private static final int INFLATE_ALL = 0;
+    private static final int INFLATE_CUSTOM = 1;
+    private static final int INFLATE_ITEMS = 2;
+
     public interface Parent<T> {
         public void addItemFromInflater(T child);
     }
@@ -261,12 +280,62 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
         if (DEBUG) System.out.println("INFLATING from resource: " + resource);
         XmlResourceParser parser = getContext().getResources().getXml(resource);
         try {
+            mResource = resource;
             return inflate(parser, root, attachToRoot);
         } finally {
+            mResource = 0;
             parser.close();
         }
     }
 
+    /**
+     * Inflate the children of an item whose children were deferred by
+     * {@link #shouldDeferChildren}, into the given parent. Throws
+     * InflaterException if there is an error.
+     *
+     * @param resource ID for the XML resource the item is inflated from.
+     * @param path The path to the tag of the item, as given to
+     *        {@link #onChildrenDeferred}.
+     * @param parent The item to add the children to.
+     */
+    public void inflateChildren(int resource, int[] path, P parent) {
+        if (DEBUG) System.out.println("INFLATING children from resource: " + resource);
+        XmlResourceParser parser = getContext().getResources().getXml(resource);
+        synchronized (mConstructorArgs) {
+            final AttributeSet attrs = Xml.asAttributeSet(parser);
+            mConstructorArgs[0] = mContext;
+            mResource = resource;
+
+            try {
+                moveToRootTag(parser);
+                for (int index : path) {
+                    moveToChildTag(parser, index);
+                    mPath.add(index);
+                }
+
+                rInflate(parser, (T) parent, attrs, INFLATE_ITEMS, null);
+
+            } catch (InflateException e) {
+                throw e;
+
+            } catch (XmlPullParserException e) {
+                InflateException ex = new InflateException(e.getMessage());
+                ex.initCause(e);
+                throw ex;
+            } catch (IOException e) {
+                InflateException ex = new InflateException(
+                        parser.getPositionDescription()
+                        + ": " + e.getMessage());
+                ex.initCause(e);
+                throw ex;
+            } finally {
+                mResource = 0;
+                mPath.clear();
+                parser.close();
+            }
+        }
+    }
+
     /**
      * Inflate a new hierarchy from the specified XML node. Throws
      * InflaterException if there is an error.
@@ -293,20 +362,12 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
         synchronized (mConstructorArgs) {
             final AttributeSet attrs = Xml.asAttributeSet(parser);
             mConstructorArgs[0] = mContext;
+            mPath.clear();
             T result = (T) root;
 
             try {
                 // Look for the root node.
-                int type;
-                while ((type = parser.next()) != parser.START_TAG
-                        && type != parser.END_DOCUMENT) {
-                    ;
-                }
-
-                if (type != parser.START_TAG) {
-                    throw new InflateException(parser.getPositionDescription()
-                            + ": No start tag found!");
-                }
+                moveToRootTag(parser);
 
                 if (DEBUG) {
                     System.out.println("**************************");
@@ -324,7 +385,7 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
                     System.out.println("-----> start inflating children");
                 }
                 // Inflate all children under temp
-                rInflate(parser, result, attrs);
+                rInflate(parser, result, attrs, INFLATE_ALL, null);
                 if (DEBUG) {
                     System.out.println("-----> done inflating children");
                 }
@@ -367,16 +428,11 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
      */
     public final T createItem(String name, String prefix, AttributeSet attrs)
             throws ClassNotFoundException, InflateException {
-        Constructor constructor = (Constructor) sConstructorMap.get(name);
+        Constructor constructor = sConstructorMap.get(name);
 
         try {
             if (null == constructor) {
-                // Class not found in the cache, see if it's real,
-                // and try to add it
-                Class clazz = mContext.getClassLoader().loadClass(
-                        prefix != null ? (prefix + name) : name);
-                constructor = clazz.getConstructor(mConstructorSignature);
-                sConstructorMap.put(name, constructor);
+                constructor = loadConstructor(name, prefix);
             }
 
             Object[] args = mConstructorArgs;
@@ -404,6 +460,44 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
         }
     }
 
+    /**
+     * Resolves the constructors of the given items and caches them, so a later
+     * inflation of these items doesn't pay for the class loading and reflective
+     * lookups. Names are resolved the same way as tag names, names without a
+     * period are searched in the default package. This can be called from any
+     * thread.
+     *
+     * @param names Names of the items, as used in the xml.
+     * @return The count of items resolved. Names of unknown classes are skipped.
+     */
+    public int preloadItems(String... names) {
+        int count = 0;
+        for (String name : names) {
+            if (sConstructorMap.containsKey(name)) {
+                count++;
+                continue;
+            }
+            try {
+                loadConstructor(name, -1 == name.indexOf('.') ? mDefaultPackage : null);
+                count++;
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                if (DEBUG) System.out.println("Can't preload item " + name + ": " + e);
+            }
+        }
+        return count;
+    }
+
+    private Constructor<?> loadConstructor(String name, String prefix)
+            throws ClassNotFoundException, NoSuchMethodException {
+        // Class not found in the cache, see if it's real,
+        // and try to add it
+        Class<?> clazz = mContext.getClassLoader().loadClass(
+                prefix != null ? (prefix + name) : name);
+        Constructor<?> constructor = clazz.getConstructor(mConstructorSignature);
+        sConstructorMap.put(name, constructor);
+        return constructor;
+    }
+
     /**
      * This routine is responsible for creating the correct subclass of item
      * given the xml element name. Override it to handle custom item objects. If
@@ -454,14 +548,56 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
         }
     }
 
+    private static void moveToRootTag(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        int type;
+        while ((type = parser.next()) != parser.START_TAG
+                && type != parser.END_DOCUMENT) {
+            ;
+        }
+
+        if (type != parser.START_TAG) {
+            throw new InflateException(parser.getPositionDescription()
+                    + ": No start tag found!");
+        }
+    }
+
+    private static void moveToChildTag(XmlPullParser parser, int index)
+            throws XmlPullParserException, IOException {
+        final int depth = parser.getDepth();
+
+        int childIndex = -1;
+        int type;
+        while (((type = parser.next()) != parser.END_TAG ||
+                parser.getDepth() > depth) && type != parser.END_DOCUMENT) {
+            if (type != parser.START_TAG) {
+                continue;
+            }
+            if (++childIndex == index) {
+                return;
+            }
+            XmlUtils.skipCurrentTag(parser);
+        }
+
+        throw new InflateException(parser.getPositionDescription()
+                + ": No child tag at " + index);
+    }
+
     /**
      * Recursive method used to descend down the xml hierarchy and instantiate
      * items, instantiate their children, and then call onFinishInflate().
+     *
+     * @param mode Which child tags to handle, the others are skipped.
+     * @param skippedKeys Collects the keys of the skipped items, and the items in them.
+     * @return Whether any item tag is skipped.
      */
-    private void rInflate(XmlPullParser parser, T parent, final AttributeSet attrs)
+    private boolean rInflate(XmlPullParser parser, T parent, final AttributeSet attrs, int mode,
+                             Set<String> skippedKeys)
             throws XmlPullParserException, IOException {
         final int depth = parser.getDepth();
+        boolean skippedItems = false;
 
+        int childIndex = -1;
         int type;
         while (((type = parser.next()) != parser.END_TAG ||
                 parser.getDepth() > depth) && type != parser.END_DOCUMENT) {
@@ -469,8 +605,21 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
             if (type != parser.START_TAG) {
                 continue;
             }
+            childIndex++;
+
+            if (mode == INFLATE_ITEMS) {
+                if (isCustomTag(parser)) {
+                    // Handled with the parent.
+                    XmlUtils.skipCurrentTag(parser);
+                    continue;
+                }
+            } else if (onCreateCustomFromTag(parser, parent, attrs)) {
+                continue;
+            }
 
-            if (onCreateCustomFromTag(parser, parent, attrs)) {
+            if (mode == INFLATE_CUSTOM) {
+                skipItemTag(parser, attrs, skippedKeys);
+                skippedItems = true;
                 continue;
             }
 
@@ -488,15 +637,101 @@ abstract class GenericInflater<T, P extends GenericInflater.Parent> {
 
             ((P) parent).addItemFromInflater(item);
 
+            final boolean deferChildren = mResource != 0 && shouldDeferChildren(item);
             if (DEBUG) {
-                System.out.println("-----> start inflating children");
+                System.out.println("-----> start inflating children"
+                        + (deferChildren ? " (deferred)" : ""));
             }
-            rInflate(parser, item, attrs);
+            mPath.add(childIndex);
+            if (deferChildren) {
+                final Set<String> deferredKeys = new HashSet<>();
+                if (rInflate(parser, item, attrs, INFLATE_CUSTOM, deferredKeys)) {
+                    onChildrenDeferred(item, mResource, toArray(mPath), deferredKeys);
+                }
+            } else {
+                rInflate(parser, item, attrs, INFLATE_ALL, null);
+            }
+            mPath.remove(mPath.size() - 1);
             if (DEBUG) {
                 System.out.println("-----> done inflating children");
             }
         }
 
+        return skippedItems;
+    }
+
+    /**
+     * Skips the item tag the parser is pointing to, and the tags in it, adding the
+     * keys of the items to the given set.
+     */
+    private void skipItemTag(XmlPullParser parser, AttributeSet attrs, Set<String> keys)
+            throws XmlPullParserException, IOException {
+        final int depth = parser.getDepth();
+
+        int type = parser.getEventType();
+        do {
+            if (type != parser.START_TAG) {
+                continue;
+            }
+            if (isCustomTag(parser)) {
+                XmlUtils.skipCurrentTag(parser);
+                continue;
+            }
+            final String key = getItemKey(attrs);
+            if (key != null) {
+                keys.add(key);
+            }
+        } while (((type = parser.next()) != parser.END_TAG ||
+                parser.getDepth() > depth) && type != parser.END_DOCUMENT);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Whether the tag the parser is pointing to is handled by
+     * {@link #onCreateCustomFromTag}, instead of being an item.
+     */
+    protected boolean isCustomTag(XmlPullParser parser) {
+        return false;
+    }
+
+    /**
+     * Whether to defer the inflation of the children of an item. Only the custom
+     * tags of a deferred item are handled now, the child items are left to
+     * {@link #inflateChildren}. This is only asked when inflating from a resource.
+     *
+     * @param item The item just created and added to its parent.
+     * @return Whether to defer the inflation of its child items.
+     */
+    protected boolean shouldDeferChildren(T item) {
+        return false;
+    }
+
+    /**
+     * Called when the child items of an item are deferred.
+     *
+     * @param item The item with deferred children.
+     * @param resource ID for the XML resource the item is inflated from.
+     * @param path The path to the tag of the item, to give to {@link #inflateChildren}.
+     * @param keys The keys of the deferred items, at any depth, by {@link #getItemKey}.
+     */
+    protected void onChildrenDeferred(T item, int resource, int[] path, Set<String> keys) {
+    }
+
+    /**
+     * Returns the key of the item of a tag that is skipped, without creating the item.
+     *
+     * @param attrs The attributes of the tag.
+     * @return The key of the item, or null if it has none.
+     */
+    protected String getItemKey(AttributeSet attrs) {
+        return null;
     }
 
     /**
@@ -35,6 +35,9 @@ import ticwear.design.app.AlertDialog.Builder;
  * <p>
  * This preference will store a string into the SharedPreferences. This string will be the value
  * from the {@link #setEntryValues(CharSequence[])} array.
+ * <p>
+ * For a huge entry set, use {@link #setEntryProvider(EntryProvider)} instead of the
+ * arrays, to load the entries on demand.
  *
  * @attr ref android.R.styleable#ListPreference_entries
  * @attr ref android.R.styleable#ListPreference_entryValues
@@ -42,6 +45,7 @@ import ticwear.design.app.AlertDialog.Builder;
 public class ListPreference extends DialogPreference {
     private CharSequence[] mEntries;
     private CharSequence[] mEntryValues;
+    private EntryProvider mEntryProvider;
     private String mValue;
     private String mSummary;
     private int mClickedDialogEntryIndex;
@@ -89,6 +93,7 @@ public class ListPreference extends DialogPreference {
      */
     public void setEntries(CharSequence[] entries) {
         mEntries = entries;
+        mEntryProvider = null;
     }
 
     /**
@@ -102,7 +107,7 @@ public class ListPreference extends DialogPreference {
     /**
      * The list of entries to be shown in the list in subsequent dialogs.
      *
-     * @return The list as an array.
+     * @return The list as an array, or null if entries are from an {@link EntryProvider}.
      */
     public CharSequence[] getEntries() {
         return mEntries;
@@ -117,6 +122,7 @@ public class ListPreference extends DialogPreference {
      */
     public void setEntryValues(CharSequence[] entryValues) {
         mEntryValues = entryValues;
+        mEntryProvider = null;
     }
 
     /**
@@ -130,12 +136,39 @@ public class ListPreference extends DialogPreference {
     /**
      * Returns the array of values to be saved for the preference.
      *
-     * @return The array of values.
+     * @return The array of values, or null if entries are from an {@link EntryProvider}.
      */
     public CharSequence[] getEntryValues() {
         return mEntryValues;
     }
 
+    /**
+     * Sets the provider of entries and entry values, in place of the arrays. The
+     * entries are only retrieved from it when needed.
+     *
+     * @param provider The provider of entries.
+     * @see #setEntries(CharSequence[])
+     * @see #setEntryValues(CharSequence[])
+     */
+    public void setEntryProvider(EntryProvider provider) {
+        mEntries = null;
+        mEntryValues = null;
+        mEntryProvider = provider;
+    }
+
+    /**
+     * Returns the provider of entries and entry values. If the entries are set as arrays,
+     * it's a provider of the arrays.
+     *
+     * @return The provider, or null if there are no entries.
+     */
+    public EntryProvider getEntryProvider() {
+        if (mEntryProvider == null && mEntries != null && mEntryValues != null) {
+            mEntryProvider = EntryProvider.of(mEntries, mEntryValues);
+        }
+        return mEntryProvider;
+    }
+
     /**
      * Sets the value of the key. This should be one of the entries in
      * {@link #getEntryValues()}.
@@ -166,7 +199,7 @@ public class ListPreference extends DialogPreference {
     @Override
     public CharSequence getSummary() {
         final CharSequence entry = getEntry();
-        if (mSummary == null) {
+        if (mSummary == null || getSummaryProvider() != null) {
             return super.getSummary();
         } else {
             return String.format(mSummary, entry == null ? "" : entry);
@@ -198,8 +231,9 @@ public class ListPreference extends DialogPreference {
      * @param index The index of the value to set.
      */
     public void setValueIndex(int index) {
-        if (mEntryValues != null) {
-            setValue(mEntryValues[index].toString());
+        final EntryProvider provider = getEntryProvider();
+        if (provider != null) {
+            setValue(provider.getEntryValue(index).toString());
         }
     }
 
@@ -220,7 +254,7 @@ public class ListPreference extends DialogPreference {
      */
     public CharSequence getEntry() {
         int index = getValueIndex();
-        return index >= 0 && mEntries != null ? mEntries[index] : null;
+        return index >= 0 ? getEntryProvider().getEntry(index) : null;
     }
 
     /**
@@ -230,14 +264,8 @@ public class ListPreference extends DialogPreference {
      * @return The index of the value, or -1 if not found.
      */
     public int findIndexOfValue(String value) {
-        if (value != null && mEntryValues != null) {
-            for (int i = mEntryValues.length - 1; i >= 0; i--) {
-                if (mEntryValues[i].equals(value)) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        final EntryProvider provider = getEntryProvider();
+        return provider != null ? provider.findIndexOfValue(value) : -1;
     }
 
     private int getValueIndex() {
@@ -248,13 +276,15 @@ public class ListPreference extends DialogPreference {
     protected void onPrepareDialogBuilder(Builder builder) {
         super.onPrepareDialogBuilder(builder);
 
-        if (mEntries == null || mEntryValues == null) {
+        final EntryProvider provider = getEntryProvider();
+        if (provider == null) {
             throw new IllegalStateException(
-                    "ListPreference requires an entries array and an entryValues array.");
+                    "ListPreference requires an entries array and an entryValues array, " +
+                    "or an entry provider.");
         }
 
         mClickedDialogEntryIndex = getValueIndex();
-        builder.setSingleChoiceItems(mEntries, mClickedDialogEntryIndex,
+        builder.setSingleChoiceItems(provider.getEntryList(), mClickedDialogEntryIndex,
                 new DialogInterface.OnClickListener() {
                     public void onClick(DialogInterface dialog, int which) {
                         mClickedDialogEntryIndex = which;
@@ -283,8 +313,9 @@ public class ListPreference extends DialogPreference {
     protected void onDialogClosed(boolean positiveResult) {
         super.onDialogClosed(positiveResult);
 
-        if (mClickedDialogEntryIndex >= 0 && mEntryValues != null) {
-            String value = mEntryValues[mClickedDialogEntryIndex].toString();
+        final EntryProvider provider = getEntryProvider();
+        if (mClickedDialogEntryIndex >= 0 && provider != null) {
+            String value = provider.getEntryValue(mClickedDialogEntryIndex).toString();
             if (callChangeListener(value)) {
                 setValue(value);
             }
@@ -26,6 +26,7 @@ import android.os.Parcelable;
 import android.util.AttributeSet;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -39,6 +40,9 @@ import ticwear.design.app.AlertDialog.Builder;
  * This preference will store a set of strings into the SharedPreferences.
  * This set will contain one or more values from the
  * {@link #setEntryValues(CharSequence[])} array.
+ * <p>
+ * For a huge entry set, use {@link #setEntryProvider(EntryProvider)} instead of the
+ * arrays, to load the entries on demand.
  *
  * @attr ref android.R.styleable#MultiSelectListPreference_entries
  * @attr ref android.R.styleable#MultiSelectListPreference_entryValues
@@ -46,6 +50,7 @@ import ticwear.design.app.AlertDialog.Builder;
 public class MultiSelectListPreference extends DialogPreference {
     private CharSequence[] mEntries;
     private CharSequence[] mEntryValues;
+    private EntryProvider mEntryProvider;
     private Set<String> mValues = new HashSet<String>();
     private Set<String> mNewValues = new HashSet<String>();
     private boolean mPreferenceChanged;
@@ -86,6 +91,7 @@ public class MultiSelectListPreference extends DialogPreference {
      */
     public void setEntries(CharSequence[] entries) {
         mEntries = entries;
+        mEntryProvider = null;
     }
 
     /**
@@ -99,7 +105,7 @@ public class MultiSelectListPreference extends DialogPreference {
     /**
      * The list of entries to be shown in the list in subsequent dialogs.
      *
-     * @return The list as an array.
+     * @return The list as an array, or null if entries are from an {@link EntryProvider}.
      */
     public CharSequence[] getEntries() {
         return mEntries;
@@ -114,6 +120,7 @@ public class MultiSelectListPreference extends DialogPreference {
      */
     public void setEntryValues(CharSequence[] entryValues) {
         mEntryValues = entryValues;
+        mEntryProvider = null;
     }
 
     /**
@@ -127,12 +134,39 @@ public class MultiSelectListPreference extends DialogPreference {
     /**
      * Returns the array of values to be saved for the preference.
      *
-     * @return The array of values.
+     * @return The array of values, or null if entries are from an {@link EntryProvider}.
      */
     public CharSequence[] getEntryValues() {
         return mEntryValues;
     }
 
+    /**
+     * Sets the provider of entries and entry values, in place of the arrays. The
+     * entries are only retrieved from it when needed.
+     *
+     * @param provider The provider of entries.
+     * @see #setEntries(CharSequence[])
+     * @see #setEntryValues(CharSequence[])
+     */
+    public void setEntryProvider(EntryProvider provider) {
+        mEntries = null;
+        mEntryValues = null;
+        mEntryProvider = provider;
+    }
+
+    /**
+     * Returns the provider of entries and entry values. If the entries are set as arrays,
+     * it's a provider of the arrays.
+     *
+     * @return The provider, or null if there are no entries.
+     */
+    public EntryProvider getEntryProvider() {
+        if (mEntryProvider == null && mEntries != null && mEntryValues != null) {
+            mEntryProvider = EntryProvider.of(mEntries, mEntryValues);
+        }
+        return mEntryProvider;
+    }
+
     /**
      * Sets the value of the key. This should contain entries in
      * {@link #getEntryValues()}.
@@ -160,34 +194,30 @@ public class MultiSelectListPreference extends DialogPreference {
      * @return The index of the value, or -1 if not found.
      */
     public int findIndexOfValue(String value) {
-        if (value != null && mEntryValues != null) {
-            for (int i = mEntryValues.length - 1; i >= 0; i--) {
-                if (mEntryValues[i].equals(value)) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        final EntryProvider provider = getEntryProvider();
+        return provider != null ? provider.findIndexOfValue(value) : -1;
     }
 
     @Override
     protected void onPrepareDialogBuilder(Builder builder) {
         super.onPrepareDialogBuilder(builder);
 
-        if (mEntries == null || mEntryValues == null) {
+        final EntryProvider provider = getEntryProvider();
+        if (provider == null) {
             throw new IllegalStateException(
                     "MultiSelectListPreference requires an entries array and " +
-                    "an entryValues array.");
+                    "an entryValues array, or an entry provider.");
         }
 
-        boolean[] checkedItems = getSelectedItems();
-        builder.setMultiChoiceItems(mEntries, checkedItems,
+        BitSet checkedItems = getSelectedItems(provider);
+        builder.setMultiChoiceItems(provider.getEntryList(), checkedItems,
                 new DialogInterface.OnMultiChoiceClickListener() {
                     public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        final String value = provider.getEntryValue(which).toString();
                         if (isChecked) {
-                            mPreferenceChanged |= mNewValues.add(mEntryValues[which].toString());
+                            mPreferenceChanged |= mNewValues.add(value);
                         } else {
-                            mPreferenceChanged |= mNewValues.remove(mEntryValues[which].toString());
+                            mPreferenceChanged |= mNewValues.remove(value);
                         }
                     }
                 });
@@ -205,14 +235,15 @@ public class MultiSelectListPreference extends DialogPreference {
         builder.setNegativeButton((CharSequence) null, null);
     }
 
-    private boolean[] getSelectedItems() {
-        final CharSequence[] entries = mEntryValues;
-        final int entryCount = entries.length;
-        final Set<String> values = mValues;
-        boolean[] result = new boolean[entryCount];
+    private BitSet getSelectedItems(EntryProvider provider) {
+        BitSet result = new BitSet();
 
-        for (int i = 0; i < entryCount; i++) {
-            result[i] = values.contains(entries[i].toString());
+        // Look the selected values up, instead of going through all entries.
+        for (String value : mValues) {
+            int index = provider.findIndexOfValue(value);
+            if (index >= 0) {
+                result.set(index);
+            }
         }
 
         return result;
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.util.LruCache;
+
+/**
+ * An {@link EntryProvider} that loads its entries in pages, and keeps only the
+ * recently used pages in memory.
+ *
+ * Subclasses give the count of entries, and load a page of them in
+ * {@link #onLoadPage(int, int, CharSequence[], CharSequence[])}. Subclasses that can
+ * look a value up directly (e.g. with a query) should also override
+ * {@link #findIndexOfValue(String)}, so the lookup doesn't load all the pages once.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public abstract class PagedEntryProvider extends EntryProvider {
+
+    public static final int DEFAULT_PAGE_SIZE = 64;
+    public static final int DEFAULT_MAX_PAGES = 4;
+
+    private final int mPageSize;
+    private final LruCache<Integer, Page> mPages;
+
+    public PagedEntryProvider() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * @param pageSize Count of entries in a page.
+     * @param maxPages Count of pages to keep in memory.
+     */
+    public PagedEntryProvider(int pageSize, int maxPages) {
+        if (pageSize <= 0 || maxPages <= 0) {
+            throw new IllegalArgumentException("pageSize and maxPages must be positive.");
+        }
+        mPageSize = pageSize;
+        mPages = new LruCache<>(maxPages);
+    }
+
+    /**
+     * Load a page of entries.
+     *
+     * @param start Index of the first entry in the page.
+     * @param count Count of entries in the page.
+     * @param entries Array to fill with count of human-readable entries.
+     * @param entryValues Array to fill with count of entry values.
+     */
+    protected abstract void onLoadPage(int start, int count,
+                                       CharSequence[] entries, CharSequence[] entryValues);
+
+    @Override
+    public CharSequence getEntry(int index) {
+        return getPage(index).entries[index % mPageSize];
+    }
+
+    @Override
+    public CharSequence getEntryValue(int index) {
+        return getPage(index).entryValues[index % mPageSize];
+    }
+
+    /**
+     * Drops the loaded pages, as well as the value index.
+     */
+    @Override
+    public void notifyChanged() {
+        super.notifyChanged();
+        mPages.evictAll();
+    }
+
+    private Page getPage(int index) {
+        final int count = getCount();
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + count);
+        }
+        final int pageIndex = index / mPageSize;
+        Page page = mPages.get(pageIndex);
+        if (page == null) {
+            final int start = pageIndex * mPageSize;
+            final int size = Math.min(mPageSize, count - start);
+            page = new Page(size);
+            onLoadPage(start, size, page.entries, page.entryValues);
+            mPages.put(pageIndex, page);
+        }
+        return page;
+    }
+
+    private static class Page {
+        final CharSequence[] entries;
+        final CharSequence[] entryValues;
+
+        Page(int size) {
+            entries = new CharSequence[size];
+            entryValues = new CharSequence[size];
+        }
+    }
+}
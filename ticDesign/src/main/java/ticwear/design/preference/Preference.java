@@ -69,6 +69,7 @@ public class Preference implements Comparable<Preference> {
 
     private OnPreferenceChangeListener mOnChangeListener;
     private OnPreferenceClickListener mOnClickListener;
+    private SummaryProvider mSummaryProvider;
 
     private int mOrder = DEFAULT_ORDER;
     private CharSequence mTitle;
@@ -92,6 +93,11 @@ public class Preference implements Comparable<Preference> {
     private boolean mDependencyMet = true;
     private boolean mParentDependencyMet = true;
 
+    /**
+     * The group this is added to, it keeps an index of keys of its descendants.
+     */
+    PreferenceGroup mParentGroup;
+
     /**
      * @see #setShouldDisableView(boolean)
      */
@@ -146,6 +152,25 @@ public class Preference implements Comparable<Preference> {
         boolean onPreferenceClick(Preference preference);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when the summary of a
+     * {@link Preference} is needed. Useful for a summary that comes from the
+     * preference's value, or from preferences that may not be inflated yet, like
+     * the children of a lazily inflated {@link PreferenceScreen}.
+     *
+     * @param <T> The type of the preference.
+     * @see PreferenceManager#setLazyInflation(boolean)
+     */
+    public interface SummaryProvider<T extends Preference> {
+        /**
+         * Called when the summary of a Preference is needed.
+         *
+         * @param preference The Preference to provide the summary of.
+         * @return The summary.
+         */
+        CharSequence provideSummary(T preference);
+    }
+
     /**
      * Interface definition for a callback to be invoked when this
      * {@link Preference} is changed or, if this is a group, there is an
@@ -531,10 +556,39 @@ public class Preference implements Comparable<Preference> {
      * @return The summary.
      * @see #setSummary(CharSequence)
      */
+    @SuppressWarnings("unchecked")
     public CharSequence getSummary() {
+        if (mSummaryProvider != null) {
+            return mSummaryProvider.provideSummary(this);
+        }
         return mSummary;
     }
 
+    /**
+     * Sets the provider of the summary. When set, the summary is given by it,
+     * instead of the one set by {@link #setSummary(CharSequence)}.
+     * <p>
+     * The summary is asked for each time the preference is bound. A nested
+     * {@link PreferenceScreen} is rebound when its dialog is dismissed, for the
+     * changes made in it.
+     *
+     * @param summaryProvider The provider, or null to use the summary set.
+     */
+    public void setSummaryProvider(SummaryProvider<? extends Preference> summaryProvider) {
+        mSummaryProvider = summaryProvider;
+        notifyChanged();
+    }
+
+    /**
+     * Returns the provider of the summary.
+     *
+     * @return The provider, or null if not set.
+     * @see #setSummaryProvider(SummaryProvider)
+     */
+    public SummaryProvider<? extends Preference> getSummaryProvider() {
+        return mSummaryProvider;
+    }
+
     /**
      * Sets the summary for this Preference with a CharSequence.
      *
@@ -655,8 +709,13 @@ public class Preference implements Comparable<Preference> {
      * @param key The key for the preference.
      */
     public void setKey(String key) {
+        final String oldKey = mKey;
         mKey = key;
 
+        if (mParentGroup != null && !TextUtils.equals(oldKey, key)) {
+            mParentGroup.onDescendantKeyChanged(this, oldKey, key);
+        }
+
         if (mRequiresKey && !hasKey()) {
             requireKey();
         }
@@ -1149,6 +1208,17 @@ public class Preference implements Comparable<Preference> {
         registerDependency();
     }
 
+    /**
+     * Sets the key of the dependency without registering it. It's registered when
+     * this Preference is attached to the activity, the same as one set from XML.
+     *
+     * @param dependencyKey The key of the Preference that this depends on.
+     * @see PreferenceManager#setCompiledDependency(Preference, String)
+     */
+    void setDependencyKey(String dependencyKey) {
+        mDependencyKey = dependencyKey;
+    }
+
     /**
      * Returns the key of the dependency on this Preference.
      *
@@ -45,6 +45,16 @@ public abstract class PreferenceFragment extends Fragment implements
     private boolean mHavePrefs;
     private boolean mInitDone;
 
+    /**
+     * The listener of the async inflation in progress, if any.
+     */
+    private PreferenceManager.OnInflateFinishedListener mPendingInflation;
+
+    /**
+     * Saved state of a hierarchy that is still being inflated.
+     */
+    private Bundle mPendingHierarchyState;
+
     private int mLayoutResId = R.layout.preference_list_fragment;
 
     /**
@@ -126,6 +136,8 @@ public abstract class PreferenceFragment extends Fragment implements
                 final PreferenceScreen preferenceScreen = getPreferenceScreen();
                 if (preferenceScreen != null) {
                     preferenceScreen.restoreHierarchyState(container);
+                } else if (mPendingInflation != null) {
+                    mPendingHierarchyState = container;
                 }
             }
         }
@@ -150,12 +162,14 @@ public abstract class PreferenceFragment extends Fragment implements
         mTitleView = null;
         mHandler.removeCallbacks(mRequestFocus);
         mHandler.removeMessages(MSG_BIND_PREFERENCES);
+        mPreferenceManager.cancelPrefetch();
         super.onDestroyView();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        mPendingInflation = null;
         mPreferenceManager.dispatchActivityDestroy();
     }
 
@@ -235,6 +249,64 @@ public abstract class PreferenceFragment extends Fragment implements
                 preferencesResId, getPreferenceScreen()));
     }
 
+    /**
+     * Shows a preference hierarchy compiled ahead of time from XML, as the preference
+     * hierarchy. This replaces the current hierarchy.
+     *
+     * @param compiled The compiled preference hierarchy.
+     * @see CompiledPreferences
+     */
+    public void setPreferencesFromCompiled(CompiledPreferences compiled) {
+        requirePreferenceManager();
+
+        setPreferenceScreen(mPreferenceManager.inflateFromCompiled(getActivity(), compiled));
+    }
+
+    /**
+     * Inflates the given XML resource on a background thread, and shows it as the
+     * preference hierarchy when ready. Use this instead of
+     * {@link #addPreferencesFromResource(int)} for a large hierarchy, to keep its
+     * inflation off the main thread.
+     * <p>
+     * The hierarchy is not merged into the current one, but replaces it. If the
+     * inflation fails, the error is thrown on the main thread.
+     *
+     * @param preferencesResId The XML resource ID to inflate.
+     * @see PreferenceManager#preloadInflater(android.content.Context, String...)
+     */
+    public void setPreferencesFromResourceAsync(@XmlRes int preferencesResId) {
+        requirePreferenceManager();
+
+        mPendingInflation = new PreferenceManager.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(PreferenceScreen preferenceScreen) {
+                if (mPendingInflation != this) {
+                    // Destroyed, or another inflation is started.
+                    return;
+                }
+                mPendingInflation = null;
+                setPreferenceScreen(preferenceScreen);
+                if (mPendingHierarchyState != null) {
+                    preferenceScreen.restoreHierarchyState(mPendingHierarchyState);
+                    mPendingHierarchyState = null;
+                }
+            }
+
+            @Override
+            public void onInflateFailed(RuntimeException error) {
+                if (mPendingInflation != this) {
+                    return;
+                }
+                mPendingInflation = null;
+                mPendingHierarchyState = null;
+                // Fail like a synchronous inflation does.
+                throw error;
+            }
+        };
+        mPreferenceManager.inflateFromResourceAsync(getActivity(),
+                preferencesResId, mPendingInflation);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -278,6 +350,9 @@ public abstract class PreferenceFragment extends Fragment implements
         if (preferenceScreen != null) {
             preferenceScreen.bind(getListView());
             preferenceScreen.bindTitle(mTitleView);
+            // Get views of the sub-screens ready, after this screen is shown.
+            mPreferenceManager.prefetchViewHolders(getListView(),
+                    preferenceScreen.getRootAdapter());
         }
         onBindPreferences();
     }
@@ -23,11 +23,16 @@ import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 
+import ticwear.design.DesignConfig;
 import ticwear.design.R;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A container for multiple
@@ -48,6 +53,25 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
 
     private boolean mAttachedToActivity = false;
 
+    /**
+     * Keys of all descendants, for {@link #findPreference(CharSequence)}. It's updated as
+     * preferences are added and removed anywhere below this group, or change their keys.
+     */
+    private final Map<String, Preference> mKeyIndex = new HashMap<>();
+
+    /**
+     * Keys shared by more than one descendant. They are not in {@link #mKeyIndex}, and
+     * are found by walking the tree, which knows which of them comes first.
+     */
+    private final Set<String> mDuplicateKeys = new HashSet<>();
+
+    /**
+     * Children not inflated yet, in lazy inflation. They are not in {@link #mPreferenceList}.
+     *
+     * @see PreferenceManager#setLazyInflation(boolean)
+     */
+    private PreferenceInflater.DeferredChildren mDeferredChildren;
+
     public PreferenceGroup(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
 
@@ -105,6 +129,7 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
      * @return The number of preference children in this group.
      */
     public int getPreferenceCount() {
+        inflateDeferredChildren();
         return mPreferenceList.size();
     }
 
@@ -115,9 +140,67 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
      * @return The {@link Preference}.
      */
     public Preference getPreference(int index) {
+        inflateDeferredChildren();
         return mPreferenceList.get(index);
     }
 
+    /**
+     * Called by the inflater when the children of this group are deferred.
+     */
+    void setDeferredChildren(PreferenceInflater.DeferredChildren deferredChildren) {
+        mDeferredChildren = deferredChildren;
+    }
+
+    /**
+     * Whether the children of this group are not inflated yet.
+     *
+     * @see PreferenceManager#setLazyInflation(boolean)
+     */
+    boolean hasDeferredChildren() {
+        return mDeferredChildren != null;
+    }
+
+    /**
+     * Inflates the children of this group, if they are deferred.
+     */
+    void inflateDeferredChildren() {
+        final PreferenceInflater.DeferredChildren deferredChildren = mDeferredChildren;
+        if (deferredChildren == null) {
+            return;
+        }
+        mDeferredChildren = null;
+        deferredChildren.inflate(this);
+        if (deferredChildren.restoreState != null) {
+            for (Preference preference : mPreferenceList) {
+                preference.dispatchRestoreInstanceState(deferredChildren.restoreState);
+            }
+        }
+    }
+
+    /**
+     * Inflates the deferred groups in this subtree that have a preference of the key.
+     * The other deferred groups are left as is.
+     *
+     * @return Whether any group is inflated.
+     */
+    private boolean inflateDeferredOwners(String key) {
+        final PreferenceInflater.DeferredChildren deferredChildren = mDeferredChildren;
+        if (deferredChildren != null) {
+            if (!deferredChildren.hasKey(key)) {
+                return false;
+            }
+            inflateDeferredChildren();
+        }
+        boolean inflated = deferredChildren != null;
+        for (int i = 0; i < mPreferenceList.size(); i++) {
+            final Preference preference = mPreferenceList.get(i);
+            if (preference instanceof PreferenceGroup) {
+                inflated |= ((PreferenceGroup) preference).inflateDeferredOwners(key);
+            }
+        }
+        return inflated;
+    }
+
     /**
      * Adds a {@link Preference} at the correct position based on the
      * preference's order.
@@ -156,6 +239,9 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
             mPreferenceList.add(insertionIndex, preference);
         }
 
+        preference.mParentGroup = this;
+        indexSubtree(preference);
+
         preference.onAttachedToHierarchy(getPreferenceManager());
 
         if (mAttachedToActivity) {
@@ -182,7 +268,14 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
     private boolean removePreferenceInt(Preference preference) {
         synchronized(this) {
             preference.onPrepareForRemoval();
-            return mPreferenceList.remove(preference);
+            final boolean removed = mPreferenceList.remove(preference);
+            if (removed) {
+                unindexSubtree(preference);
+                if (preference.mParentGroup == this) {
+                    preference.mParentGroup = null;
+                }
+            }
+            return removed;
         }
     }
 
@@ -227,6 +320,44 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
         if (TextUtils.equals(getKey(), key)) {
             return this;
         }
+        if (key == null) {
+            return findPreferenceInTree(null);
+        }
+
+        final String keyString = key.toString();
+        Preference preference;
+        boolean duplicated;
+        synchronized (this) {
+            duplicated = mDuplicateKeys.contains(keyString);
+            preference = duplicated ? null : mKeyIndex.get(keyString);
+        }
+        if (preference == null && !duplicated && inflateDeferredOwners(keyString)) {
+            // In the deferred children just inflated.
+            synchronized (this) {
+                duplicated = mDuplicateKeys.contains(keyString);
+                preference = duplicated ? null : mKeyIndex.get(keyString);
+            }
+        }
+        if (duplicated) {
+            return findPreferenceInTree(keyString);
+        }
+
+        if (DesignConfig.DEBUG_PREFERENCES) {
+            final Preference expected = findPreferenceInTree(keyString);
+            if (expected != preference) {
+                throw new IllegalStateException("Key index of \"" + getKey() + "\" is out of sync"
+                        + " for \"" + keyString + "\": " + preference + ", expected " + expected);
+            }
+        }
+
+        return preference;
+    }
+
+    /**
+     * Finds a {@link Preference} by walking through the children, in the order
+     * {@link #findPreference(CharSequence)} documented.
+     */
+    private Preference findPreferenceInTree(CharSequence key) {
         final int preferenceCount = getPreferenceCount();
         for (int i = 0; i < preferenceCount; i++) {
             final Preference preference = getPreference(i);
@@ -248,6 +379,80 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
         return null;
     }
 
+    /**
+     * Called when the key of a descendant changed, to update the key index of
+     * this group and its ancestors.
+     */
+    void onDescendantKeyChanged(Preference preference, String oldKey, String newKey) {
+        for (PreferenceGroup group = this; group != null; group = group.mParentGroup) {
+            synchronized (group) {
+                group.removeFromKeyIndex(oldKey, preference);
+                group.addToKeyIndex(newKey, preference);
+            }
+        }
+    }
+
+    /**
+     * Adds the keys of a new child and its descendants to this group and its ancestors.
+     */
+    private void indexSubtree(Preference child) {
+        for (PreferenceGroup group = this; group != null; group = group.mParentGroup) {
+            synchronized (group) {
+                group.addToKeyIndex(child.getKey(), child);
+                if (child instanceof PreferenceGroup) {
+                    final PreferenceGroup childGroup = (PreferenceGroup) child;
+                    synchronized (childGroup) {
+                        for (Map.Entry<String, Preference> e : childGroup.mKeyIndex.entrySet()) {
+                            group.addToKeyIndex(e.getKey(), e.getValue());
+                        }
+                        for (String key : childGroup.mDuplicateKeys) {
+                            group.mKeyIndex.remove(key);
+                            group.mDuplicateKeys.add(key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the keys of a removed child and its descendants from this group and its
+     * ancestors. Keys known to be duplicated are kept, they are still found correctly
+     * by walking the tree.
+     */
+    private void unindexSubtree(Preference child) {
+        for (PreferenceGroup group = this; group != null; group = group.mParentGroup) {
+            synchronized (group) {
+                group.removeFromKeyIndex(child.getKey(), child);
+                if (child instanceof PreferenceGroup) {
+                    final PreferenceGroup childGroup = (PreferenceGroup) child;
+                    synchronized (childGroup) {
+                        for (Map.Entry<String, Preference> e : childGroup.mKeyIndex.entrySet()) {
+                            group.removeFromKeyIndex(e.getKey(), e.getValue());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void addToKeyIndex(String key, Preference preference) {
+        if (key == null || mDuplicateKeys.contains(key)) {
+            return;
+        }
+        final Preference existing = mKeyIndex.put(key, preference);
+        if (existing != null && existing != preference) {
+            mKeyIndex.remove(key);
+            mDuplicateKeys.add(key);
+        }
+    }
+
+    private void removeFromKeyIndex(String key, Preference preference) {
+        if (key != null && mKeyIndex.get(key) == preference) {
+            mKeyIndex.remove(key);
+        }
+    }
+
     /**
      * Whether this preference group should be shown on the same screen as its
      * contained preferences.
@@ -267,10 +472,11 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
         // can tell it we are already attached
         mAttachedToActivity = true;
 
-        // Dispatch to all contained preferences
-        final int preferenceCount = getPreferenceCount();
+        // Dispatch to all contained preferences, deferred ones are attached when
+        // they are added
+        final int preferenceCount = mPreferenceList.size();
         for (int i = 0; i < preferenceCount; i++) {
-            getPreference(i).onAttachedToActivity();
+            mPreferenceList.get(i).onAttachedToActivity();
         }
     }
 
@@ -288,9 +494,10 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
 
         // Child preferences have an implicit dependency on their containing
         // group. Dispatch dependency change to all contained preferences.
-        final int preferenceCount = getPreferenceCount();
+        // Deferred ones get it when they are added.
+        final int preferenceCount = mPreferenceList.size();
         for (int i = 0; i < preferenceCount; i++) {
-            getPreference(i).onParentChanged(this, disableDependents);
+            mPreferenceList.get(i).onParentChanged(this, disableDependents);
         }
     }
 
@@ -304,6 +511,20 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
     protected void dispatchSaveInstanceState(Bundle container) {
         super.dispatchSaveInstanceState(container);
 
+        final PreferenceInflater.DeferredChildren deferredChildren = mDeferredChildren;
+        if (deferredChildren != null) {
+            // Still not inflated, keep the state they are waiting for.
+            final Bundle restoreState = deferredChildren.restoreState;
+            if (restoreState != null) {
+                for (String key : restoreState.keySet()) {
+                    if (!container.containsKey(key)) {
+                        container.putParcelable(key, restoreState.getParcelable(key));
+                    }
+                }
+            }
+            return;
+        }
+
         // Dispatch to all contained preferences
         final int preferenceCount = getPreferenceCount();
         for (int i = 0; i < preferenceCount; i++) {
@@ -313,6 +534,15 @@ public abstract class PreferenceGroup extends Preference implements GenericInfla
 
     @Override
     protected void dispatchRestoreInstanceState(Bundle container) {
+        final PreferenceInflater.DeferredChildren deferredChildren = mDeferredChildren;
+        if (deferredChildren != null) {
+            // Restored to the children when they are inflated, which may happen
+            // while this restores, e.g. a screen opens its dialog.
+            deferredChildren.restoreState = container;
+            super.dispatchRestoreInstanceState(container);
+            return;
+        }
+
         super.dispatchRestoreInstanceState(container);
 
         // Dispatch to all contained preferences
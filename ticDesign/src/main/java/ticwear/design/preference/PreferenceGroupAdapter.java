@@ -20,13 +20,12 @@ package ticwear.design.preference;
 import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Adapter;
 import android.widget.ListView;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -57,20 +56,10 @@ public class PreferenceGroupAdapter
     private List<Preference> mPreferenceList;
 
     /**
-     * List of unique Preference and its subclasses' names. This is used to find
-     * out how many types of views this adapter can return. Once the count is
-     * returned, this cannot be modified (since the ListView only checks the
-     * count once--when the adapter is being set). We will not recycle views for
-     * Preference subclasses seen after the count has been returned.
+     * View types of the preferences. Shared with the other adapters of the same
+     * {@link PreferenceManager}, so their views can be recycled in one pool.
      */
-    private ArrayList<PreferenceLayout> mPreferenceLayouts;
-
-    private PreferenceLayout mTempPreferenceLayout = new PreferenceLayout();
-
-    /**
-     * Blocks the mPreferenceClassNames from being changed anymore.
-     */
-    private boolean mHasReturnedViewTypeCount = false;
+    private final PreferenceViewTypes mViewTypes;
 
     private volatile boolean mIsSyncing = false;
 
@@ -86,30 +75,6 @@ public class PreferenceGroupAdapter
         this.mOnPreferenceItemClickListener = listener;
     }
 
-    private static class PreferenceLayout implements Comparable<PreferenceLayout> {
-        private int resId;
-        private int widgetResId;
-        private String name;
-        private Preference.ViewHolderCreator viewHolderCreator;
-
-        public int compareTo(@NonNull PreferenceLayout other) {
-            int compareNames = name.compareTo(other.name);
-            if (compareNames == 0) {
-                if (resId == other.resId) {
-                    if (widgetResId == other.widgetResId) {
-                        return 0;
-                    } else {
-                        return widgetResId - other.widgetResId;
-                    }
-                } else {
-                    return resId - other.resId;
-                }
-            } else {
-                return compareNames;
-            }
-        }
-    }
-
     public PreferenceGroupAdapter(PreferenceGroup preferenceGroup) {
         mPreferenceGroup = preferenceGroup;
 
@@ -123,7 +88,9 @@ public class PreferenceGroupAdapter
         mPreferenceGroup.setOnPreferenceChangeInternalListener(this);
 
         mPreferenceList = new ArrayList<>();
-        mPreferenceLayouts = new ArrayList<>();
+        PreferenceManager preferenceManager = preferenceGroup.getPreferenceManager();
+        mViewTypes = preferenceManager != null ? preferenceManager.getViewTypes()
+                : new PreferenceViewTypes();
 
         syncMyPreferences();
 
@@ -139,11 +106,15 @@ public class PreferenceGroupAdapter
             mIsSyncing = true;
         }
 
+        List<Preference> oldPreferenceList = mPreferenceList;
         List<Preference> newPreferenceList = new ArrayList<Preference>(mPreferenceList.size());
         flattenPreferenceGroup(newPreferenceList, mPreferenceGroup);
         mPreferenceList = newPreferenceList;
+        ensureRecycledViewCounts(newPreferenceList);
 
-        notifyDataSetChanged();
+        // Only notify what's changed, so unchanged rows are not rebound and
+        // item animations can run.
+        PreferenceListDiff.dispatch(oldPreferenceList, newPreferenceList, this);
 
         synchronized (this) {
             mIsSyncing = false;
@@ -161,9 +132,8 @@ public class PreferenceGroupAdapter
 
             preferences.add(preference);
 
-            if (!mHasReturnedViewTypeCount) {
-                addPreferenceClassName(preference);
-            }
+            // Declare view types before they are asked, so they are numbered in order.
+            mViewTypes.getViewType(preference);
 
             if (preference instanceof PreferenceGroup) {
                 final PreferenceGroup preferenceAsGroup = (PreferenceGroup) preference;
@@ -177,29 +147,19 @@ public class PreferenceGroupAdapter
     }
 
     /**
-     * Creates a string that includes the preference name, layout id and widget layout id.
-     * If a particular preference type uses 2 different resources, they will be treated as
-     * different view types.
+     * Let the shared pool hold ViewHolders of this list.
      */
-    private PreferenceLayout createPreferenceLayout(Preference preference, PreferenceLayout in) {
-        PreferenceLayout pl = in != null ? in : new PreferenceLayout();
-        pl.name = preference.getClass().getName();
-        pl.resId = preference.getLayoutResource();
-        pl.widgetResId = preference.getWidgetLayoutResource();
-        pl.viewHolderCreator = preference.mViewHolderCreator;
-        return pl;
-    }
-
-    private void addPreferenceClassName(Preference preference) {
-        final PreferenceLayout pl = createPreferenceLayout(preference, null);
-        int insertPos = Collections.binarySearch(mPreferenceLayouts, pl);
-
-        // Only insert if it doesn't exist (when it is negative).
-        if (insertPos < 0) {
-            // Convert to insert index
-            insertPos = insertPos * -1 - 1;
-            mPreferenceLayouts.add(insertPos, pl);
+    private void ensureRecycledViewCounts(List<Preference> preferences) {
+        final PreferenceManager preferenceManager = mPreferenceGroup.getPreferenceManager();
+        if (preferenceManager == null) {
+            return;
+        }
+        final SparseIntArray counts = new SparseIntArray();
+        for (Preference preference : preferences) {
+            final int viewType = mViewTypes.getViewType(preference);
+            counts.put(viewType, counts.get(viewType) + 1);
         }
+        preferenceManager.ensureRecycledViewCounts(counts);
     }
 
     @Override
@@ -220,7 +180,11 @@ public class PreferenceGroupAdapter
 
     @Override
     public void onPreferenceChange(Preference preference) {
-        notifyDataSetChanged();
+        final int position = mPreferenceList.indexOf(preference);
+        if (position >= 0) {
+            // Rebind the changed preference only.
+            notifyItemChanged(position, preference);
+        }
     }
 
     @Override
@@ -231,17 +195,7 @@ public class PreferenceGroupAdapter
 
     @Override
     public Preference.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        if (viewType < 0 || viewType >= mPreferenceLayouts.size()) {
-            throw new RuntimeException("viewType " + viewType + " should contains in synced layouts.");
-        }
-        PreferenceLayout preferenceLayout = mPreferenceLayouts.get(viewType);
-        if (preferenceLayout.viewHolderCreator != null) {
-            return preferenceLayout.viewHolderCreator.create(parent,
-                    preferenceLayout.resId, preferenceLayout.widgetResId);
-        } else {
-            return new Preference.ViewHolder(parent,
-                    preferenceLayout.resId, preferenceLayout.widgetResId);
-        }
+        return mViewTypes.createViewHolder(parent, viewType);
     }
 
     @Override
@@ -265,22 +219,8 @@ public class PreferenceGroupAdapter
 
     @Override
     public int getItemViewType(int position) {
-        if (!mHasReturnedViewTypeCount) {
-            mHasReturnedViewTypeCount = true;
-        }
-
-        final Preference preference = this.getItem(position);
-
-        mTempPreferenceLayout = createPreferenceLayout(preference, mTempPreferenceLayout);
-
-        int viewType = Collections.binarySearch(mPreferenceLayouts, mTempPreferenceLayout);
-        if (viewType < 0) {
-            // This is a class that was seen after we returned the count, so
-            // don't recycle it.
-            return Adapter.IGNORE_ITEM_VIEW_TYPE;
-        } else {
-            return viewType;
-        }
+        // A preference seen later, or with its layout changed, gets a new view type.
+        return mViewTypes.getViewType(this.getItem(position));
     }
 
     public interface OnPreferenceItemClickListener {
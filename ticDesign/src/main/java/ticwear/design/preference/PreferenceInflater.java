@@ -19,12 +19,15 @@ package ticwear.design.preference;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.TypedArray;
+import android.os.Bundle;
 import android.util.AttributeSet;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.Set;
 
 import ticwear.design.internal.XmlUtils;
 
@@ -37,6 +40,8 @@ class PreferenceInflater extends GenericInflater<Preference, PreferenceGroup> {
     private static final String INTENT_TAG_NAME = "intent";
     private static final String EXTRA_TAG_NAME = "extra";
 
+    private static final int[] KEY_ATTRS = new int[] { android.R.attr.key };
+
     private PreferenceManager mPreferenceManager;
 
     public PreferenceInflater(Context context, PreferenceManager preferenceManager) {
@@ -98,6 +103,34 @@ class PreferenceInflater extends GenericInflater<Preference, PreferenceGroup> {
         return false;
     }
 
+    @Override
+    protected boolean isCustomTag(XmlPullParser parser) {
+        final String tag = parser.getName();
+        return tag.equals(INTENT_TAG_NAME) || tag.equals(EXTRA_TAG_NAME);
+    }
+
+    @Override
+    protected boolean shouldDeferChildren(Preference item) {
+        // Children of a nested screen are only shown when it's opened.
+        return item instanceof PreferenceScreen
+                && mPreferenceManager != null && mPreferenceManager.isLazyInflation();
+    }
+
+    @Override
+    protected void onChildrenDeferred(Preference item, int resource, int[] path,
+                                      Set<String> keys) {
+        ((PreferenceGroup) item).setDeferredChildren(
+                new DeferredChildren(getContext(), mPreferenceManager, resource, path, keys));
+    }
+
+    @Override
+    protected String getItemKey(AttributeSet attrs) {
+        final TypedArray a = getContext().obtainStyledAttributes(attrs, KEY_ATTRS);
+        final String key = a.getString(0);
+        a.recycle();
+        return key;
+    }
+
     @Override
     protected PreferenceGroup onMergeRoots(PreferenceGroup givenRoot, boolean attachToGivenRoot,
             PreferenceGroup xmlRoot) {
@@ -111,4 +144,43 @@ class PreferenceInflater extends GenericInflater<Preference, PreferenceGroup> {
         }
     }
 
+    /**
+     * Child preferences of a group left in the XML by lazy inflation.
+     *
+     * @see PreferenceManager#setLazyInflation(boolean)
+     */
+    static class DeferredChildren {
+        private final Context mContext;
+        private final PreferenceManager mPreferenceManager;
+        private final int mResource;
+        private final int[] mPath;
+        private final Set<String> mKeys;
+
+        /**
+         * Saved state restored to the group before its children are inflated.
+         */
+        Bundle restoreState;
+
+        DeferredChildren(Context context, PreferenceManager preferenceManager,
+                         int resource, int[] path, Set<String> keys) {
+            mContext = context;
+            mPreferenceManager = preferenceManager;
+            mResource = resource;
+            mPath = path;
+            mKeys = keys;
+        }
+
+        /**
+         * Whether a deferred preference, at any depth, has the key.
+         */
+        boolean hasKey(String key) {
+            return mKeys.contains(key);
+        }
+
+        void inflate(PreferenceGroup group) {
+            mPreferenceManager.inflateDeferredChildren(
+                    new PreferenceInflater(mContext, mPreferenceManager), mResource, mPath, group);
+        }
+    }
+
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Difference between two flattened preference lists, dispatched to an adapter as
+ * the minimal item range notifications.
+ *
+ * The edit script is computed with Myers' O(ND) algorithm, after the common head and
+ * tail are stripped. Preferences removed from one place and inserted to another are
+ * dispatched as moves. A preference replaced by another one of the same class and key
+ * is dispatched as a change.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class PreferenceListDiff {
+
+    private static final byte OP_SAME = 0;
+    private static final byte OP_DELETE = 1;
+    private static final byte OP_INSERT = 2;
+
+    private static final int NONE = 0;
+    private static final int INSERTED = 1;
+    private static final int REMOVED = 2;
+    private static final int CHANGED = 3;
+
+    private final RecyclerView.Adapter<?> mAdapter;
+
+    // Batch of consecutive notifications of the same type.
+    private int mBatchType = NONE;
+    private int mBatchPosition;
+    private int mBatchCount;
+
+    private PreferenceListDiff(RecyclerView.Adapter<?> adapter) {
+        mAdapter = adapter;
+    }
+
+    /**
+     * Notify adapter the changes that turn oldList into newList.
+     */
+    static void dispatch(List<Preference> oldList, List<Preference> newList,
+                         RecyclerView.Adapter<?> adapter) {
+        new PreferenceListDiff(adapter).dispatchDiff(oldList, newList);
+    }
+
+    static boolean isSameItem(Preference oldItem, Preference newItem) {
+        if (oldItem == newItem) {
+            return true;
+        }
+        return oldItem.getClass() == newItem.getClass() && oldItem.hasKey()
+                && TextUtils.equals(oldItem.getKey(), newItem.getKey());
+    }
+
+    private void dispatchDiff(List<Preference> oldList, List<Preference> newList) {
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+
+        int head = 0;
+        while (head < oldSize && head < newSize
+                && oldList.get(head) == newList.get(head)) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < oldSize - head && tail < newSize - head
+                && oldList.get(oldSize - 1 - tail) == newList.get(newSize - 1 - tail)) {
+            tail++;
+        }
+
+        final List<Preference> oldMiddle = oldList.subList(head, oldSize - tail);
+        final List<Preference> newMiddle = newList.subList(head, newSize - tail);
+        if (oldMiddle.isEmpty() && newMiddle.isEmpty()) {
+            return;
+        }
+
+        final byte[] script = diff(oldMiddle, newMiddle);
+
+        // Preferences both deleted and inserted by the script are moved.
+        final Set<Preference> deleted = newIdentitySet();
+        final Set<Preference> moved = newIdentitySet();
+        int o = 0;
+        int n = 0;
+        for (byte op : script) {
+            if (op == OP_DELETE) {
+                deleted.add(oldMiddle.get(o++));
+            } else if (op == OP_INSERT) {
+                n++;
+            } else {
+                o++;
+                n++;
+            }
+        }
+        n = 0;
+        for (byte op : script) {
+            if (op == OP_INSERT && deleted.contains(newMiddle.get(n))) {
+                moved.add(newMiddle.get(n));
+            }
+            if (op != OP_DELETE) {
+                n++;
+            }
+        }
+
+        // Replay the script on a copy of the old list, to know the live positions.
+        final List<Preference> current = new ArrayList<>(oldMiddle);
+        final Set<Preference> placed = newIdentitySet();
+        int position = 0;
+        o = 0;
+        n = 0;
+        for (byte op : script) {
+            switch (op) {
+                case OP_SAME:
+                    if (oldMiddle.get(o) != newMiddle.get(n)) {
+                        current.set(position, newMiddle.get(n));
+                        notify(CHANGED, head + position);
+                    }
+                    position++;
+                    o++;
+                    n++;
+                    break;
+                case OP_DELETE: {
+                    final Preference preference = oldMiddle.get(o++);
+                    if (!moved.contains(preference)) {
+                        current.remove(position);
+                        notify(REMOVED, head + position);
+                    } else if (!placed.contains(preference)) {
+                        // Still here, will be moved when its insertion comes.
+                        position++;
+                    }
+                    break;
+                }
+                case OP_INSERT: {
+                    final Preference preference = newMiddle.get(n++);
+                    if (moved.contains(preference)) {
+                        int from = indexOfIdentity(current, preference);
+                        current.remove(from);
+                        if (from < position) {
+                            position--;
+                        }
+                        current.add(position, preference);
+                        flush();
+                        mAdapter.notifyItemMoved(head + from, head + position);
+                        placed.add(preference);
+                    } else {
+                        current.add(position, preference);
+                        notify(INSERTED, head + position);
+                    }
+                    position++;
+                    break;
+                }
+            }
+        }
+        flush();
+    }
+
+    private static Set<Preference> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Preference, Boolean>());
+    }
+
+    private static int indexOfIdentity(List<Preference> list, Preference preference) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == preference) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Moved preference " + preference + " is lost");
+    }
+
+    private void notify(int type, int position) {
+        if (mBatchType == type) {
+            switch (type) {
+                case INSERTED:
+                case CHANGED:
+                    if (position == mBatchPosition + mBatchCount) {
+                        mBatchCount++;
+                        return;
+                    }
+                    break;
+                case REMOVED:
+                    if (position == mBatchPosition) {
+                        mBatchCount++;
+                        return;
+                    }
+                    break;
+            }
+        }
+        flush();
+        mBatchType = type;
+        mBatchPosition = position;
+        mBatchCount = 1;
+    }
+
+    private void flush() {
+        switch (mBatchType) {
+            case INSERTED:
+                mAdapter.notifyItemRangeInserted(mBatchPosition, mBatchCount);
+                break;
+            case REMOVED:
+                mAdapter.notifyItemRangeRemoved(mBatchPosition, mBatchCount);
+                break;
+            case CHANGED:
+                mAdapter.notifyItemRangeChanged(mBatchPosition, mBatchCount);
+                break;
+        }
+        mBatchType = NONE;
+    }
+
+    /**
+     * Myers' diff of two lists.
+     *
+     * @return the shortest edit script, in order.
+     */
+    private static byte[] diff(List<Preference> a, List<Preference> b) {
+        final int N = a.size();
+        final int M = b.size();
+        final int max = N + M;
+        final int offset = max + 1;
+        final int[] v = new int[2 * max + 3];
+        final List<int[]> trace = new ArrayList<>();
+
+        int d;
+        search:
+        for (d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOf(v, v.length));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < N && y < M && isSameItem(a.get(x), b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= N && y >= M) {
+                    break search;
+                }
+            }
+        }
+
+        // Backtrack, from the end to the start.
+        final byte[] script = new byte[N + M - countSame(d, N, M)];
+        int pos = script.length;
+        int x = N;
+        int y = M;
+        for (; d > 0; d--) {
+            final int[] prev = trace.get(d);
+            final int k = x - y;
+            final int prevK;
+            if (k == -d || (k != d && prev[offset + k - 1] < prev[offset + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            final int prevX = prev[offset + prevK];
+            final int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                script[--pos] = OP_SAME;
+                x--;
+                y--;
+            }
+            script[--pos] = prevK == k + 1 ? OP_INSERT : OP_DELETE;
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            script[--pos] = OP_SAME;
+            x--;
+            y--;
+        }
+        return script;
+    }
+
+    /**
+     * @return count of matched items, for an edit script of d edits.
+     */
+    private static int countSame(int d, int N, int M) {
+        return (N + M - d) / 2;
+    }
+}
@@ -28,11 +28,20 @@ import android.content.pm.ResolveInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.XmlResourceParser;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
+import android.util.SparseIntArray;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Used to help create {@link Preference} hierarchies
@@ -55,6 +64,26 @@ public class PreferenceManager {
 
     public static final String KEY_HAS_SET_DEFAULT_VALUES = "_has_set_default_values";
 
+    /**
+     * Preferences of this library, resolved by {@link #preloadInflater(Context, String...)}.
+     */
+    private static final String[] PRELOAD_PREFERENCES = {
+            PreferenceScreen.class.getName(),
+            PreferenceCategory.class.getName(),
+            Preference.class.getName(),
+            CheckBoxPreference.class.getName(),
+            SwitchPreference.class.getName(),
+            ListPreference.class.getName(),
+            MultiSelectListPreference.class.getName(),
+            RingtonePreference.class.getName(),
+            VolumePreference.class.getName(),
+    };
+
+    /**
+     * Executor of async inflations, one at a time.
+     */
+    private static ThreadPoolExecutor sInflateExecutor;
+
     /**
      * @see #getActivity()
      */
@@ -88,16 +117,32 @@ public class PreferenceManager {
     private SharedPreferences mSharedPreferences;
 
     /**
-     * If in no-commit mode, the shared editor to give out (which will be
-     * committed when exiting no-commit mode).
+     * Window of write-behind mode, 0 if edits are written through.
+     *
+     * @see #setWriteBehindWindow(long)
+     */
+    private long mWriteBehindWindowMillis;
+
+    /**
+     * Wrapper of {@link #mSharedPreferences} in write-behind mode.
+     */
+    private WriteBehindSharedPreferences mWriteBehindPreferences;
+
+    /**
+     * Blocks commits from happening on the shared editor, by holding the pending
+     * edits of the thread in no-commit mode. This is used when inflating the
+     * hierarchy. Do not set this directly, use {@link #startNoCommit()} and
+     * {@link #finishNoCommit(boolean)}.
+     * <p>
+     * Only commits from the inflating thread are blocked, so the hierarchy can be
+     * inflated in background while other preferences are changed on the main thread.
      */
-    private SharedPreferences.Editor mEditor;
+    private final ThreadLocal<PendingEdits> mPendingEdits = new ThreadLocal<>();
 
     /**
-     * Blocks commits from happening on the shared editor. This is used when
-     * inflating the hierarchy. Do not set this directly, use {@link #setNoCommit(boolean)}
+     * @see #setLazyInflation(boolean)
      */
-    private boolean mNoCommit;
+    private boolean mLazyInflation;
 
     /**
      * The SharedPreferences name that will be used for all {@link Preference}s
@@ -139,6 +184,38 @@ public class PreferenceManager {
 
     private OnPreferenceTreeClickListener mOnPreferenceTreeClickListener;
 
+    /**
+     * View types of the preferences, shared by adapters of all screens.
+     */
+    private PreferenceViewTypes mViewTypes;
+
+    /**
+     * Most ViewHolders of a view type to keep in the shared pool.
+     */
+    private static final int MAX_RECYCLED_VIEWS = 8;
+
+    /**
+     * Most ViewHolders of a view type to create ahead of time, about a screen of them.
+     */
+    private static final int MAX_PREFETCHED_VIEWS = 4;
+
+    /**
+     * Pool of ViewHolders shared by the lists of all screens.
+     */
+    private RecyclerView.RecycledViewPool mRecycledViewPool;
+
+    /**
+     * Size of the shared pool, of each view type.
+     */
+    private final SparseIntArray mRecycledViewCounts = new SparseIntArray();
+
+    /**
+     * Count of ViewHolders created ahead of time, of each view type.
+     */
+    private final SparseIntArray mPrefetchedViewCounts = new SparseIntArray();
+
+    private PreferenceViewPrefetcher mPrefetcher;
+
     /**
      * @hide
      */
@@ -181,6 +258,116 @@ public class PreferenceManager {
         return mFragment;
     }
 
+    /**
+     * Returns the view types of preferences managed by this, shared by the adapters
+     * of all preference screens.
+     */
+    PreferenceViewTypes getViewTypes() {
+        if (mViewTypes == null) {
+            mViewTypes = new PreferenceViewTypes();
+        }
+        return mViewTypes;
+    }
+
+    /**
+     * Returns the pool of ViewHolders shared by the lists of all preference screens,
+     * so opening a screen can reuse the views of another.
+     */
+    RecyclerView.RecycledViewPool getRecycledViewPool() {
+        if (mRecycledViewPool == null) {
+            mRecycledViewPool = new RecyclerView.RecycledViewPool();
+        }
+        return mRecycledViewPool;
+    }
+
+    /**
+     * Grows the shared pool to hold the given count of ViewHolders of each view type,
+     * up to {@link #MAX_RECYCLED_VIEWS}.
+     *
+     * @param counts Count of ViewHolders of each view type, shown on a screen.
+     */
+    void ensureRecycledViewCounts(SparseIntArray counts) {
+        final RecyclerView.RecycledViewPool pool = getRecycledViewPool();
+        for (int i = 0; i < counts.size(); i++) {
+            final int viewType = counts.keyAt(i);
+            final int count = Math.min(counts.valueAt(i), MAX_RECYCLED_VIEWS);
+            if (count > mRecycledViewCounts.get(viewType)) {
+                mRecycledViewCounts.put(viewType, count);
+                pool.setMaxRecycledViews(viewType, count);
+            }
+        }
+    }
+
+    /**
+     * Creates ViewHolders for the screens of the hierarchy into the shared pool, while
+     * the main thread is idle. Each view type gets about a screen of ViewHolders, so
+     * opening a screen only needs to bind them. View types shown on the root screen are
+     * skipped, the list has created and bound ViewHolders of them already.
+     *
+     * @param listView The list showing the root of the hierarchy.
+     * @param adapter The adapter of the list.
+     */
+    void prefetchViewHolders(RecyclerView listView, PreferenceGroupAdapter adapter) {
+        cancelPrefetch();
+        final PreferenceScreen root = mPreferenceScreen;
+        if (root == null) {
+            return;
+        }
+
+        // Each view type needs as many ViewHolders as the screen having most of them.
+        final PreferenceViewTypes viewTypes = getViewTypes();
+        final SparseIntArray counts = new SparseIntArray();
+        final SparseIntArray screenCounts = new SparseIntArray();
+        final List<PreferenceGroup> screens = new ArrayList<>();
+        // The list has bound the view types of the root screen, they are skipped.
+        final SparseIntArray rootCounts = new SparseIntArray();
+        viewTypes.countViewTypes(root, rootCounts, screens);
+        for (int i = 0; i < screens.size(); i++) {
+            screenCounts.clear();
+            viewTypes.countViewTypes(screens.get(i), screenCounts, screens);
+            for (int j = 0; j < screenCounts.size(); j++) {
+                final int viewType = screenCounts.keyAt(j);
+                final int count = Math.min(screenCounts.valueAt(j), MAX_PREFETCHED_VIEWS);
+                if (rootCounts.indexOfKey(viewType) < 0 && count > counts.get(viewType)) {
+                    counts.put(viewType, count);
+                }
+            }
+        }
+        ensureRecycledViewCounts(counts);
+
+        // Don't create again what was created before.
+        for (int i = counts.size() - 1; i >= 0; i--) {
+            final int viewType = counts.keyAt(i);
+            final int prefetched = mPrefetchedViewCounts.get(viewType);
+            if (counts.valueAt(i) > prefetched) {
+                mPrefetchedViewCounts.put(viewType, counts.valueAt(i));
+                counts.put(viewType, counts.valueAt(i) - prefetched);
+            } else {
+                counts.removeAt(i);
+            }
+        }
+
+        mPrefetcher = new PreferenceViewPrefetcher(listView, adapter,
+                getRecycledViewPool(), counts);
+        mPrefetcher.start();
+    }
+
+    /**
+     * Stops creating ViewHolders ahead of time.
+     */
+    void cancelPrefetch() {
+        if (mPrefetcher != null) {
+            // Those not created yet can be created next time.
+            final SparseIntArray remaining = mPrefetcher.cancel();
+            for (int i = 0; i < remaining.size(); i++) {
+                final int viewType = remaining.keyAt(i);
+                mPrefetchedViewCounts.put(viewType,
+                        mPrefetchedViewCounts.get(viewType) - remaining.valueAt(i));
+            }
+            mPrefetcher = null;
+        }
+    }
+
     /**
      * Returns a list of {@link Activity} (indirectly) that match a given
      * {@link Intent}.
@@ -267,18 +454,202 @@ public class PreferenceManager {
     public PreferenceScreen inflateFromResource(Context context, int resId,
             PreferenceScreen rootPreferences) {
         // Block commits
-        setNoCommit(true);
+        startNoCommit();
+
+        boolean inflated = false;
+        try {
+            final PreferenceInflater inflater = new PreferenceInflater(context, this);
+            rootPreferences = (PreferenceScreen) inflater.inflate(resId, rootPreferences, true);
+            rootPreferences.onAttachedToHierarchy(this);
+            inflated = true;
+        } finally {
+            // Unblock commits, the defaults of a partial hierarchy are dropped
+            finishNoCommit(inflated);
+        }
 
-        final PreferenceInflater inflater = new PreferenceInflater(context, this);
-        rootPreferences = (PreferenceScreen) inflater.inflate(resId, rootPreferences, true);
-        rootPreferences.onAttachedToHierarchy(this);
+        return rootPreferences;
+    }
+
+    /**
+     * Inflates the children of a group deferred by lazy inflation.
+     *
+     * @see #setLazyInflation(boolean)
+     */
+    void inflateDeferredChildren(PreferenceInflater inflater, int resId, int[] path,
+            PreferenceGroup group) {
+        // May be asked by an inflation in progress, which blocks commits already
+        final boolean blocked = mPendingEdits.get() != null;
+        if (!blocked) {
+            startNoCommit();
+        }
+
+        boolean inflated = false;
+        try {
+            inflater.inflateChildren(resId, path, group);
+            inflated = true;
+        } finally {
+            if (!blocked) {
+                finishNoCommit(inflated);
+            }
+        }
+    }
+
+    /**
+     * Sets whether the children of nested {@link PreferenceScreen}s are inflated
+     * lazily, when the hierarchy is inflated from a resource.
+     * <p>
+     * In lazy inflation, a nested screen is inflated without its children, and they
+     * are inflated when they are needed, e.g. when the screen is opened, or one of
+     * them is looked up by {@link #findPreference(CharSequence)}. The keys of the
+     * children are read when they are skipped, so a look up only inflates the screens
+     * having the key. So inflation of the root screen only takes the time of the
+     * preferences shown by it. Until then, the default values of these children are
+     * not set, and a summary of the screen that comes from its children should be
+     * given by a {@link Preference.SummaryProvider}.
+     *
+     * @param lazyInflation Whether to inflate lazily. Default is false.
+     */
+    public void setLazyInflation(boolean lazyInflation) {
+        mLazyInflation = lazyInflation;
+    }
+
+    /**
+     * Returns whether the children of nested {@link PreferenceScreen}s are inflated
+     * lazily.
+     *
+     * @see #setLazyInflation(boolean)
+     */
+    public boolean isLazyInflation() {
+        return mLazyInflation;
+    }
 
-        // Unblock commits
-        setNoCommit(false);
+    /**
+     * Creates a preference hierarchy compiled ahead of time from XML. This is the
+     * same as inflating the XML by {@link #inflateFromResource}, without parsing
+     * it, or creating the preferences by reflection.
+     *
+     * @param context The context of the preferences.
+     * @param compiled The compiled preference hierarchy.
+     * @return The root of the new hierarchy.
+     * @see CompiledPreferences
+     */
+    public PreferenceScreen inflateFromCompiled(Context context, CompiledPreferences compiled) {
+        final PreferenceScreen rootPreferences;
+        // Block commits
+        startNoCommit();
+
+        boolean created = false;
+        try {
+            rootPreferences = compiled.createHierarchy(context, this);
+            created = true;
+        } finally {
+            // Unblock commits, the defaults of a partial hierarchy are dropped
+            finishNoCommit(created);
+        }
 
         return rootPreferences;
     }
 
+    /**
+     * Sets the dependency of a preference created by a {@link CompiledPreferences}.
+     * Unlike {@link Preference#setDependency(String)}, the dependency is registered
+     * when the preference is attached to the activity, the same as one set from XML,
+     * as the preferences it depends on may not be created yet.
+     *
+     * @param preference The preference being created.
+     * @param dependencyKey The key of the preference that it depends on.
+     * @hide
+     */
+    public void setCompiledDependency(Preference preference, String dependencyKey) {
+        preference.setDependencyKey(dependencyKey);
+    }
+
+    /**
+     * Inflates a new preference hierarchy from XML on a background thread, and
+     * delivers its root to the listener on the main thread.
+     * <p>
+     * The preferences are created, and their initial values are read, off the main
+     * thread. Unlike {@link #inflateFromResource}, the hierarchy can't be merged into
+     * an existing one, as that one may be shown already. If the inflation fails, the
+     * default values of the partial hierarchy are not written, and the error is
+     * delivered to {@link OnInflateFinishedListener#onInflateFailed(RuntimeException)}.
+     * <p>
+     * Async inflations run one at a time, on a single background thread. They are
+     * not serialized with inflations on the main thread, which is safe as the new
+     * hierarchy is only touched by the background thread until it's delivered, and
+     * each thread holds its own pending default values.
+     *
+     * @param context The context of the resource.
+     * @param resId The resource ID of the XML to inflate.
+     * @param listener The listener to receive the root of the new hierarchy.
+     * @see #preloadInflater(Context, String...)
+     */
+    public void inflateFromResourceAsync(final Context context, final int resId,
+            final OnInflateFinishedListener listener) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        getInflateExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                PreferenceScreen preferenceScreen = null;
+                RuntimeException error = null;
+                try {
+                    preferenceScreen = inflateFromResource(context, resId, null);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+
+                final PreferenceScreen result = preferenceScreen;
+                final RuntimeException failure = error;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failure != null) {
+                            listener.onInflateFailed(failure);
+                        } else {
+                            listener.onInflateFinished(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Resolves the classes of preferences on a background thread, so the first
+     * inflation of them doesn't pay for class loading and reflective lookups. Call
+     * this early, e.g. when the application starts. The preferences of this library
+     * are always resolved.
+     *
+     * @param context The context whose class loader loads the preferences.
+     * @param names More preferences to resolve, by the full name of their classes.
+     */
+    public static void preloadInflater(final Context context, final String... names) {
+        getInflateExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final PreferenceInflater inflater = new PreferenceInflater(context, null);
+                inflater.preloadItems(PRELOAD_PREFERENCES);
+                inflater.preloadItems(names);
+            }
+        });
+    }
+
+    private static synchronized Executor getInflateExecutor() {
+        if (sInflateExecutor == null) {
+            sInflateExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "PreferenceInflater");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            sInflateExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sInflateExecutor;
+    }
+
     public PreferenceScreen createPreferenceScreen(Context context) {
         final PreferenceScreen preferenceScreen = new PreferenceScreen(context, null);
         preferenceScreen.onAttachedToHierarchy(this);
@@ -315,8 +686,12 @@ public class PreferenceManager {
      * @see Context#getSharedPreferences(String, int)
      */
     public void setSharedPreferencesName(String sharedPreferencesName) {
-        mSharedPreferencesName = sharedPreferencesName;
-        mSharedPreferences = null;
+        flushPendingWrites();
+        synchronized (this) {
+            mSharedPreferencesName = sharedPreferencesName;
+            mSharedPreferences = null;
+            mWriteBehindPreferences = null;
+        }
     }
 
     /**
@@ -338,8 +713,12 @@ public class PreferenceManager {
      * @see Context#getSharedPreferences(String, int)
      */
     public void setSharedPreferencesMode(int sharedPreferencesMode) {
-        mSharedPreferencesMode = sharedPreferencesMode;
-        mSharedPreferences = null;
+        flushPendingWrites();
+        synchronized (this) {
+            mSharedPreferencesMode = sharedPreferencesMode;
+            mSharedPreferences = null;
+            mWriteBehindPreferences = null;
+        }
     }
 
     /**
@@ -349,15 +728,87 @@ public class PreferenceManager {
      * @return A SharedPreferences instance pointing to the file that contains
      *         the values of preferences that are managed by this.
      */
-    public SharedPreferences getSharedPreferences() {
+    public synchronized SharedPreferences getSharedPreferences() {
         if (mSharedPreferences == null) {
             mSharedPreferences = mContext.getSharedPreferences(mSharedPreferencesName,
                     mSharedPreferencesMode);
         }
 
+        if (mWriteBehindWindowMillis > 0) {
+            if (mWriteBehindPreferences == null) {
+                mWriteBehindPreferences = new WriteBehindSharedPreferences(
+                        mSharedPreferences, mWriteBehindWindowMillis);
+            }
+            return mWriteBehindPreferences;
+        }
+
         return mSharedPreferences;
     }
 
+    /**
+     * Sets the write-behind window of the preferences managed by this.
+     * <p>
+     * With a positive window, values persisted by preferences are kept in memory and
+     * written to the SharedPreferences file in one batch on a background thread, the
+     * window after the first pending edit. This avoids a disk write per change when a
+     * value changes rapidly, e.g. while dragging a {@link VolumePreference}. Preferences
+     * read back their pending values, but other readers of the file, and its
+     * {@link SharedPreferences.OnSharedPreferenceChangeListener}s, only see them after
+     * they are written.
+     * <p>
+     * Pending values are always written when the activity stops or is destroyed, or
+     * when {@link #flushPendingWrites()} is called.
+     *
+     * @param windowMillis The window in milliseconds, 0 to write every edit through
+     *                     (the default).
+     * @see #getCoalescedWriteCount()
+     */
+    public void setWriteBehindWindow(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Negative write-behind window " + windowMillis);
+        }
+        if (windowMillis == mWriteBehindWindowMillis) {
+            return;
+        }
+        flushPendingWrites();
+        synchronized (this) {
+            mWriteBehindWindowMillis = windowMillis;
+            mWriteBehindPreferences = null;
+        }
+    }
+
+    /**
+     * Returns the write-behind window of the preferences managed by this.
+     *
+     * @return The window in milliseconds, 0 if edits are written through.
+     * @see #setWriteBehindWindow(long)
+     */
+    public long getWriteBehindWindow() {
+        return mWriteBehindWindowMillis;
+    }
+
+    /**
+     * Writes all values pending in write-behind mode now.
+     *
+     * @see #setWriteBehindWindow(long)
+     */
+    public void flushPendingWrites() {
+        if (mWriteBehindPreferences != null) {
+            mWriteBehindPreferences.flush();
+        }
+    }
+
+    /**
+     * Returns the count of edits written along with others in write-behind mode,
+     * i.e. the disk writes saved by it.
+     *
+     * @see #setWriteBehindWindow(long)
+     */
+    public long getCoalescedWriteCount() {
+        return mWriteBehindPreferences != null
+                ? mWriteBehindPreferences.getCoalescedWriteCount() : 0;
+    }
+
     /**
      * Gets a SharedPreferences instance that points to the default file that is
      * used by the preference framework in the given context.
@@ -508,12 +959,13 @@ public class PreferenceManager {
      */
     SharedPreferences.Editor getEditor() {
 
-        if (mNoCommit) {
-            if (mEditor == null) {
-                mEditor = getSharedPreferences().edit();
+        final PendingEdits pendingEdits = mPendingEdits.get();
+        if (pendingEdits != null) {
+            if (pendingEdits.editor == null) {
+                pendingEdits.editor = getSharedPreferences().edit();
             }
 
-            return mEditor;
+            return pendingEdits.editor;
         } else {
             return getSharedPreferences().edit();
         }
@@ -527,21 +979,36 @@ public class PreferenceManager {
      * @return Whether the client should commit.
      */
     boolean shouldCommit() {
-        return !mNoCommit;
+        return mPendingEdits.get() == null;
     }
 
-    private void setNoCommit(boolean noCommit) {
-        if (!noCommit && mEditor != null) {
-            try {
-                mEditor.apply();
-            } catch (AbstractMethodError unused) {
-                // The app injected its own pre-Gingerbread
-                // SharedPreferences.Editor implementation without
-                // an apply method.
-                mEditor.commit();
-            }
+    /**
+     * Blocks commits from the current thread, until {@link #finishNoCommit(boolean)}.
+     */
+    private void startNoCommit() {
+        mPendingEdits.set(new PendingEdits());
+    }
+
+    /**
+     * Unblocks commits from the current thread.
+     *
+     * @param apply Whether to apply the edits made while commits were blocked, or
+     *            drop them.
+     */
+    private void finishNoCommit(boolean apply) {
+        final PendingEdits pendingEdits = mPendingEdits.get();
+        mPendingEdits.remove();
+        if (!apply || pendingEdits == null || pendingEdits.editor == null) {
+            return;
+        }
+        try {
+            pendingEdits.editor.apply();
+        } catch (AbstractMethodError unused) {
+            // The app injected its own pre-Gingerbread
+            // SharedPreferences.Editor implementation without
+            // an apply method.
+            pendingEdits.editor.commit();
         }
-        mNoCommit = noCommit;
     }
 
     /**
@@ -655,6 +1122,8 @@ public class PreferenceManager {
      * event.
      */
     void dispatchActivityStop() {
+        flushPendingWrites();
+
         List<OnActivityStopListener> list;
 
         synchronized (this) {
@@ -720,6 +1189,9 @@ public class PreferenceManager {
 
         // Dismiss any PreferenceScreens still showing
         dismissAllScreens();
+
+        // Values persisted by the listeners are written too.
+        flushPendingWrites();
     }
 
     /**
@@ -846,6 +1318,35 @@ public class PreferenceManager {
         void onActivityStop();
     }
 
+    /**
+     * Edits made on the shared editor while commits are blocked.
+     */
+    private static class PendingEdits {
+        SharedPreferences.Editor editor;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a preference hierarchy
+     * inflated by {@link #inflateFromResourceAsync} is ready.
+     */
+    public interface OnInflateFinishedListener {
+
+        /**
+         * Called on the main thread with the root of the inflated hierarchy.
+         *
+         * @param preferenceScreen The root of the hierarchy.
+         */
+        void onInflateFinished(PreferenceScreen preferenceScreen);
+
+        /**
+         * Called on the main thread if the inflation failed. Nothing of the partial
+         * hierarchy has been written to the shared preferences.
+         *
+         * @param error The error thrown by the inflation.
+         */
+        void onInflateFailed(RuntimeException error);
+    }
+
     /**
      * Interface definition for a class that will be called when the container's activity
      * is destroyed.
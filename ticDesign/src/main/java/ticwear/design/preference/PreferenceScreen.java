@@ -147,6 +147,11 @@ public final class PreferenceScreen extends PreferenceGroup implements
     public void bind(TicklableRecyclerView listView) {
         PreferenceGroupAdapter adapter = getRootAdapter();
         adapter.setOnPreferenceItemClickListener(this);
+        PreferenceManager preferenceManager = getPreferenceManager();
+        if (preferenceManager != null) {
+            // Share views with lists of the other screens.
+            listView.setRecycledViewPool(preferenceManager.getRecycledViewPool());
+        }
         listView.setAdapter(adapter);
 
         onAttachedToActivity();
@@ -214,6 +219,15 @@ public final class PreferenceScreen extends PreferenceGroup implements
     public void onDismiss(DialogInterface dialog) {
         mDialog = null;
         getPreferenceManager().removePreferencesScreen(dialog);
+        if (mListView != null) {
+            // Give the views back to the shared pool, for the next screen.
+            mListView.setAdapter(null);
+        }
+
+        if (getSummaryProvider() != null) {
+            // Children may be changed in the dialog.
+            notifyChanged();
+        }
     }
 
     /**
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
+
+/**
+ * Creates ViewHolders into a {@link RecyclerView.RecycledViewPool} while the main thread
+ * is idle, so a screen shown later only needs to bind them. Each idle pass creates them
+ * for a few milliseconds, then posts a message to get another idle pass, so input and
+ * frames are handled in between.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class PreferenceViewPrefetcher implements MessageQueue.IdleHandler {
+
+    // Time to create ViewHolders in each idle pass.
+    private static final long IDLE_BUDGET_NANOS = 4 * 1000 * 1000;
+
+    private final RecyclerView mParent;
+    private final RecyclerView.Adapter<Preference.ViewHolder> mAdapter;
+    private final RecyclerView.RecycledViewPool mPool;
+
+    // Count of ViewHolders still to create, of each view type.
+    private final SparseIntArray mRemaining;
+
+    private MessageQueue mQueue;
+    private Handler mHandler;
+
+    // Posted to get the next idle pass, as the queue only goes idle after a message.
+    private final Runnable mNextIdleRunnable = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    /**
+     * @param parent The view to create ViewHolders for, as their parent.
+     * @param adapter The adapter to create ViewHolders, which knows all view types.
+     * @param pool The pool to put the created ViewHolders in.
+     * @param counts Count of ViewHolders to create, of each view type.
+     */
+    PreferenceViewPrefetcher(RecyclerView parent,
+                             RecyclerView.Adapter<Preference.ViewHolder> adapter,
+                             RecyclerView.RecycledViewPool pool, SparseIntArray counts) {
+        mParent = parent;
+        mAdapter = adapter;
+        mPool = pool;
+        mRemaining = counts;
+    }
+
+    /**
+     * Start to prefetch when idle. Call this on the main thread.
+     */
+    void start() {
+        if (mQueue == null && mRemaining.size() > 0) {
+            mQueue = Looper.myQueue();
+            mHandler = new Handler();
+            mQueue.addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Stop prefetching.
+     *
+     * @return Count of ViewHolders not created, of each view type.
+     */
+    SparseIntArray cancel() {
+        if (mQueue != null) {
+            mQueue.removeIdleHandler(this);
+            mHandler.removeCallbacks(mNextIdleRunnable);
+            mQueue = null;
+        }
+        final SparseIntArray remaining = mRemaining.clone();
+        mRemaining.clear();
+        return remaining;
+    }
+
+    @Override
+    public boolean queueIdle() {
+        final long deadline = System.nanoTime() + IDLE_BUDGET_NANOS;
+        while (mRemaining.size() > 0 && System.nanoTime() < deadline) {
+            final int viewType = mRemaining.keyAt(0);
+            final int remaining = mRemaining.valueAt(0) - 1;
+            if (remaining > 0) {
+                mRemaining.put(viewType, remaining);
+            } else {
+                mRemaining.removeAt(0);
+            }
+
+            // Create with the adapter, so the ViewHolder knows its view type.
+            mPool.putRecycledView(mAdapter.createViewHolder(mParent, viewType));
+        }
+
+        if (mRemaining.size() == 0) {
+            mQueue = null;
+            return false;
+        }
+        mHandler.post(mNextIdleRunnable);
+        return true;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.support.annotation.NonNull;
+import android.util.SparseIntArray;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of the view types of preferences. A view type is given to each distinct
+ * (class, layout, widget layout) of preferences, and never changes after that, so
+ * adapters sharing a registry can share their ViewHolders in one
+ * {@link android.support.v7.widget.RecyclerView.RecycledViewPool}.
+ *
+ * View types are looked up in an open-addressed hash table, keyed by class identity and
+ * the two layout resource IDs, so no names are compared.
+ *
+ * This is not thread safe, use it on the main thread.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class PreferenceViewTypes {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Open-addressed table, with linear probing. A slot is empty if its class is null.
+    private Class<?>[] mKeyClasses;
+    private int[] mKeyLayouts;
+    private int[] mKeyWidgetLayouts;
+    private int[] mValueTypes;
+
+    // Declared view types, indexed by view type.
+    private final ArrayList<ViewType> mViewTypes = new ArrayList<>();
+
+    PreferenceViewTypes() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the view type of preference, declares a new one if not seen before.
+     */
+    int getViewType(@NonNull Preference preference) {
+        final Class<?> clazz = preference.getClass();
+        final int layoutResId = preference.getLayoutResource();
+        final int widgetLayoutResId = preference.getWidgetLayoutResource();
+
+        final int mask = mKeyClasses.length - 1;
+        int slot = hash(clazz, layoutResId, widgetLayoutResId) & mask;
+        while (mKeyClasses[slot] != null) {
+            if (mKeyClasses[slot] == clazz && mKeyLayouts[slot] == layoutResId
+                    && mKeyWidgetLayouts[slot] == widgetLayoutResId) {
+                return mValueTypes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        final int viewType = mViewTypes.size();
+        mViewTypes.add(new ViewType(layoutResId, widgetLayoutResId,
+                preference.mViewHolderCreator));
+        mKeyClasses[slot] = clazz;
+        mKeyLayouts[slot] = layoutResId;
+        mKeyWidgetLayouts[slot] = widgetLayoutResId;
+        mValueTypes[slot] = viewType;
+
+        // Keep the load factor under 1/2.
+        if (mViewTypes.size() * 2 > mKeyClasses.length) {
+            rehash(mKeyClasses.length * 2);
+        }
+        return viewType;
+    }
+
+    /**
+     * Returns the count of declared view types.
+     */
+    int getViewTypeCount() {
+        return mViewTypes.size();
+    }
+
+    /**
+     * Creates a ViewHolder of a declared view type.
+     */
+    Preference.ViewHolder createViewHolder(ViewGroup parent, int viewType) {
+        if (viewType < 0 || viewType >= mViewTypes.size()) {
+            throw new IllegalArgumentException("viewType " + viewType + " is not declared.");
+        }
+        ViewType type = mViewTypes.get(viewType);
+        if (type.viewHolderCreator != null) {
+            return type.viewHolderCreator.create(parent,
+                    type.layoutResId, type.widgetLayoutResId);
+        } else {
+            return new Preference.ViewHolder(parent, type.layoutResId, type.widgetLayoutResId);
+        }
+    }
+
+    /**
+     * Counts the view types of preferences shown on the screen of group.
+     * Deferred children are not counted, so they stay deferred.
+     *
+     * @param group The group to count.
+     * @param counts Count of each view type, added to.
+     * @param nestedScreens If not null, gets the groups shown on screens of their own.
+     */
+    void countViewTypes(PreferenceGroup group, SparseIntArray counts,
+                        List<PreferenceGroup> nestedScreens) {
+        if (group.hasDeferredChildren()) {
+            return;
+        }
+        final int size = group.getPreferenceCount();
+        for (int i = 0; i < size; i++) {
+            final Preference preference = group.getPreference(i);
+            final int viewType = getViewType(preference);
+            counts.put(viewType, counts.get(viewType) + 1);
+
+            if (preference instanceof PreferenceGroup) {
+                final PreferenceGroup preferenceAsGroup = (PreferenceGroup) preference;
+                if (preferenceAsGroup.isOnSameScreenAsChildren()) {
+                    countViewTypes(preferenceAsGroup, counts, nestedScreens);
+                } else if (nestedScreens != null) {
+                    nestedScreens.add(preferenceAsGroup);
+                }
+            }
+        }
+    }
+
+    private static int hash(Class<?> clazz, int layoutResId, int widgetLayoutResId) {
+        int h = System.identityHashCode(clazz);
+        h = 31 * h + layoutResId;
+        h = 31 * h + widgetLayoutResId;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        mKeyClasses = new Class<?>[capacity];
+        mKeyLayouts = new int[capacity];
+        mKeyWidgetLayouts = new int[capacity];
+        mValueTypes = new int[capacity];
+    }
+
+    private void rehash(int capacity) {
+        final Class<?>[] classes = mKeyClasses;
+        final int[] layouts = mKeyLayouts;
+        final int[] widgetLayouts = mKeyWidgetLayouts;
+        final int[] types = mValueTypes;
+        allocate(capacity);
+
+        final int mask = capacity - 1;
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == null) {
+                continue;
+            }
+            int slot = hash(classes[i], layouts[i], widgetLayouts[i]) & mask;
+            while (mKeyClasses[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            mKeyClasses[slot] = classes[i];
+            mKeyLayouts[slot] = layouts[i];
+            mKeyWidgetLayouts[slot] = widgetLayouts[i];
+            mValueTypes[slot] = types[i];
+        }
+    }
+
+    private static class ViewType {
+        final int layoutResId;
+        final int widgetLayoutResId;
+        final Preference.ViewHolderCreator viewHolderCreator;
+
+        ViewType(int layoutResId, int widgetLayoutResId,
+                 Preference.ViewHolderCreator viewHolderCreator) {
+            this.layoutResId = layoutResId;
+            this.widgetLayoutResId = widgetLayoutResId;
+            this.viewHolderCreator = viewHolderCreator;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.preference;
+
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SharedPreferences} that holds the edits in memory, and writes them to the wrapped
+ * preferences in one batch, a window of time after the first pending edit.
+ *
+ * Reads see the pending edits, so a preference always reads back what it just persisted.
+ * Readers of the wrapped preferences, and its change listeners, see the edits after the
+ * batch is written.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class WriteBehindSharedPreferences implements SharedPreferences {
+
+    // Marks a removed key in a batch.
+    private static final Object REMOVED = new Object();
+
+    private static ScheduledExecutorService sExecutor;
+
+    private final SharedPreferences mPreferences;
+    private final long mWindowMillis;
+
+    // Guarded by this.
+    private Batch mPending = new Batch();
+    private Batch mWriting;
+    private ScheduledFuture<?> mScheduledFlush;
+    private long mEditCount;
+    private long mWriteCount;
+
+    // Keeps batches written in the order they are taken.
+    private final Object mWriteLock = new Object();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write(false);
+        }
+    };
+
+    WriteBehindSharedPreferences(SharedPreferences preferences, long windowMillis) {
+        mPreferences = preferences;
+        mWindowMillis = windowMillis;
+    }
+
+    SharedPreferences getWrapped() {
+        return mPreferences;
+    }
+
+    long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * Write all pending edits now. The edits are visible in the wrapped preferences when
+     * this returns, and are written to disk in background.
+     */
+    void flush() {
+        synchronized (this) {
+            if (mScheduledFlush != null) {
+                mScheduledFlush.cancel(false);
+                mScheduledFlush = null;
+            }
+        }
+        write(true);
+    }
+
+    /**
+     * @return count of edits that didn't need a write of their own.
+     */
+    synchronized long getCoalescedWriteCount() {
+        return Math.max(0, mEditCount - mWriteCount);
+    }
+
+    private void write(boolean async) {
+        synchronized (mWriteLock) {
+            final Batch batch;
+            synchronized (this) {
+                if (mPending.isEmpty()) {
+                    return;
+                }
+                batch = mPending;
+                mPending = new Batch();
+                // Keep it readable until it's in the wrapped preferences.
+                mWriting = batch;
+                mScheduledFlush = null;
+                mWriteCount++;
+            }
+
+            Editor editor = mPreferences.edit();
+            batch.applyTo(editor);
+            if (async) {
+                try {
+                    editor.apply();
+                } catch (AbstractMethodError unused) {
+                    // The app injected its own pre-Gingerbread
+                    // SharedPreferences.Editor implementation without
+                    // an apply method.
+                    editor.commit();
+                }
+            } else {
+                // Already on the background thread.
+                editor.commit();
+            }
+
+            synchronized (this) {
+                mWriting = null;
+            }
+        }
+    }
+
+    private synchronized void merge(Batch edits) {
+        if (edits.isEmpty()) {
+            return;
+        }
+        mPending.merge(edits);
+        mEditCount++;
+        if (mScheduledFlush == null) {
+            mScheduledFlush = getExecutor().schedule(
+                    mFlushRunnable, mWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getExecutor() {
+        if (sExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "PreferenceWriteBehind");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.setRemoveOnCancelPolicy(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @return the pending value of key, {@link #REMOVED}, or null if key is not edited.
+     */
+    private synchronized Object findPending(String key) {
+        Object value = mPending.find(key);
+        if (value == null && mWriting != null) {
+            value = mWriting.find(key);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all = new HashMap<>();
+        synchronized (this) {
+            all.putAll(mPreferences.getAll());
+            if (mWriting != null) {
+                mWriting.applyTo(all);
+            }
+            mPending.applyTo(all);
+        }
+        return all;
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.getString(key, defValue);
+        }
+        return value == REMOVED ? defValue : (String) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.getStringSet(key, defValues);
+        }
+        return value == REMOVED ? defValues : (Set<String>) value;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.getInt(key, defValue);
+        }
+        return value == REMOVED ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.getLong(key, defValue);
+        }
+        return value == REMOVED ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.getFloat(key, defValue);
+        }
+        return value == REMOVED ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.getBoolean(key, defValue);
+        }
+        return value == REMOVED ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        Object value = findPending(key);
+        if (value == null) {
+            return mPreferences.contains(key);
+        }
+        return value != REMOVED;
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        mPreferences.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        mPreferences.unregisterOnSharedPreferenceChangeListener(listener);
+    }
+
+    /**
+     * Edits to be written in one go, with the same semantic of an {@link Editor}:
+     * a clear goes before all the puts and removes.
+     */
+    private static class Batch {
+        final HashMap<String, Object> values = new HashMap<>();
+        boolean clear;
+
+        boolean isEmpty() {
+            return !clear && values.isEmpty();
+        }
+
+        /**
+         * @return value of key, {@link #REMOVED}, or null if key is not in this batch.
+         */
+        Object find(String key) {
+            Object value = values.get(key);
+            if (value == null && clear) {
+                return REMOVED;
+            }
+            return value;
+        }
+
+        void merge(Batch edits) {
+            if (edits.clear) {
+                values.clear();
+                clear = true;
+            }
+            values.putAll(edits.values);
+        }
+
+        void applyTo(Editor editor) {
+            if (clear) {
+                editor.clear();
+            }
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                putValue(editor, e.getKey(), e.getValue());
+            }
+        }
+
+        void applyTo(Map<String, Object> all) {
+            if (clear) {
+                all.clear();
+            }
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                if (e.getValue() == REMOVED) {
+                    all.remove(e.getKey());
+                } else {
+                    all.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static void putValue(Editor editor, String key, Object value) {
+            if (value == REMOVED) {
+                editor.remove(key);
+            } else if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Set) {
+                editor.putStringSet(key, (Set<String>) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(key, (Float) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            }
+        }
+    }
+
+    private class EditorImpl implements Editor {
+        private final Batch mEdits = new Batch();
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, value == null ? REMOVED : value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, values == null ? REMOVED : new HashSet<>(values));
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            synchronized (mEdits) {
+                mEdits.values.put(key, REMOVED);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            synchronized (mEdits) {
+                mEdits.clear = true;
+            }
+            return this;
+        }
+
+        /**
+         * Unlike a normal commit, the edits are written with the next batch.
+         */
+        @Override
+        public boolean commit() {
+            apply();
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            final Batch edits = new Batch();
+            synchronized (mEdits) {
+                edits.merge(mEdits);
+                mEdits.values.clear();
+                mEdits.clear = false;
+            }
+            merge(edits);
+        }
+    }
+}
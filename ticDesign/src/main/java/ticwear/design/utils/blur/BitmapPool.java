@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A LRU pool of mutable bitmaps, bounded by a byte budget.
+ *
+ * Bitmaps are matched by exact width, height and config, so a blur on the same window
+ * always get back the bitmap it used last time.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class BitmapPool {
+
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<>();
+    private final int mMaxBytes;
+    private int mCurrentBytes;
+
+    BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Get a mutable bitmap with given size and config, the content of bitmap is undefined.
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        synchronized (mBitmaps) {
+            Iterator<Bitmap> iterator = mBitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height &&
+                        bitmap.getConfig() == config) {
+                    iterator.remove();
+                    mCurrentBytes -= bitmap.getByteCount();
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Return the bitmap back to pool. The caller should not use the bitmap any more.
+     */
+    void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getByteCount();
+        if (size > mMaxBytes) {
+            return;
+        }
+        synchronized (mBitmaps) {
+            if (mBitmaps.contains(bitmap)) {
+                return;
+            }
+            // Most recently used bitmap at head.
+            mBitmaps.addFirst(bitmap);
+            mCurrentBytes += size;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    void clear() {
+        synchronized (mBitmaps) {
+            trimToSize(0);
+        }
+    }
+
+    private void trimToSize(int maxBytes) {
+        while (mCurrentBytes > maxBytes && !mBitmaps.isEmpty()) {
+            Bitmap eldest = mBitmaps.removeLast();
+            mCurrentBytes -= eldest.getByteCount();
+        }
+    }
+}
@@ -19,6 +19,7 @@ package ticwear.design.utils.blur;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.PorterDuff;
@@ -26,18 +27,39 @@ import android.graphics.PorterDuffColorFilter;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.view.Display;
 import android.view.View;
 import android.view.Window;
 
+import java.lang.ref.WeakReference;
+
 public class BlurBehind {
 
+    private static final int BITMAP_POOL_SIZE = 4 * 1024 * 1024;
+    private static final int BLUR_CACHE_SIZE = 4 * 1024 * 1024;
+
+    private static final BitmapPool sBitmapPool = new BitmapPool(BITMAP_POOL_SIZE);
+    private static final BlurCache sBlurCache = new BlurCache(BLUR_CACHE_SIZE);
+
+    /**
+     * Sampling of the preview stage in progressive mode.
+     */
+    private static final int PREVIEW_SAMPLING = 16;
+    /**
+     * Cross-fade duration from preview to full blur, if no animation duration is set.
+     */
+    private static final int PREVIEW_FADE_DURATION = 150;
+
     private final Context mContext;
 
     private final BlurFactor mBlurFactor = new BlurFactor();
     private int mAnimationDuration;
+    private boolean mUseCache;
+    private boolean mProgressive;
+    private int mPriority;
 
     public static BlurBehind from(Context context) {
         return new BlurBehind(context);
@@ -46,6 +68,16 @@ public class BlurBehind {
     private BlurBehind(Context context) {
         mContext = context;
         mAnimationDuration = 0;
+        mUseCache = true;
+        mPriority = BlurExecutor.PRIORITY_NORMAL;
+    }
+
+    /**
+     * Release the cached blur results and pooled bitmaps.
+     */
+    public static void clearCache() {
+        sBlurCache.clear();
+        sBitmapPool.clear();
     }
 
     public BlurBehind radius(int radius) {
@@ -63,24 +95,64 @@ public class BlurBehind {
         return this;
     }
 
+    /**
+     * Set the blur quality, {@link BlurFactor#QUALITY_EXACT} by default.
+     */
+    public BlurBehind quality(int quality) {
+        mBlurFactor.quality = quality;
+        return this;
+    }
+
     public BlurBehind animate(int duration) {
         mAnimationDuration = duration;
         return this;
     }
 
+    /**
+     * Whether to reuse the blurred result of last capture on the same window (or view).
+     * When enabled (default), an unchanged window will not be blurred again, and a changed
+     * window only re-blur its changed region.
+     */
+    public BlurBehind cache(boolean useCache) {
+        mUseCache = useCache;
+        return this;
+    }
+
+    /**
+     * Whether to show a cheap, heavily down-sampled blur first, and cross-fade to the full
+     * blur when it's ready. Disabled by default.
+     */
+    public BlurBehind progressive(boolean progressive) {
+        mProgressive = progressive;
+        return this;
+    }
+
+    /**
+     * Set the priority of blur job in {@link BlurExecutor},
+     * {@link BlurExecutor#PRIORITY_NORMAL} by default.
+     */
+    public BlurBehind priority(int priority) {
+        mPriority = priority;
+        return this;
+    }
+
     public BlurBehindExecutor capture(@Nullable Window window) {
         return capture(window != null ? window.getDecorView() : null);
     }
 
     public BlurBehindExecutor capture(@Nullable View view) {
-        return new BlurBehindExecutor(mContext, prepareSource(view), mBlurFactor, mAnimationDuration);
+        return new BlurBehindExecutor(mContext, prepareSource(view),
+                mUseCache ? view : null, mBlurFactor, mAnimationDuration, mProgressive, mPriority);
     }
 
     private Bitmap prepareSource(View view) {
         if (view == null) {
             return null;
         }
-        Bitmap source = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.RGB_565);
+        Bitmap source = sBitmapPool.get(view.getWidth(), view.getHeight(), Bitmap.Config.RGB_565);
+        // A pooled bitmap keeps the last capture, clear it like a new one where the view
+        // doesn't draw.
+        source.eraseColor(Color.BLACK);
         Canvas c = new Canvas(source);
         view.draw(c);
         return source;
@@ -89,19 +161,26 @@ public class BlurBehind {
     public static class BlurBehindExecutor {
 
         private final Context mContext;
-        private final Bitmap mSource;
+        private Bitmap mSource;
+        private final WeakReference<View> mSourceViewRef;
         private final BlurFactor mBlurFactor;
         private final int mAnimationDuration;
+        private final boolean mProgressive;
+        private final int mPriority;
 
         private Runnable mPreSetBackgroundRunnable;
         private Runnable mPostSetBackgroundRunnable;
 
-        private BlurBehindExecutor(Context mContext, Bitmap source,
-                                   BlurFactor factor, int duration) {
+        private BlurBehindExecutor(Context mContext, Bitmap source, View sourceView,
+                                   BlurFactor factor, int duration, boolean progressive,
+                                   int priority) {
             this.mContext = mContext;
             this.mSource = source;
+            this.mSourceViewRef = new WeakReference<>(sourceView);
             this.mBlurFactor = factor;
             this.mAnimationDuration = duration;
+            this.mProgressive = progressive;
+            this.mPriority = priority;
         }
 
         public BlurBehindExecutor preSetBackground(Runnable callback) {
@@ -123,7 +202,7 @@ public class BlurBehind {
             display.getSize(size);
             mBlurFactor.width = size.x;
             mBlurFactor.height = size.y;
-            return start(new ViewGetter() {
+            return start(window, new ViewGetter() {
                 @Override
                 public View get() {
                     // Make sure there is no actions for the window before pre set background.
@@ -138,7 +217,7 @@ public class BlurBehind {
             }
             mBlurFactor.width = target.getMeasuredWidth();
             mBlurFactor.height = target.getMeasuredHeight();
-            return start(new ViewGetter() {
+            return start(target, new ViewGetter() {
                 @Override
                 public View get() {
                     return target;
@@ -146,29 +225,89 @@ public class BlurBehind {
             });
         }
 
-        private BlurBehindFuture start(final ViewGetter getter) {
-            if (getter == null) {
+        /**
+         * @param target the window or view to set background, a newer blur into the same
+         *               target cancels this one.
+         */
+        private BlurBehindFuture start(Object target, final ViewGetter getter) {
+            if (getter == null || mSource == null) {
                 return new BlurBehindFuture(null);
             }
 
-            BlurBehindTask task = new BlurBehindTask(mBlurFactor, new OnBlurFinishedCallback() {
+            // Whether the preview of progressive mode is on the screen,
+            // and whether the full blur has been set, so a late preview is dropped.
+            final boolean[] previewShown = new boolean[1];
+            final boolean[] blurFinished = new boolean[1];
+
+            final Handler handler;
+            final Runnable previewRunnable;
+            // The preview is small enough to be blurred right here, and shown on next frame.
+            final Bitmap preview = mProgressive ?
+                    BlurBehindTask.blurPreview(mSource, mBlurFactor) : null;
+            if (preview != null) {
+                handler = new Handler(Looper.getMainLooper());
+                previewRunnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (blurFinished[0]) {
+                            return;
+                        }
+                        if (mPreSetBackgroundRunnable != null) {
+                            mPreSetBackgroundRunnable.run();
+                        }
+                        Drawable background = new BitmapDrawable(
+                                mContext.getResources(), preview);
+                        changeBackground(getter.get(), background, 0);
+                        previewShown[0] = true;
+                    }
+                };
+            } else {
+                handler = null;
+                previewRunnable = null;
+            }
+
+            OnBlurFinishedCallback callback = new OnBlurFinishedCallback() {
                 @Override
                 public void onBlurFinished(Bitmap blurredBitmap) {
-                    if (mPreSetBackgroundRunnable != null) {
+                    blurFinished[0] = true;
+                    if (handler != null) {
+                        handler.removeCallbacks(previewRunnable);
+                    }
+
+                    if (!previewShown[0] && mPreSetBackgroundRunnable != null) {
                         mPreSetBackgroundRunnable.run();
                     }
 
+                    int duration = mAnimationDuration;
+                    if (previewShown[0] && duration <= 0) {
+                        duration = PREVIEW_FADE_DURATION;
+                    }
                     Drawable background = new BitmapDrawable(
                             mContext.getResources(), blurredBitmap);
-                    changeBackground(getter.get(), background, mAnimationDuration);
+                    changeBackground(getter.get(), background, duration);
 
                     if (mPostSetBackgroundRunnable != null) {
                         mPostSetBackgroundRunnable.run();
                     }
                 }
-            });
+            };
 
-            return new BlurBehindFuture(task.execute(mSource));
+            // The source goes back to bitmap pool once blurred, so it can only be used once.
+            BlurBehindTask task = new BlurBehindTask(mContext, mSource, mSourceViewRef,
+                    new BlurFactor(mBlurFactor), mPriority, callback);
+            mSource = null;
+
+            // Post the preview before the blur, a cached blur may finish right away.
+            if (handler != null) {
+                handler.post(previewRunnable);
+            }
+
+            BlurExecutor.getInstance().execute(target, task);
+
+            if (handler == null) {
+                return new BlurBehindFuture(task);
+            }
+            return new BlurBehindFuture(task, handler, previewRunnable);
         }
 
         private TransitionDrawable changeBackground(View view, Drawable drawable, int duration) {
@@ -202,68 +341,159 @@ public class BlurBehind {
 
     public static class BlurBehindFuture {
 
-        private AsyncTask mBlurBehindTask;
+        private BlurExecutor.Job<?> mBlurBehindTask;
+        private Handler mPreviewHandler;
+        private Runnable mPreviewRunnable;
 
-        private BlurBehindFuture(AsyncTask task) {
+        private BlurBehindFuture(BlurExecutor.Job<?> task) {
+            this(task, null, null);
+        }
+
+        private BlurBehindFuture(BlurExecutor.Job<?> task,
+                                 Handler previewHandler, Runnable preview) {
             this.mBlurBehindTask = task;
+            this.mPreviewHandler = previewHandler;
+            this.mPreviewRunnable = preview;
         }
 
         public void cancel() {
+            if (mPreviewHandler != null) {
+                mPreviewHandler.removeCallbacks(mPreviewRunnable);
+                mPreviewHandler = null;
+                mPreviewRunnable = null;
+            }
             if (mBlurBehindTask != null) {
-                mBlurBehindTask.cancel(true);
+                mBlurBehindTask.cancel();
                 mBlurBehindTask = null;
             }
         }
     }
 
-    private static class BlurBehindTask extends AsyncTask<Bitmap, Void, Bitmap> {
+    private static class BlurBehindTask extends BlurExecutor.Job<Bitmap> {
+
+        private static final ThreadLocal<ScaleTools> sScaleTools = new ThreadLocal<>();
 
         private OnBlurFinishedCallback mOnBlurFinishedCallback;
+        private final Context mContext;
+        private final Bitmap mSource;
+        private final WeakReference<View> mSourceViewRef;
         private final BlurFactor mBlurFactor;
 
-        public BlurBehindTask(BlurFactor factor, OnBlurFinishedCallback callback) {
+        public BlurBehindTask(Context context, Bitmap source, WeakReference<View> sourceViewRef,
+                              BlurFactor factor, int priority, OnBlurFinishedCallback callback) {
+            super(priority);
+            mContext = context.getApplicationContext();
+            mSource = source;
+            mSourceViewRef = sourceViewRef;
             mBlurFactor = factor;
             mOnBlurFinishedCallback = callback;
         }
 
         @Override
-        protected Bitmap doInBackground(Bitmap... params) {
-            if (params.length == 0) {
-                return null;
-            }
-
-            Bitmap source = params[0];
-
+        protected Bitmap doInBackground() {
             int width = mBlurFactor.width / mBlurFactor.sampling;
             int height = mBlurFactor.height / mBlurFactor.sampling;
 
-            if (width == 0 || height == 0) {
+            int[] pixels;
+            try {
+                if (width == 0 || height == 0 || mBlurFactor.radius < 1) {
+                    return null;
+                }
+
+                Bitmap bitmap = sBitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+                try {
+                    getScaleTools().draw(mSource, bitmap, mBlurFactor);
+                    pixels = new int[width * height];
+                    bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+                } finally {
+                    sBitmapPool.put(bitmap);
+                }
+            } finally {
+                // Give the source back even if scaling failed, it's a full screen bitmap.
+                sBitmapPool.put(mSource);
+            }
+
+            BlurEngine engine = BlurEngines.getInstance(mContext).get(mBlurFactor.quality);
+            return sBlurCache.blur(engine, mSourceViewRef.get(), mBlurFactor,
+                    pixels, width, height);
+        }
+
+        /**
+         * Blur a heavily down-sampled source directly, for the preview stage.
+         *
+         * @return the blurred preview, or null if the preview is empty.
+         */
+        static Bitmap blurPreview(Bitmap source, BlurFactor factor) {
+            BlurFactor previewFactor = new BlurFactor(factor);
+            previewFactor.sampling = Math.max(factor.sampling, PREVIEW_SAMPLING);
+            // Keep the blur size on screen.
+            previewFactor.radius = Math.max(1,
+                    factor.radius * factor.sampling / previewFactor.sampling);
+
+            int width = previewFactor.width / previewFactor.sampling;
+            int height = previewFactor.height / previewFactor.sampling;
+            if (width == 0 || height == 0 || factor.radius < 1) {
                 return null;
             }
 
             Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            getScaleTools().draw(source, bitmap, previewFactor);
+            return StackBlur.getInstance().blur(bitmap, previewFactor.radius);
+        }
 
-            Canvas canvas = new Canvas(bitmap);
-            canvas.scale(1 / (float) mBlurFactor.sampling, 1 / (float) mBlurFactor.sampling);
-            Paint paint = new Paint();
-            paint.setFlags(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
-            PorterDuffColorFilter filter =
-                    new PorterDuffColorFilter(mBlurFactor.color, PorterDuff.Mode.SRC_ATOP);
-            paint.setColorFilter(filter);
-            canvas.drawBitmap(source, 0, 0, paint);
+        private static ScaleTools getScaleTools() {
+            ScaleTools tools = sScaleTools.get();
+            if (tools == null) {
+                tools = new ScaleTools();
+                sScaleTools.set(tools);
+            }
+            return tools;
+        }
 
-            return FastBlur.doBlur(bitmap, mBlurFactor.radius, true);
+        @Override
+        protected void onCancelledBeforeRun() {
+            sBitmapPool.put(mSource);
         }
 
         @Override
         protected void onPostExecute(Bitmap bitmap) {
-            super.onPostExecute(bitmap);
             if (mOnBlurFinishedCallback != null) {
                 mOnBlurFinishedCallback.onBlurFinished(bitmap);
             }
         }
     }
 
+    /**
+     * Canvas and paint to draw the down-sampled source, reused by each blur thread.
+     */
+    private static class ScaleTools {
+        private final Canvas mCanvas = new Canvas();
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+        private int mFilterColor;
+
+        ScaleTools() {
+            setFilterColor(mFilterColor);
+        }
+
+        void draw(Bitmap source, Bitmap target, BlurFactor factor) {
+            if (factor.color != mFilterColor) {
+                setFilterColor(factor.color);
+            }
+            target.eraseColor(Color.TRANSPARENT);
+            mCanvas.setBitmap(target);
+            mCanvas.save();
+            mCanvas.scale(1 / (float) factor.sampling, 1 / (float) factor.sampling);
+            mCanvas.drawBitmap(source, 0, 0, mPaint);
+            mCanvas.restore();
+            mCanvas.setBitmap(null);
+        }
+
+        private void setFilterColor(int color) {
+            mFilterColor = color;
+            mPaint.setColorFilter(new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP));
+        }
+    }
+
     public interface OnBlurFinishedCallback {
         void onBlurFinished(Bitmap blurredBitmap);
     }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of blurred results, keyed by the captured view and {@link BlurFactor}.
+ *
+ * Each entry keeps the down-sampled (not yet blurred) pixels of last capture, so a new
+ * capture of the same view can be compared with it. If nothing changed, the cached blurred
+ * bitmap is reused as is. If only part of the view changed, only that region (expanded by
+ * the blur radius) is blurred again.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class BlurCache {
+
+    /**
+     * If the region affected by a change is larger than this fraction of the image,
+     * a full blur is cheaper than cropping.
+     */
+    private static final float MAX_PARTIAL_FRACTION = 0.5f;
+
+    // access-ordered, eldest entry is the least recently used.
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(4, 0.75f, true);
+    private final int mMaxBytes;
+    private int mCurrentBytes;
+
+    BlurCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Blur the down-sampled pixels of view, reuse as much of the cached result as possible.
+     *
+     * @param engine the engine to blur with.
+     * @param view   the captured view, or null if the result should not be cached.
+     * @param factor blur factor used to get the pixels.
+     * @param pixels down-sampled pixels of the view, will be kept by the cache.
+     * @param width  width of pixels
+     * @param height height of pixels
+     *
+     * @return the blurred bitmap.
+     */
+    Bitmap blur(BlurEngine engine, View view, BlurFactor factor,
+                int[] pixels, int width, int height) {
+        if (view == null) {
+            return blurAll(engine, pixels, null, width, height, factor.radius);
+        }
+
+        Key key = new Key(view, factor);
+        Entry entry;
+        synchronized (mEntries) {
+            // Take the entry out, so a concurrent blur of the same view will not touch it.
+            entry = mEntries.remove(key);
+            if (entry != null) {
+                mCurrentBytes -= entry.getByteCount();
+            }
+        }
+
+        if (entry == null || entry.width != width || entry.height != height) {
+            entry = new Entry(width, height);
+            entry.blurred = new int[pixels.length];
+            entry.result = blurAll(engine, pixels, entry.blurred, width, height, factor.radius);
+        } else {
+            Rect dirty = findDirtyRect(entry.pixels, pixels, width, height);
+            if (dirty != null) {
+                blurRegion(engine, pixels, entry.blurred, width, height, factor.radius, dirty);
+                entry.result = Bitmap.createBitmap(
+                        entry.blurred, width, height, Bitmap.Config.ARGB_8888);
+            }
+        }
+        entry.pixels = pixels;
+
+        synchronized (mEntries) {
+            evictStaleEntries();
+            if (entry.getByteCount() <= mMaxBytes) {
+                mEntries.put(key, entry);
+                mCurrentBytes += entry.getByteCount();
+                trimToSize(mMaxBytes);
+            }
+        }
+
+        return entry.result;
+    }
+
+    void clear() {
+        synchronized (mEntries) {
+            trimToSize(0);
+        }
+    }
+
+    private Bitmap blurAll(BlurEngine engine, int[] pixels, int[] out,
+                           int width, int height, int radius) {
+        if (out == null) {
+            out = new int[pixels.length];
+        }
+        System.arraycopy(pixels, 0, out, 0, pixels.length);
+        engine.blur(out, width, height, radius);
+        return Bitmap.createBitmap(out, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Blur the part of image affected by dirty rect, and write it into blurred.
+     * The result is exactly the same as a full blur of pixels.
+     */
+    private void blurRegion(BlurEngine engine, int[] pixels, int[] blurred,
+                            int width, int height, int radius, Rect dirty) {
+        // Pixels within radius of the dirty rect are changed by the blur.
+        Rect affected = new Rect(dirty);
+        affected.inset(-radius, -radius);
+        affected.intersect(0, 0, width, height);
+
+        if (affected.width() * affected.height() > width * height * MAX_PARTIAL_FRACTION) {
+            System.arraycopy(pixels, 0, blurred, 0, pixels.length);
+            engine.blur(blurred, width, height, radius);
+            return;
+        }
+
+        // And they are blurred from pixels within radius of them.
+        Rect source = new Rect(affected);
+        source.inset(-radius, -radius);
+        source.intersect(0, 0, width, height);
+
+        int sw = source.width();
+        int sh = source.height();
+        int[] crop = new int[sw * sh];
+        for (int y = 0; y < sh; y++) {
+            System.arraycopy(pixels, (source.top + y) * width + source.left, crop, y * sw, sw);
+        }
+
+        engine.blur(crop, sw, sh, radius);
+
+        int offsetX = affected.left - source.left;
+        int offsetY = affected.top - source.top;
+        int aw = affected.width();
+        for (int y = 0; y < affected.height(); y++) {
+            System.arraycopy(crop, (offsetY + y) * sw + offsetX,
+                    blurred, (affected.top + y) * width + affected.left, aw);
+        }
+    }
+
+    /**
+     * @return bounds of different pixels, or null if the pixels are identical.
+     */
+    static Rect findDirtyRect(int[] old, int[] pixels, int width, int height) {
+        int top = -1;
+        for (int y = 0; y < height && top < 0; y++) {
+            if (!rowEquals(old, pixels, y * width, width)) {
+                top = y;
+            }
+        }
+        if (top < 0) {
+            return null;
+        }
+
+        int bottom = top;
+        for (int y = height - 1; y > top; y--) {
+            if (!rowEquals(old, pixels, y * width, width)) {
+                bottom = y;
+                break;
+            }
+        }
+
+        int left = width;
+        int right = -1;
+        for (int y = top; y <= bottom; y++) {
+            int row = y * width;
+            for (int x = 0; x < left; x++) {
+                if (old[row + x] != pixels[row + x]) {
+                    left = x;
+                    break;
+                }
+            }
+            for (int x = width - 1; x > right; x--) {
+                if (old[row + x] != pixels[row + x]) {
+                    right = x;
+                    break;
+                }
+            }
+        }
+
+        return new Rect(left, top, right + 1, bottom + 1);
+    }
+
+    private static boolean rowEquals(int[] a, int[] b, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void evictStaleEntries() {
+        Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> e = iterator.next();
+            if (e.getKey().mViewRef.get() == null) {
+                mCurrentBytes -= e.getValue().getByteCount();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void trimToSize(int maxBytes) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mCurrentBytes > maxBytes && iterator.hasNext()) {
+            mCurrentBytes -= iterator.next().getByteCount();
+            iterator.remove();
+        }
+    }
+
+    private static class Key {
+        private final WeakReference<View> mViewRef;
+        private final int mViewHash;
+        private final BlurFactor mFactor;
+
+        Key(View view, BlurFactor factor) {
+            mViewRef = new WeakReference<>(view);
+            mViewHash = System.identityHashCode(view);
+            mFactor = new BlurFactor(factor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key that = (Key) o;
+            View view = mViewRef.get();
+            return view != null && view == that.mViewRef.get() && mFactor.equals(that.mFactor);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mViewHash + mFactor.hashCode();
+        }
+    }
+
+    private static class Entry {
+        final int width;
+        final int height;
+
+        int[] pixels;
+        int[] blurred;
+        Bitmap result;
+
+        Entry(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        int getByteCount() {
+            // pixels, blurred and result bitmap, 4 bytes per pixel each.
+            return width * height * 4 * 3;
+        }
+    }
+}
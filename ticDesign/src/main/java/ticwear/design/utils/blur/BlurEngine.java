@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+/**
+ * A blur backend.
+ *
+ * Every engine works on ARGB pixels in place, preserves the alpha channel, and only reads
+ * pixels within {@code radius} of the output pixel (so a region of the image can be blurred
+ * separately, see {@link BlurCache}).
+ *
+ * Created by tankery on 10/18/16.
+ */
+public interface BlurEngine {
+
+    /**
+     * @return name of this engine, for logging.
+     */
+    String getName();
+
+    /**
+     * Blur the ARGB pixels in place. The alpha channel is preserved.
+     *
+     * @param pixels pixels, row by row, with stride equals to width.
+     */
+    void blur(int[] pixels, int width, int height, int radius);
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses a {@link BlurEngine} for a {@link BlurFactor}.
+ *
+ * {@link BlurFactor#QUALITY_EXACT} always use {@link StackBlur}. For
+ * {@link BlurFactor#QUALITY_FASTEST_ACCEPTABLE}, every engine available on this device is
+ * timed on a small probe image once, and the fastest one is used from then on.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class BlurEngines {
+
+    private static final String TAG = "BlurEngines";
+
+    private static final int PROBE_SIZE = 128;
+    private static final int PROBE_RADIUS = 10;
+    private static final int PROBE_ROUNDS = 3;
+
+    private static BlurEngines sInstance;
+
+    private final List<BlurEngine> mEngines = new ArrayList<>();
+    private final BlurEngine mExactEngine;
+    private BlurEngine mFastestEngine;
+
+    public static synchronized BlurEngines getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BlurEngines(context);
+        }
+        return sInstance;
+    }
+
+    private BlurEngines(Context context) {
+        mExactEngine = StackBlur.getInstance();
+        mEngines.add(mExactEngine);
+        mEngines.add(new BoxBlur());
+        IntrinsicBlur intrinsicBlur = IntrinsicBlur.create(context, mExactEngine);
+        if (intrinsicBlur != null) {
+            mEngines.add(intrinsicBlur);
+        }
+    }
+
+    /**
+     * Get the blur engine for given quality. The first call for
+     * {@link BlurFactor#QUALITY_FASTEST_ACCEPTABLE} runs the cost probe,
+     * so it should not be called on main thread.
+     */
+    public BlurEngine get(int quality) {
+        if (quality == BlurFactor.QUALITY_FASTEST_ACCEPTABLE) {
+            return getFastest();
+        }
+        return mExactEngine;
+    }
+
+    /**
+     * @return all blur engines available on this device.
+     */
+    public List<BlurEngine> getEngines() {
+        return mEngines;
+    }
+
+    private synchronized BlurEngine getFastest() {
+        if (mFastestEngine == null) {
+            mFastestEngine = probe();
+        }
+        return mFastestEngine;
+    }
+
+    private BlurEngine probe() {
+        int[] image = new int[PROBE_SIZE * PROBE_SIZE];
+        int[] pixels = new int[image.length];
+        for (int i = 0; i < image.length; i++) {
+            // Some noise with high contrast, so no engine can take a shortcut.
+            image[i] = 0xff000000 | (i * 0x9e3779b1 >>> 8);
+        }
+
+        BlurEngine fastest = mExactEngine;
+        long fastestCost = Long.MAX_VALUE;
+        for (BlurEngine engine : mEngines) {
+            long cost = Long.MAX_VALUE;
+            // First round warms up buffers and JIT, and is not counted.
+            for (int round = 0; round <= PROBE_ROUNDS; round++) {
+                System.arraycopy(image, 0, pixels, 0, image.length);
+                long start = SystemClock.elapsedRealtimeNanos();
+                try {
+                    engine.blur(pixels, PROBE_SIZE, PROBE_SIZE, PROBE_RADIUS);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "blur engine " + engine.getName() + " failed on probe.", e);
+                    cost = Long.MAX_VALUE;
+                    break;
+                }
+                if (round > 0) {
+                    cost = Math.min(cost, SystemClock.elapsedRealtimeNanos() - start);
+                }
+            }
+            Log.d(TAG, "probe " + engine.getName() + " cost " + cost + "ns");
+            if (cost < fastestCost) {
+                fastestCost = cost;
+                fastest = engine;
+            }
+        }
+
+        Log.d(TAG, "use " + fastest.getName() + " as fastest blur engine.");
+        return fastest;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A dedicated executor for blur jobs.
+ *
+ * Jobs are run one by one on a background thread (the blur engines split the work into
+ * threads by themselves), higher priority first. A new job for the same target supersedes
+ * the older one, which is cancelled whether it's still pending or running. When too many
+ * jobs are pending, the lowest priority, oldest one is dropped.
+ *
+ * Counters of the queue are exposed for monitoring the blur backlog.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class BlurExecutor {
+
+    private static final String TAG = "BlurExecutor";
+
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    private static final int MAX_PENDING_JOBS = 4;
+    private static final int KEEP_ALIVE_SECONDS = 10;
+
+    private static BlurExecutor sInstance;
+
+    private final PriorityBlockingQueue<Runnable> mQueue = new PriorityBlockingQueue<>();
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Latest job of each target, guarded by itself.
+    private final Map<Object, Job<?>> mTargetJobs = new HashMap<>();
+
+    private final AtomicLong mSequence = new AtomicLong();
+    private final AtomicLong mSubmittedCount = new AtomicLong();
+    private final AtomicLong mCompletedCount = new AtomicLong();
+    private final AtomicLong mSupersededCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mFailedCount = new AtomicLong();
+    private final AtomicLong mTotalLatencyMillis = new AtomicLong();
+    private final AtomicLong mMaxLatencyMillis = new AtomicLong();
+
+    public static synchronized BlurExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new BlurExecutor();
+        }
+        return sInstance;
+    }
+
+    private BlurExecutor() {
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, mQueue,
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "BlurExecutor #" + mCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run the job in background.
+     *
+     * @param target the target of job result, an older job for the same target is cancelled.
+     *               null means the job has no target and never supersedes others.
+     */
+    public <Result> void execute(Object target, Job<Result> job) {
+        if (job.mExecutor != null) {
+            throw new IllegalStateException("The job has already been executed.");
+        }
+        job.mExecutor = this;
+        job.mTarget = target;
+        job.mSequence = mSequence.getAndIncrement();
+        job.mSubmitTime = SystemClock.uptimeMillis();
+
+        if (target != null) {
+            Job<?> older;
+            synchronized (mTargetJobs) {
+                older = mTargetJobs.put(target, job);
+            }
+            if (older != null && older.cancel()) {
+                mSupersededCount.incrementAndGet();
+            }
+        }
+
+        mSubmittedCount.incrementAndGet();
+        mExecutor.execute(job);
+        dropOverflowJobs();
+    }
+
+    private void dropOverflowJobs() {
+        while (mQueue.size() > MAX_PENDING_JOBS) {
+            // The queue is ordered by priority, so the tail is the lowest and oldest.
+            Job<?> lowest = null;
+            Iterator<Runnable> iterator = mQueue.iterator();
+            while (iterator.hasNext()) {
+                Job<?> job = (Job<?>) iterator.next();
+                if (lowest == null || job.compareTo(lowest) > 0) {
+                    lowest = job;
+                }
+            }
+            if (lowest == null) {
+                break;
+            }
+            if (lowest.cancel()) {
+                mDroppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void onJobFinished(Job<?> job, boolean ran) {
+        if (job.mTarget != null) {
+            synchronized (mTargetJobs) {
+                if (mTargetJobs.get(job.mTarget) == job) {
+                    mTargetJobs.remove(job.mTarget);
+                }
+            }
+        }
+        if (ran) {
+            long latency = SystemClock.uptimeMillis() - job.mSubmitTime;
+            mCompletedCount.incrementAndGet();
+            mTotalLatencyMillis.addAndGet(latency);
+            long max;
+            do {
+                max = mMaxLatencyMillis.get();
+            } while (latency > max && !mMaxLatencyMillis.compareAndSet(max, latency));
+        }
+    }
+
+    /**
+     * @return count of jobs waiting to run.
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    public long getSubmittedCount() {
+        return mSubmittedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    /**
+     * @return count of jobs cancelled by a newer job for the same target.
+     */
+    public long getSupersededCount() {
+        return mSupersededCount.get();
+    }
+
+    /**
+     * @return count of jobs dropped because too many jobs are pending.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return count of jobs failed with an exception in background.
+     */
+    public long getFailedCount() {
+        return mFailedCount.get();
+    }
+
+    /**
+     * @return average time from submit to finish of completed jobs, in milliseconds.
+     */
+    public long getAverageLatencyMillis() {
+        long count = mCompletedCount.get();
+        return count == 0 ? 0 : mTotalLatencyMillis.get() / count;
+    }
+
+    /**
+     * @return max time from submit to finish of completed jobs, in milliseconds.
+     */
+    public long getMaxLatencyMillis() {
+        return mMaxLatencyMillis.get();
+    }
+
+    /**
+     * A background job, with result delivered on main thread.
+     */
+    public static abstract class Job<Result> implements Runnable, Comparable<Job<?>> {
+
+        private final int mPriority;
+        private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_RUNNING = 1;
+        private static final int STATE_FINISHED = 2;
+        private static final int STATE_CANCELLED = 3;
+
+        private BlurExecutor mExecutor;
+        private Object mTarget;
+        private long mSequence;
+        private long mSubmitTime;
+
+        public Job(int priority) {
+            mPriority = priority;
+        }
+
+        /**
+         * Do the job on background thread.
+         */
+        protected abstract Result doInBackground();
+
+        /**
+         * Deliver the result on main thread, will not be called if the job is cancelled.
+         */
+        protected abstract void onPostExecute(Result result);
+
+        /**
+         * Called on the cancelling thread if the job is cancelled before run.
+         */
+        protected void onCancelledBeforeRun() {
+        }
+
+        public boolean isCancelled() {
+            return mState.get() == STATE_CANCELLED;
+        }
+
+        /**
+         * Cancel the job, a pending job will not run, and the result of a running job
+         * will not be delivered.
+         *
+         * @return true if the job is cancelled by this call.
+         */
+        public boolean cancel() {
+            while (true) {
+                int state = mState.get();
+                if (state == STATE_FINISHED || state == STATE_CANCELLED) {
+                    return false;
+                }
+                if (mState.compareAndSet(state, STATE_CANCELLED)) {
+                    if (state == STATE_PENDING && mExecutor != null) {
+                        mExecutor.mQueue.remove(this);
+                        mExecutor.onJobFinished(this, false);
+                        onCancelledBeforeRun();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public final void run() {
+            if (!mState.compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+                return;
+            }
+            Result result = null;
+            boolean succeeded = false;
+            try {
+                result = doInBackground();
+                succeeded = true;
+            } catch (RuntimeException e) {
+                // A failed blur is not fatal, drop it like a cancelled one.
+                Log.w(TAG, "blur job failed.", e);
+            } finally {
+                if (!succeeded) {
+                    // Finish the job anyway, so its target entry doesn't outlive it.
+                    mState.compareAndSet(STATE_RUNNING, STATE_CANCELLED);
+                    mExecutor.mFailedCount.incrementAndGet();
+                    mExecutor.onJobFinished(this, false);
+                }
+            }
+            if (!succeeded) {
+                return;
+            }
+
+            final Result finalResult = result;
+            mExecutor.mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mState.compareAndSet(STATE_RUNNING, STATE_FINISHED)) {
+                        mExecutor.onJobFinished(Job.this, true);
+                        onPostExecute(finalResult);
+                    } else {
+                        mExecutor.onJobFinished(Job.this, false);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Job<?> another) {
+            // Higher priority first, then first in first out.
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -39,9 +39,54 @@ public class BlurFactor {
     public static final int DEFAULT_RADIUS = 25;
     public static final int DEFAULT_SAMPLING = 1;
 
+    /**
+     * Blur with {@link StackBlur}, the result is the same on every device.
+     */
+    public static final int QUALITY_EXACT = 0;
+    /**
+     * Blur with the fastest engine on this device, the result may be a little different
+     * from {@link #QUALITY_EXACT}.
+     */
+    public static final int QUALITY_FASTEST_ACCEPTABLE = 1;
+
     public int width;
     public int height;
     public int radius = DEFAULT_RADIUS;
     public int sampling = DEFAULT_SAMPLING;
     public int color = Color.TRANSPARENT;
-}
\ No newline at end of file
+    public int quality = QUALITY_EXACT;
+
+    public BlurFactor() {
+    }
+
+    public BlurFactor(BlurFactor other) {
+        width = other.width;
+        height = other.height;
+        radius = other.radius;
+        sampling = other.sampling;
+        color = other.color;
+        quality = other.quality;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BlurFactor)) return false;
+
+        BlurFactor that = (BlurFactor) o;
+        return width == that.width && height == that.height && radius == that.radius &&
+                sampling == that.sampling && color == that.color &&
+                quality == that.quality;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = width;
+        result = 31 * result + height;
+        result = 31 * result + radius;
+        result = 31 * result + sampling;
+        result = 31 * result + color;
+        result = 31 * result + quality;
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+/**
+ * Approximate gaussian blur with three separable box blur passes.
+ *
+ * The three box radii add up to the blur radius, so the result never reads pixels further
+ * than radius away. It's a little sharper than {@link StackBlur} with the same radius,
+ * but each pass costs constant time per pixel whatever the radius is.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class BoxBlur implements BlurEngine {
+
+    private static final int PASSES = 3;
+
+    private final Object mBufferLock = new Object();
+    private int[] mCachedBuffer;
+    private int[] mCachedLine;
+
+    @Override
+    public String getName() {
+        return "BoxBlur";
+    }
+
+    @Override
+    public void blur(int[] pixels, int width, int height, int radius) {
+        if (radius < 1 || width <= 0 || height <= 0) {
+            return;
+        }
+
+        int size = width * height;
+        int[] buffer;
+        int[] line;
+        synchronized (mBufferLock) {
+            buffer = mCachedBuffer;
+            line = mCachedLine;
+            mCachedBuffer = null;
+            mCachedLine = null;
+        }
+        if (buffer == null || buffer.length < size) {
+            buffer = new int[size];
+        }
+        if (line == null || line.length < Math.max(width, height)) {
+            line = new int[Math.max(width, height)];
+        }
+
+        System.arraycopy(pixels, 0, buffer, 0, size);
+        for (int pass = 0; pass < PASSES; pass++) {
+            int r = (radius + pass) / PASSES;
+            if (r > 0) {
+                boxRows(buffer, line, width, height, r);
+            }
+        }
+        for (int pass = 0; pass < PASSES; pass++) {
+            int r = (radius + pass) / PASSES;
+            if (r > 0) {
+                boxColumns(buffer, line, width, height, r);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            // Preserve alpha channel.
+            pixels[i] = (pixels[i] & 0xff000000) | (buffer[i] & 0x00ffffff);
+        }
+
+        synchronized (mBufferLock) {
+            mCachedBuffer = buffer;
+            mCachedLine = line;
+        }
+    }
+
+    private static void boxRows(int[] pixels, int[] line, int w, int h, int r) {
+        for (int y = 0; y < h; y++) {
+            int offset = y * w;
+            System.arraycopy(pixels, offset, line, 0, w);
+            boxLine(line, pixels, offset, 1, w, r);
+        }
+    }
+
+    private static void boxColumns(int[] pixels, int[] line, int w, int h, int r) {
+        for (int x = 0; x < w; x++) {
+            for (int y = 0, i = x; y < h; y++, i += w) {
+                line[y] = pixels[i];
+            }
+            boxLine(line, pixels, x, w, h, r);
+        }
+    }
+
+    /**
+     * Box blur {@code length} pixels of in, and write them to out from offset with stride.
+     * Pixels outside the line are clamped to the edge.
+     */
+    private static void boxLine(int[] in, int[] out, int offset, int stride, int length, int r) {
+        int last = length - 1;
+        int div = r + r + 1;
+        int half = div >> 1;
+        int rsum = 0, gsum = 0, bsum = 0;
+        int p;
+
+        for (int i = -r; i <= r; i++) {
+            p = in[Math.min(last, Math.max(i, 0))];
+            rsum += (p >> 16) & 0xff;
+            gsum += (p >> 8) & 0xff;
+            bsum += p & 0xff;
+        }
+
+        for (int i = 0, o = offset; i < length; i++, o += stride) {
+            out[o] = (((rsum + half) / div) << 16) | (((gsum + half) / div) << 8) |
+                    ((bsum + half) / div);
+
+            p = in[Math.min(last, i + r + 1)];
+            rsum += (p >> 16) & 0xff;
+            gsum += (p >> 8) & 0xff;
+            bsum += p & 0xff;
+
+            p = in[Math.max(0, i - r)];
+            rsum -= (p >> 16) & 0xff;
+            gsum -= (p >> 8) & 0xff;
+            bsum -= p & 0xff;
+        }
+    }
+}
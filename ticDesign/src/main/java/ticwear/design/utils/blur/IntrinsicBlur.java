@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.content.Context;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RSRuntimeException;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+import android.renderscript.Type;
+import android.util.Log;
+
+/**
+ * Gaussian blur with RenderScript {@link ScriptIntrinsicBlur}.
+ *
+ * The intrinsic only supports radius up to {@link #MAX_RADIUS}, larger radius are blurred by
+ * the fallback engine.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class IntrinsicBlur implements BlurEngine {
+
+    private static final String TAG = "IntrinsicBlur";
+
+    static final int MAX_RADIUS = 25;
+
+    private final RenderScript mRenderScript;
+    private final ScriptIntrinsicBlur mScript;
+    private final BlurEngine mFallback;
+
+    private Allocation mInput;
+    private Allocation mOutput;
+    private byte[] mOutputBytes;
+
+    /**
+     * Create the intrinsic blur engine.
+     *
+     * @return the engine, or null if RenderScript is not available on this device.
+     */
+    public static IntrinsicBlur create(Context context, BlurEngine fallback) {
+        try {
+            RenderScript rs = RenderScript.create(context.getApplicationContext());
+            return new IntrinsicBlur(rs, fallback);
+        } catch (RSRuntimeException e) {
+            Log.w(TAG, "RenderScript is not available.", e);
+            return null;
+        }
+    }
+
+    private IntrinsicBlur(RenderScript rs, BlurEngine fallback) {
+        mRenderScript = rs;
+        mScript = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
+        mFallback = fallback;
+    }
+
+    @Override
+    public String getName() {
+        return "IntrinsicBlur";
+    }
+
+    @Override
+    public synchronized void blur(int[] pixels, int width, int height, int radius) {
+        if (radius < 1 || width <= 0 || height <= 0) {
+            return;
+        }
+        if (radius > MAX_RADIUS) {
+            mFallback.blur(pixels, width, height, radius);
+            return;
+        }
+
+        ensureAllocations(width, height);
+
+        mInput.copyFromUnchecked(pixels);
+        mScript.setRadius(radius);
+        mScript.setInput(mInput);
+        mScript.forEach(mOutput);
+        mOutput.copyTo(mOutputBytes);
+
+        // Bytes of an ARGB int in native order are B, G, R, A.
+        byte[] out = mOutputBytes;
+        for (int i = 0, j = 0, size = width * height; i < size; i++, j += 4) {
+            // Preserve alpha channel.
+            pixels[i] = (pixels[i] & 0xff000000) | ((out[j + 2] & 0xff) << 16) |
+                    ((out[j + 1] & 0xff) << 8) | (out[j] & 0xff);
+        }
+    }
+
+    private void ensureAllocations(int width, int height) {
+        if (mInput != null) {
+            Type type = mInput.getType();
+            if (type.getX() == width && type.getY() == height) {
+                return;
+            }
+            mInput.destroy();
+            mOutput.destroy();
+        }
+
+        Type type = new Type.Builder(mRenderScript, Element.U8_4(mRenderScript))
+                .setX(width)
+                .setY(height)
+                .create();
+        mInput = Allocation.createTyped(mRenderScript, type);
+        mOutput = Allocation.createTyped(mRenderScript, type);
+        mOutputBytes = new byte[width * height * 4];
+    }
+}
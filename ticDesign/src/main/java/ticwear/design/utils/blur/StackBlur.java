@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable Stack Blur engine.
+ *
+ * Produces exactly the same output as the original {@link FastBlur#doBlur} implementation,
+ * but keeps its scratch buffers between calls (keyed by image size and radius), and splits
+ * the horizontal pass into row bands and the vertical pass into column bands which run on a
+ * small fixed thread pool.
+ *
+ * Stack Blur Algorithm by Mario Klingemann <mario@quasimondo.com>
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class StackBlur implements BlurEngine {
+
+    /**
+     * Images smaller than this (in pixels) are blurred on the calling thread only,
+     * the cost of hand over to workers is larger than the pass itself.
+     */
+    private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+
+    private static final int MAX_THREADS = 4;
+
+    private static StackBlur sInstance;
+
+    private final int mThreadCount;
+    private ExecutorService mExecutor;
+
+    // Scratch buffers, reused while the size and radius matches.
+    private final Object mBufferLock = new Object();
+    private Buffers mCachedBuffers;
+
+    public static synchronized StackBlur getInstance() {
+        if (sInstance == null) {
+            sInstance = new StackBlur(Math.min(MAX_THREADS,
+                    Runtime.getRuntime().availableProcessors()));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a blur engine.
+     *
+     * @param threadCount how many bands the passes will be split into.
+     *                    1 means blur on calling thread only.
+     */
+    public StackBlur(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+    @Override
+    public String getName() {
+        return "StackBlur";
+    }
+
+    /**
+     * Blur the bitmap in place.
+     *
+     * @return the blurred bitmap, or null if radius is less than 1.
+     */
+    public Bitmap blur(Bitmap bitmap, int radius) {
+        if (radius < 1) {
+            return null;
+        }
+
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+
+        Buffers buffers = acquireBuffers(w, h, radius);
+        try {
+            bitmap.getPixels(buffers.pix, 0, w, 0, 0, w, h);
+            blur(buffers, w, h, radius);
+            bitmap.setPixels(buffers.pix, 0, w, 0, 0, w, h);
+        } finally {
+            releaseBuffers(buffers);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Blur the ARGB pixels in place. The alpha channel is preserved.
+     *
+     * @param pix pixels, row by row, with stride equals to w.
+     */
+    @Override
+    public void blur(int[] pix, int w, int h, int radius) {
+        if (radius < 1 || w <= 0 || h <= 0) {
+            return;
+        }
+
+        Buffers buffers = acquireBuffers(w, h, radius);
+        try {
+            System.arraycopy(pix, 0, buffers.pix, 0, w * h);
+            blur(buffers, w, h, radius);
+            System.arraycopy(buffers.pix, 0, pix, 0, w * h);
+        } finally {
+            releaseBuffers(buffers);
+        }
+    }
+
+    private void blur(final Buffers buffers, final int w, final int h, final int radius) {
+        int bands = w * h < MIN_PARALLEL_PIXELS ? 1 : mThreadCount;
+
+        runBands(Math.min(bands, h), new BandPass() {
+            @Override
+            public void run(int band, int bandCount) {
+                int from = h * band / bandCount;
+                int to = h * (band + 1) / bandCount;
+                blurRows(buffers, buffers.stacks[band], w, h, radius, from, to);
+            }
+        });
+        runBands(Math.min(bands, w), new BandPass() {
+            @Override
+            public void run(int band, int bandCount) {
+                int from = w * band / bandCount;
+                int to = w * (band + 1) / bandCount;
+                blurColumns(buffers, buffers.stacks[band], w, h, radius, from, to);
+            }
+        });
+    }
+
+    private void runBands(int bandCount, final BandPass pass) {
+        if (bandCount <= 1) {
+            pass.run(0, 1);
+            return;
+        }
+
+        ExecutorService executor = getExecutor();
+        final CountDownLatch latch = new CountDownLatch(bandCount - 1);
+        final Throwable[] error = new Throwable[1];
+        for (int i = 1; i < bandCount; i++) {
+            final int band = i;
+            final int count = bandCount;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pass.run(band, count);
+                    } catch (Throwable e) {
+                        synchronized (error) {
+                            error[0] = e;
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        // The calling thread takes the first band itself.
+        pass.run(0, bandCount);
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (error) {
+            if (error[0] != null) {
+                throw new RuntimeException("blur band failed", error[0]);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(mThreadCount - 1, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "StackBlur #" + mCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    private Buffers acquireBuffers(int w, int h, int radius) {
+        Buffers buffers;
+        synchronized (mBufferLock) {
+            buffers = mCachedBuffers;
+            mCachedBuffers = null;
+        }
+        if (buffers == null) {
+            buffers = new Buffers();
+        }
+        buffers.ensure(w, h, radius, mThreadCount);
+        return buffers;
+    }
+
+    private void releaseBuffers(Buffers buffers) {
+        synchronized (mBufferLock) {
+            mCachedBuffers = buffers;
+        }
+    }
+
+    /**
+     * Release the cached scratch buffers, they will be re-created on next blur.
+     */
+    public void trimMemory() {
+        synchronized (mBufferLock) {
+            mCachedBuffers = null;
+        }
+    }
+
+    private static void blurRows(Buffers buffers, int[][] stack,
+                                 int w, int h, int radius, int fromY, int toY) {
+        final int[] pix = buffers.pix;
+        final int[] r = buffers.r;
+        final int[] g = buffers.g;
+        final int[] b = buffers.b;
+        final int[] dv = buffers.dv;
+
+        int wm = w - 1;
+        int div = radius + radius + 1;
+        int r1 = radius + 1;
+
+        int rsum, gsum, bsum, x, y, i, p, yi, yw;
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        yw = yi = fromY * w;
+
+        for (y = fromY; y < toY; y++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = pix[yi + Math.min(wm, Math.max(i, 0))];
+                sir = stack[i + radius];
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = (p & 0x0000ff);
+                rbs = r1 - Math.abs(i);
+                rsum += sir[0] * rbs;
+                gsum += sir[1] * rbs;
+                bsum += sir[2] * rbs;
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+            }
+            stackpointer = radius;
+
+            for (x = 0; x < w; x++) {
+
+                r[yi] = dv[rsum];
+                g[yi] = dv[gsum];
+                b[yi] = dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                p = pix[yw + Math.min(x + r1, wm)];
+
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = (p & 0x0000ff);
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[stackpointer];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi++;
+            }
+            yw += w;
+        }
+    }
+
+    private static void blurColumns(Buffers buffers, int[][] stack,
+                                    int w, int h, int radius, int fromX, int toX) {
+        final int[] pix = buffers.pix;
+        final int[] r = buffers.r;
+        final int[] g = buffers.g;
+        final int[] b = buffers.b;
+        final int[] dv = buffers.dv;
+
+        int hm = h - 1;
+        int div = radius + radius + 1;
+        int r1 = radius + 1;
+
+        int rsum, gsum, bsum, x, y, i, p, yp, yi;
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        for (x = fromX; x < toX; x++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            yp = -radius * w;
+            for (i = -radius; i <= radius; i++) {
+                yi = Math.max(0, yp) + x;
+
+                sir = stack[i + radius];
+
+                sir[0] = r[yi];
+                sir[1] = g[yi];
+                sir[2] = b[yi];
+
+                rbs = r1 - Math.abs(i);
+
+                rsum += r[yi] * rbs;
+                gsum += g[yi] * rbs;
+                bsum += b[yi] * rbs;
+
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = x;
+            stackpointer = radius;
+            for (y = 0; y < h; y++) {
+                // Preserve alpha channel: ( 0xff000000 & pix[yi] )
+                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                p = x + Math.min(y + r1, hm) * w;
+
+                sir[0] = r[p];
+                sir[1] = g[p];
+                sir[2] = b[p];
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[stackpointer];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi += w;
+            }
+        }
+    }
+
+    private interface BandPass {
+        void run(int band, int bandCount);
+    }
+
+    /**
+     * Scratch buffers for one blur call.
+     * Pixel buffers depends on image size, the division table and stacks depends on radius.
+     */
+    private static class Buffers {
+        int radius = -1;
+
+        int[] pix;
+        int[] r;
+        int[] g;
+        int[] b;
+        int[] dv;
+        int[][][] stacks;
+
+        void ensure(int w, int h, int radius, int threadCount) {
+            int wh = w * h;
+            if (pix == null || pix.length < wh) {
+                pix = new int[wh];
+                r = new int[wh];
+                g = new int[wh];
+                b = new int[wh];
+            }
+
+            if (this.radius != radius || stacks == null || stacks.length < threadCount) {
+                int div = radius + radius + 1;
+                int divsum = (div + 1) >> 1;
+                divsum *= divsum;
+                if (this.radius != radius) {
+                    dv = new int[256 * divsum];
+                    for (int i = 0; i < 256 * divsum; i++) {
+                        dv[i] = (i / divsum);
+                    }
+                }
+                stacks = new int[threadCount][div][3];
+                this.radius = radius;
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
@@ -129,26 +130,12 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
         // SCALE,
     }
 
-    final Comparator<View> mLayoutDependencyComparator = new Comparator<View>() {
-        @Override
-        public int compare(View lhs, View rhs) {
-            if (lhs == rhs) {
-                return 0;
-            } else if (((LayoutParams) lhs.getLayoutParams()).dependsOn(
-                    CoordinatorLayout.this, lhs, rhs)) {
-                return 1;
-            } else if (((LayoutParams) rhs.getLayoutParams()).dependsOn(
-                    CoordinatorLayout.this, rhs, lhs)) {
-                return -1;
-            } else {
-                return 0;
-            }
-        }
-    };
-
     static final Comparator<View> TOP_SORTED_CHILDREN_COMPARATOR;
 
     private final List<View> mDependencySortedChildren = new ArrayList<View>();
+    private final DirectedAcyclicGraph<View> mChildDag = new DirectedAcyclicGraph<>();
+    // Whether children are added or removed since the dependency graph is built.
+    private boolean mChildDagDirty = true;
     private final List<View> mTempList1 = new ArrayList<>();
     private final List<View> mTempDependenciesList = new ArrayList<>();
     private final Rect mTempRect1 = new Rect();
@@ -661,18 +648,43 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
     }
 
     private void prepareChildren() {
-        mDependencySortedChildren.clear();
-        for (int i = 0, count = getChildCount(); i < count; i++) {
+        final int count = getChildCount();
+        boolean changed = mChildDagDirty || mDependencySortedChildren.size() != count;
+        for (int i = 0; i < count; i++) {
             final View child = getChildAt(i);
 
             final LayoutParams lp = getResolvedLayoutParams(child);
             lp.findAnchorView(this, child);
 
-            mDependencySortedChildren.add(child);
+            changed |= lp.isDependencyChanged(this, child);
+        }
+        if (!changed) {
+            // The graph is still valid, no need to compare every child against each other.
+            return;
+        }
+
+        mChildDagDirty = false;
+        mChildDag.clear();
+        for (int i = 0; i < count; i++) {
+            mChildDag.addNode(getChildAt(i));
+        }
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            for (int j = 0; j < count; j++) {
+                final View other = getChildAt(j);
+                if (other != child && lp.dependsOn(this, child, other)) {
+                    mChildDag.addEdge(child, other);
+                }
+            }
+        }
+
+        mDependencySortedChildren.clear();
+        mDependencySortedChildren.addAll(mChildDag.getSortedList());
+        for (int i = 0; i < count; i++) {
+            final View child = mDependencySortedChildren.get(i);
+            ((LayoutParams) child.getLayoutParams()).onDependencySorted(i);
         }
-        // We need to use a selection sort here to make sure that every item is compared
-        // against each other
-        selectionSort(mDependencySortedChildren, mLayoutDependencyComparator);
     }
 
     /**
@@ -1395,13 +1407,29 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
             final View child = mDependencySortedChildren.get(i);
             final LayoutParams lp = (LayoutParams) child.getLayoutParams();
 
-            // Check child views before for anchor
-            for (int j = 0; j < i; j++) {
-                final View checkChild = mDependencySortedChildren.get(j);
+            final boolean anchored = lp.mAnchorDirectChild != null
+                    && getDependencySortedIndex(lp.mAnchorDirectChild) < i;
+            if (!anchored && mChildDag.getOutgoingEdges(child) == null) {
+                // Nothing to offset, nobody to notify
+                continue;
+            }
+
+            // Cheap check on the frame and transform first, most children do not move
+            boolean moved = lp.updateGeometry(child);
 
-                if (lp.mAnchorDirectChild == checkChild) {
-                    offsetChildToAnchor(child, layoutDirection);
-                }
+            // Offset to the anchor, if it's sorted before and either of them moved. An anchor
+            // nested in the direct child may move on its own, so it is always checked.
+            if (anchored && (moved || lp.mAnchorView != lp.mAnchorDirectChild
+                    || ((LayoutParams) lp.mAnchorDirectChild.getLayoutParams())
+                            .didGeometryChange())) {
+                offsetChildToAnchor(child, layoutDirection);
+                moved = lp.updateGeometry(child) || moved;
+            }
+            // Either change moves the views anchored to this child.
+            lp.setDidGeometryChange(moved);
+
+            if (!moved) {
+                continue;
             }
 
             // Did it change? if not continue
@@ -1415,9 +1443,15 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
             recordLastChildRect(child, newRect);
 
             // Update any behavior-dependent views for the change
-            for (int j = i + 1; j < childCount; j++) {
-                final View checkChild = mDependencySortedChildren.get(j);
+            final List<View> dependents = mChildDag.getOutgoingEdges(child);
+            final int dependentCount = dependents != null ? dependents.size() : 0;
+            for (int j = 0; j < dependentCount; j++) {
+                final View checkChild = dependents.get(j);
                 final LayoutParams checkLp = (LayoutParams) checkChild.getLayoutParams();
+                if (checkLp.mDependencySortedIndex <= i) {
+                    // Depends on a cycle, only dispatch to views sorted after.
+                    continue;
+                }
                 final Behavior b = checkLp.getBehavior();
 
                 if (b != null && b.layoutDependsOn(this, checkChild, child)) {
@@ -1441,22 +1475,23 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
     }
 
     void dispatchDependentViewRemoved(View view) {
-        final int childCount = mDependencySortedChildren.size();
-        boolean viewSeen = false;
-        for (int i = 0; i < childCount; i++) {
-            final View child = mDependencySortedChildren.get(i);
-            if (child == view) {
-                // We've seen our view, which means that any Views after this could be dependent
-                viewSeen = true;
+        // Views depending on this view, as of the last measure
+        final List<View> dependents = mChildDag.getOutgoingEdges(view);
+        if (dependents == null) {
+            return;
+        }
+        final int index = getDependencySortedIndex(view);
+        for (int i = 0, count = dependents.size(); i < count; i++) {
+            final View child = dependents.get(i);
+            if (getDependencySortedIndex(child) <= index) {
+                // Depends on a cycle, only dispatch to views sorted after.
                 continue;
             }
-            if (viewSeen) {
-                CoordinatorLayout.LayoutParams lp = (CoordinatorLayout.LayoutParams)
-                        child.getLayoutParams();
-                CoordinatorLayout.Behavior b = lp.getBehavior();
-                if (b != null && lp.dependsOn(this, child, view)) {
-                    b.onDependentViewRemoved(this, child, view);
-                }
+            CoordinatorLayout.LayoutParams lp = (CoordinatorLayout.LayoutParams)
+                    child.getLayoutParams();
+            CoordinatorLayout.Behavior b = lp.getBehavior();
+            if (b != null && lp.dependsOn(this, child, view)) {
+                b.onDependentViewRemoved(this, child, view);
             }
         }
     }
@@ -1472,26 +1507,34 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
      * @param view the View to find dependents of to dispatch the call.
      */
     public void dispatchDependentViewsChanged(View view) {
-        final int childCount = mDependencySortedChildren.size();
-        boolean viewSeen = false;
-        for (int i = 0; i < childCount; i++) {
-            final View child = mDependencySortedChildren.get(i);
-            if (child == view) {
-                // We've seen our view, which means that any Views after this could be dependent
-                viewSeen = true;
+        // Views depending on this view, as of the last measure
+        final List<View> dependents = mChildDag.getOutgoingEdges(view);
+        if (dependents == null) {
+            return;
+        }
+        final int index = getDependencySortedIndex(view);
+        for (int i = 0, count = dependents.size(); i < count; i++) {
+            final View child = dependents.get(i);
+            if (getDependencySortedIndex(child) <= index) {
+                // Depends on a cycle, only dispatch to views sorted after.
                 continue;
             }
-            if (viewSeen) {
-                CoordinatorLayout.LayoutParams lp = (CoordinatorLayout.LayoutParams)
-                        child.getLayoutParams();
-                CoordinatorLayout.Behavior b = lp.getBehavior();
-                if (b != null && lp.dependsOn(this, child, view)) {
-                    b.onDependentViewChanged(this, child, view);
-                }
+            CoordinatorLayout.LayoutParams lp = (CoordinatorLayout.LayoutParams)
+                    child.getLayoutParams();
+            CoordinatorLayout.Behavior b = lp.getBehavior();
+            if (b != null && lp.dependsOn(this, child, view)) {
+                b.onDependentViewChanged(this, child, view);
             }
         }
     }
 
+    /**
+     * @return The index of child in the dependency sorted children.
+     */
+    private int getDependencySortedIndex(View child) {
+        return ((LayoutParams) child.getLayoutParams()).mDependencySortedIndex;
+    }
+
     /**
      * Returns the list of views which the provided view depends on. Do not store this list as it's
      * contents may not be valid beyond the caller.
@@ -1529,7 +1572,8 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
         final int childCount = getChildCount();
         for (int i = 0; i < childCount; i++) {
             final View child = getChildAt(i);
-            if (hasDependencies(child)) {
+            // Anchors are edges of the graph too
+            if (mChildDag.getIncomingEdges(child) != null) {
                 hasDependencies = true;
                 break;
             }
@@ -1544,28 +1588,6 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
         }
     }
 
-    /**
-     * Check if the given child has any layout dependencies on other child views.
-     */
-    boolean hasDependencies(View child) {
-        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
-        if (lp.mAnchorView != null) {
-            return true;
-        }
-
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View other = getChildAt(i);
-            if (other == child) {
-                continue;
-            }
-            if (lp.dependsOn(this, child, other)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Add the pre-draw listener if we're attached to a window and mark that we currently
      * need it when attached.
@@ -2706,12 +2728,28 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
         View mAnchorView;
         View mAnchorDirectChild;
 
+        // Position in the dependency sorted children, or -1 if not sorted yet, and what
+        // the dependencies were computed from.
+        int mDependencySortedIndex = -1;
+        private View mSortedAnchorDirectChild;
+        private Behavior mSortedBehavior;
+
         private boolean mDidBlockInteraction;
         private boolean mDidAcceptNestedScroll;
         private boolean mDidChangeAfterNestedScroll;
 
         final Rect mLastChildRect = new Rect();
 
+        // Frame and transform of the child as of the last dependency dispatch, so children
+        // that did not move can skip the rect computation.
+        private int mLastLeft;
+        private int mLastTop;
+        private int mLastRight;
+        private int mLastBottom;
+        private final Matrix mLastMatrix = new Matrix();
+        private boolean mGeometryDirty = true;
+        private boolean mDidGeometryChange;
+
         Object mBehaviorTag;
 
         public LayoutParams(int width, int height) {
@@ -2825,6 +2863,57 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
             return mLastChildRect;
         }
 
+        /**
+         * Force the next dependency dispatch to recompute the rect of this child.
+         */
+        void invalidateGeometry() {
+            mGeometryDirty = true;
+        }
+
+        /**
+         * Record the frame and transform of the child, and check whether they changed
+         * since the last record. A child waiting for layout or gone stays dirty, as its
+         * frame is not final yet.
+         *
+         * @param child the child view of this LayoutParams
+         * @return true if the child may have moved since the last record
+         * @see #setDidGeometryChange(boolean)
+         */
+        boolean updateGeometry(View child) {
+            final int left = child.getLeft();
+            final int top = child.getTop();
+            final int right = child.getRight();
+            final int bottom = child.getBottom();
+            final Matrix matrix = child.getMatrix();
+            boolean changed = mGeometryDirty || left != mLastLeft || top != mLastTop
+                    || right != mLastRight || bottom != mLastBottom
+                    || !matrix.equals(mLastMatrix);
+            if (changed) {
+                mLastLeft = left;
+                mLastTop = top;
+                mLastRight = right;
+                mLastBottom = bottom;
+                mLastMatrix.set(matrix);
+                mGeometryDirty = child.isLayoutRequested() || child.getVisibility() == View.GONE;
+            }
+            return changed;
+        }
+
+        /**
+         * Record whether the child moved in this dependency dispatch, by any of the
+         * {@link #updateGeometry(View)} calls on it.
+         */
+        void setDidGeometryChange(boolean didGeometryChange) {
+            mDidGeometryChange = didGeometryChange;
+        }
+
+        /**
+         * Whether the child moved in the last dependency dispatch.
+         */
+        boolean didGeometryChange() {
+            return mDidGeometryChange;
+        }
+
         /**
          * Returns true if the anchor id changed to another valid view id since the anchor view
          * was resolved.
@@ -2916,6 +3005,31 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
                     || (mBehavior != null && mBehavior.layoutDependsOn(parent, child, dependency));
         }
 
+        /**
+         * Record the position of the child in the dependency sorted children, and what its
+         * dependencies were computed from.
+         */
+        void onDependencySorted(int index) {
+            mDependencySortedIndex = index;
+            mSortedAnchorDirectChild = mAnchorDirectChild;
+            mSortedBehavior = mBehavior;
+        }
+
+        /**
+         * Check if the dependencies of the child may have changed since they were sorted,
+         * because its anchor or behavior changed, or its behavior is dirty.
+         *
+         * @param parent the parent CoordinatorLayout
+         * @param child the child view associated with this LayoutParams
+         * @return true if the dependencies should be computed again
+         */
+        boolean isDependencyChanged(CoordinatorLayout parent, View child) {
+            return mDependencySortedIndex < 0
+                    || mSortedAnchorDirectChild != mAnchorDirectChild
+                    || mSortedBehavior != mBehavior
+                    || isDirty(parent, child);
+        }
+
         /**
          * Invalidate the cached anchor view and direct child ancestor of that anchor.
          * The anchor will need to be
@@ -3043,6 +3157,11 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
     final class HierarchyChangeListener implements OnHierarchyChangeListener {
         @Override
         public void onChildViewAdded(View parent, View child) {
+            mChildDagDirty = true;
+            final ViewGroup.LayoutParams lp = child.getLayoutParams();
+            if (lp instanceof LayoutParams) {
+                ((LayoutParams) lp).invalidateGeometry();
+            }
             if (mOnHierarchyChangeListener != null) {
                 mOnHierarchyChangeListener.onChildViewAdded(parent, child);
             }
@@ -3051,6 +3170,7 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
         @Override
         public void onChildViewRemoved(View parent, View child) {
             dispatchDependentViewRemoved(child);
+            mChildDagDirty = true;
 
             if (mOnHierarchyChangeListener != null) {
                 mOnHierarchyChangeListener.onChildViewRemoved(parent, child);
@@ -3158,37 +3278,4 @@ public class CoordinatorLayout extends ViewGroup implements NestedScrollingParen
             }
         });
     }
-
-    private static void selectionSort(final List<View> list, final Comparator<View> comparator) {
-        if (list == null || list.size() < 2) {
-            return;
-        }
-
-        final View[] array = new View[list.size()];
-        list.toArray(array);
-        final int count = array.length;
-
-        for (int i = 0; i < count; i++) {
-            int min = i;
-
-            for (int j = i + 1; j < count; j++) {
-                if (comparator.compare(array[j], array[min]) < 0) {
-                    min = j;
-                }
-            }
-
-            if (i != min) {
-                // We have a different min so swap the items
-                final View minItem = array[min];
-                array[min] = array[i];
-                array[i] = minItem;
-            }
-        }
-
-        // Finally add the array back into the collection
-        list.clear();
-        for (int i = 0; i < count; i++) {
-            list.add(array[i]);
-        }
-    }
 }
@@ -48,8 +48,6 @@ import android.widget.TextView;
 import com.mobvoi.ticwear.view.SidePanelEventDispatcher;
 
 import java.text.DateFormatSymbols;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Locale;
@@ -629,6 +627,10 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
 
         private static final String DATE_FORMAT = "MM/dd/yyyy";
 
+        private static final int NUMBER_OF_MONTHS = 12;
+
+        private static final int INVALID_DATE = Integer.MIN_VALUE;
+
         private static final int DEFAULT_START_YEAR = 1900;
 
         private static final int DEFAULT_END_YEAR = 2100;
@@ -657,17 +659,24 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
 
         private String[] mShortMonths;
 
-        private final java.text.DateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT);
+        // Month names of the month spinner, when its range is not the whole year.
+        private String[] mPartialMonths;
+
+        private TimeZone mTimeZone;
 
-        private int mNumberOfMonths;
+        // Dates in epoch days.
+        private int mMinDate;
 
-        private Calendar mTempDate;
+        private int mMaxDate;
 
-        private Calendar mMinDate;
+        private int mCurrentDate;
 
-        private Calendar mMaxDate;
+        // Fields of the current date.
+        private int mCurrentYear;
 
-        private Calendar mCurrentDate;
+        private int mCurrentMonth;
+
+        private int mCurrentDayOfMonth;
 
         private boolean mIsEnabled = DEFAULT_ENABLED_STATE;
 
@@ -706,33 +715,19 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
             OnValueChangeListener onChangeListener = new OnValueChangeListener() {
                 public void onValueChange(NumberPicker picker, int oldVal, int newVal) {
                     updateInputState();
-                    mTempDate.setTimeInMillis(mCurrentDate.getTimeInMillis());
                     // take care of wrapping of days and months to update greater fields
+                    final int date;
                     if (picker == mDaySpinner) {
-                        int maxDayOfMonth = mTempDate.getActualMaximum(Calendar.DAY_OF_MONTH);
-                        if (oldVal == maxDayOfMonth && newVal == 1) {
-                            mTempDate.add(Calendar.DAY_OF_MONTH, 1);
-                        } else if (oldVal == 1 && newVal == maxDayOfMonth) {
-                            mTempDate.add(Calendar.DAY_OF_MONTH, -1);
-                        } else {
-                            mTempDate.add(Calendar.DAY_OF_MONTH, newVal - oldVal);
-                        }
+                        date = mCurrentDate + getDelta(picker, oldVal, newVal);
                     } else if (picker == mMonthSpinner) {
-                        if (oldVal == 11 && newVal == 0) {
-                            mTempDate.add(Calendar.MONTH, 1);
-                        } else if (oldVal == 0 && newVal == 11) {
-                            mTempDate.add(Calendar.MONTH, -1);
-                        } else {
-                            mTempDate.add(Calendar.MONTH, newVal - oldVal);
-                        }
+                        date = EpochDays.addMonths(mCurrentDate, getDelta(picker, oldVal, newVal));
                     } else if (picker == mYearSpinner) {
-                        mTempDate.set(Calendar.YEAR, newVal);
+                        date = EpochDays.of(newVal, mCurrentMonth, mCurrentDayOfMonth);
                     } else {
                         throw new IllegalArgumentException();
                     }
                     // now set the date to the adjusted one
-                    setDate(mTempDate.get(Calendar.YEAR), mTempDate.get(Calendar.MONTH),
-                            mTempDate.get(Calendar.DAY_OF_MONTH));
+                    setDate(date);
                     updateSpinners();
                     updateCalendarView();
                     notifyDateChanged();
@@ -756,16 +751,18 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
             mDaySpinner.setFormatter(NumberPicker.getTwoDigitFormatter());
             mDaySpinner.setOnLongPressUpdateInterval(100);
             mDaySpinner.setOnValueChangedListener(onChangeListener);
+            mDaySpinner.setFlingNotifyMode(NumberPicker.FLING_NOTIFY_ONCE_PER_FRAME);
             mDaySpinner.setOnFocusChangeListener(delegator);
             mDaySpinnerInput = (EditText) mDaySpinner.findViewById(R.id.numberpicker_input);
 
             // month
             mMonthSpinner = (NumberPicker) mDelegator.findViewById(R.id.tic_month);
             mMonthSpinner.setMinValue(0);
-            mMonthSpinner.setMaxValue(mNumberOfMonths - 1);
+            mMonthSpinner.setMaxValue(NUMBER_OF_MONTHS - 1);
             mMonthSpinner.setDisplayedValues(mShortMonths);
             mMonthSpinner.setOnLongPressUpdateInterval(200);
             mMonthSpinner.setOnValueChangedListener(onChangeListener);
+            mMonthSpinner.setFlingNotifyMode(NumberPicker.FLING_NOTIFY_ONCE_PER_FRAME);
             mMonthSpinner.setOnFocusChangeListener(delegator);
             mMonthSpinnerInput = (EditText) mMonthSpinner.findViewById(R.id.numberpicker_input);
 
@@ -773,6 +770,7 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
             mYearSpinner = (NumberPicker) mDelegator.findViewById(R.id.tic_year);
             mYearSpinner.setOnLongPressUpdateInterval(100);
             mYearSpinner.setOnValueChangedListener(onChangeListener);
+            mYearSpinner.setFlingNotifyMode(NumberPicker.FLING_NOTIFY_FINAL_VALUE);
             mYearSpinner.setOnFocusChangeListener(delegator);
             mYearSpinnerInput = (EditText) mYearSpinner.findViewById(R.id.numberpicker_input);
 
@@ -785,32 +783,29 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
                 setCalendarViewShown(calendarViewShown);
             }
 
+            // the range starts from the current date, until it's set
+            final int today = EpochDays.fromMillis(System.currentTimeMillis(), mTimeZone);
+            mMinDate = today;
+            mMaxDate = today;
+            setDate(today);
+
             // set the min date giving priority of the minDate over startYear
-            mTempDate.clear();
-            if (!TextUtils.isEmpty(minDate)) {
-                if (!parseDate(minDate, mTempDate)) {
-                    mTempDate.set(startYear, 0, 1);
-                }
-            } else {
-                mTempDate.set(startYear, 0, 1);
+            int date = TextUtils.isEmpty(minDate) ? INVALID_DATE : parseDate(minDate);
+            if (date == INVALID_DATE) {
+                date = EpochDays.of(startYear, 0, 1);
             }
-            setMinDate(mTempDate.getTimeInMillis());
+            setMinDate(EpochDays.toMillis(date, mTimeZone));
 
             // set the max date giving priority of the maxDate over endYear
-            mTempDate.clear();
-            if (!TextUtils.isEmpty(maxDate)) {
-                if (!parseDate(maxDate, mTempDate)) {
-                    mTempDate.set(endYear, 11, 31);
-                }
-            } else {
-                mTempDate.set(endYear, 11, 31);
+            date = TextUtils.isEmpty(maxDate) ? INVALID_DATE : parseDate(maxDate);
+            if (date == INVALID_DATE) {
+                date = EpochDays.of(endYear, 11, 31);
             }
-            setMaxDate(mTempDate.getTimeInMillis());
+            setMaxDate(EpochDays.toMillis(date, mTimeZone));
 
             // initialize to current date
-            mCurrentDate.setTimeInMillis(System.currentTimeMillis());
-            init(mCurrentDate.get(Calendar.YEAR), mCurrentDate.get(Calendar.MONTH), mCurrentDate
-                    .get(Calendar.DAY_OF_MONTH), null);
+            init(EpochDays.getYear(today), EpochDays.getMonth(today),
+                    EpochDays.getDayOfMonth(today), null);
 
             // re-order the number spinners to match the current date format
             reorderSpinners();
@@ -846,17 +841,17 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
 
         @Override
         public int getYear() {
-            return mCurrentDate.get(Calendar.YEAR);
+            return mCurrentYear;
         }
 
         @Override
         public int getMonth() {
-            return mCurrentDate.get(Calendar.MONTH);
+            return mCurrentMonth;
         }
 
         @Override
         public int getDayOfMonth() {
-            return mCurrentDate.get(Calendar.DAY_OF_MONTH);
+            return mCurrentDayOfMonth;
         }
 
         @Override
@@ -871,15 +866,14 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
 
         @Override
         public void setMinDate(long minDate) {
-            mTempDate.setTimeInMillis(minDate);
-            if (mTempDate.get(Calendar.YEAR) == mMinDate.get(Calendar.YEAR)
-                    && mTempDate.get(Calendar.DAY_OF_YEAR) != mMinDate.get(Calendar.DAY_OF_YEAR)) {
+            final int date = EpochDays.fromMillis(minDate, mTimeZone);
+            if (date == mMinDate && minDate == mCalendarView.getMinDate()) {
                 return;
             }
-            mMinDate.setTimeInMillis(minDate);
+            mMinDate = date;
             mCalendarView.setMinDate(minDate);
-            if (mCurrentDate.before(mMinDate)) {
-                mCurrentDate.setTimeInMillis(mMinDate.getTimeInMillis());
+            if (mCurrentDate < mMinDate) {
+                setDate(mMinDate);
                 updateCalendarView();
             }
             updateSpinners();
@@ -894,15 +888,14 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
 
         @Override
         public void setMaxDate(long maxDate) {
-            mTempDate.setTimeInMillis(maxDate);
-            if (mTempDate.get(Calendar.YEAR) == mMaxDate.get(Calendar.YEAR)
-                    && mTempDate.get(Calendar.DAY_OF_YEAR) != mMaxDate.get(Calendar.DAY_OF_YEAR)) {
+            final int date = EpochDays.fromMillis(maxDate, mTimeZone);
+            if (date == mMaxDate && maxDate == mCalendarView.getMaxDate()) {
                 return;
             }
-            mMaxDate.setTimeInMillis(maxDate);
+            mMaxDate = date;
             mCalendarView.setMaxDate(maxDate);
-            if (mCurrentDate.after(mMaxDate)) {
-                mCurrentDate.setTimeInMillis(mMaxDate.getTimeInMillis());
+            if (mCurrentDate > mMaxDate) {
+                setDate(mMaxDate);
                 updateCalendarView();
             }
             updateSpinners();
@@ -982,7 +975,7 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
         public void onPopulateAccessibilityEvent(AccessibilityEvent event) {
             final int flags = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR;
             String selectedDateUtterance = DateUtils.formatDateTime(mContext,
-                    mCurrentDate.getTimeInMillis(), flags);
+                    EpochDays.toMillis(mCurrentDate, mTimeZone), flags);
             event.getText().add(selectedDateUtterance);
         }
 
@@ -1005,19 +998,16 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
         protected void setCurrentLocale(Locale locale) {
             super.setCurrentLocale(locale);
 
-            mTempDate = getCalendarForLocale(mTempDate, locale);
-            mMinDate = getCalendarForLocale(mMinDate, locale);
-            mMaxDate = getCalendarForLocale(mMaxDate, locale);
-            mCurrentDate = getCalendarForLocale(mCurrentDate, locale);
-
-            mNumberOfMonths = mTempDate.getActualMaximum(Calendar.MONTH) + 1;
-            mShortMonths = new DateFormatSymbols().getShortMonths();
+            mTimeZone = TimeZone.getDefault();
+            mShortMonths = Arrays.copyOf(new DateFormatSymbols().getShortMonths(),
+                    NUMBER_OF_MONTHS);
+            mPartialMonths = null;
 
             if (usingNumericMonths()) {
                 // We're in a locale where a date should either be all-numeric, or all-text.
                 // All-text would require custom NumberPicker formatters for day and year.
-                mShortMonths = new String[mNumberOfMonths];
-                for (int i = 0; i < mNumberOfMonths; ++i) {
+                mShortMonths = new String[NUMBER_OF_MONTHS];
+                for (int i = 0; i < NUMBER_OF_MONTHS; ++i) {
                     mShortMonths[i] = String.format("%d", i + 1);
                 }
             }
@@ -1051,23 +1041,6 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
             return mAllowNumericMonths && Character.isDigit(mShortMonths[Calendar.JANUARY].charAt(0));
         }
 
-        /**
-         * Gets a calendar for locale bootstrapped with the value of a given calendar.
-         *
-         * @param oldCalendar The old calendar.
-         * @param locale The locale.
-         */
-        private Calendar getCalendarForLocale(Calendar oldCalendar, Locale locale) {
-            if (oldCalendar == null) {
-                return Calendar.getInstance(locale);
-            } else {
-                final long currentTimeMillis = oldCalendar.getTimeInMillis();
-                Calendar newCalendar = Calendar.getInstance(locale);
-                newCalendar.setTimeInMillis(currentTimeMillis);
-                return newCalendar;
-            }
-        }
-
         /**
          * Reorders the spinners according to the date format that is
          * explicitly set by the user and if no such is set fall back
@@ -1100,90 +1073,153 @@ public class DatePicker extends FrameLayout implements MultiPickerContainer,
         }
 
         /**
-         * Parses the given <code>date</code> and in case of success sets the result
-         * to the <code>outDate</code>.
+         * Parses the given <code>date</code> in the {@link #DATE_FORMAT}. Like a lenient
+         * date format, a month or a day out of range rolls over to the next ones.
          *
-         * @return True if the date was parsed.
+         * @return The epoch day of the date, or {@link #INVALID_DATE} if the date can't
+         *         be parsed.
          */
-        private boolean parseDate(String date, Calendar outDate) {
-            try {
-                outDate.setTime(mDateFormat.parse(date));
-                return true;
-            } catch (ParseException e) {
-                Log.w(LOG_TAG, "Date: " + date + " not in format: " + DATE_FORMAT);
-                return false;
+        private int parseDate(String date) {
+            final String[] fields = date.trim().split("/");
+            if (fields.length == 3) {
+                try {
+                    return EpochDays.of(Integer.parseInt(fields[2].trim()),
+                            Integer.parseInt(fields[0].trim()) - 1,
+                            Integer.parseInt(fields[1].trim()));
+                } catch (NumberFormatException e) {
+                    // Fall through to report the format.
+                }
             }
+            Log.w(LOG_TAG, "Date: " + date + " not in format: " + DATE_FORMAT);
+            return INVALID_DATE;
         }
 
         private boolean isNewDate(int year, int month, int dayOfMonth) {
-            return (mCurrentDate.get(Calendar.YEAR) != year
-                    || mCurrentDate.get(Calendar.MONTH) != dayOfMonth
-                    || mCurrentDate.get(Calendar.DAY_OF_MONTH) != month);
+            return (mCurrentYear != year
+                    || mCurrentMonth != month
+                    || mCurrentDayOfMonth != dayOfMonth);
         }
 
         private void setDate(int year, int month, int dayOfMonth) {
-            mCurrentDate.set(year, month, dayOfMonth);
-            if (mCurrentDate.before(mMinDate)) {
-                mCurrentDate.setTimeInMillis(mMinDate.getTimeInMillis());
-            } else if (mCurrentDate.after(mMaxDate)) {
-                mCurrentDate.setTimeInMillis(mMaxDate.getTimeInMillis());
+            setDate(EpochDays.of(year, month, dayOfMonth));
+        }
+
+        private void setDate(int date) {
+            if (date < mMinDate) {
+                date = mMinDate;
+            } else if (date > mMaxDate) {
+                date = mMaxDate;
             }
+            mCurrentDate = date;
+            mCurrentYear = EpochDays.getYear(date);
+            mCurrentMonth = EpochDays.getMonth(date);
+            mCurrentDayOfMonth = EpochDays.getDayOfMonth(date);
+        }
+
+        /**
+         * @return The number of steps from oldVal to newVal. The changes grouped during
+         *         a fling are counted by the picker, as they may skip several values, or
+         *         wrap around. Otherwise, wrapping from one end to the other is one step.
+         */
+        private static int getDelta(NumberPicker picker, int oldVal, int newVal) {
+            final int groupedSteps = picker.getGroupedChangeSteps();
+            if (groupedSteps != 0) {
+                return groupedSteps;
+            }
+            if (picker.getWrapSelectorWheel()) {
+                if (oldVal == picker.getMaxValue() && newVal == picker.getMinValue()) {
+                    return 1;
+                } else if (oldVal == picker.getMinValue() && newVal == picker.getMaxValue()) {
+                    return -1;
+                }
+            }
+            return newVal - oldVal;
         }
 
         private void updateSpinners() {
+            // Update each spinner once, after all of its changes.
+            mDaySpinner.beginBatchUpdate();
+            mMonthSpinner.beginBatchUpdate();
+            mYearSpinner.beginBatchUpdate();
+
             // set the spinner ranges respecting the min and max dates
-            if (mCurrentDate.equals(mMinDate)) {
-                mDaySpinner.setMinValue(mCurrentDate.get(Calendar.DAY_OF_MONTH));
-                mDaySpinner.setMaxValue(mCurrentDate.getActualMaximum(Calendar.DAY_OF_MONTH));
+            final int daysInMonth = EpochDays.getDaysInMonth(mCurrentYear, mCurrentMonth);
+            final int minMonth;
+            final int maxMonth;
+            final boolean wrapMonth;
+            if (mCurrentDate == mMinDate) {
+                mDaySpinner.setMinValue(mCurrentDayOfMonth);
+                mDaySpinner.setMaxValue(daysInMonth);
                 mDaySpinner.setWrapSelectorWheel(false);
-                mMonthSpinner.setDisplayedValues(null);
-                mMonthSpinner.setMinValue(mCurrentDate.get(Calendar.MONTH));
-                mMonthSpinner.setMaxValue(mCurrentDate.getActualMaximum(Calendar.MONTH));
-                mMonthSpinner.setWrapSelectorWheel(false);
-            } else if (mCurrentDate.equals(mMaxDate)) {
-                mDaySpinner.setMinValue(mCurrentDate.getActualMinimum(Calendar.DAY_OF_MONTH));
-                mDaySpinner.setMaxValue(mCurrentDate.get(Calendar.DAY_OF_MONTH));
+                minMonth = mCurrentMonth;
+                maxMonth = NUMBER_OF_MONTHS - 1;
+                wrapMonth = false;
+            } else if (mCurrentDate == mMaxDate) {
+                mDaySpinner.setMinValue(1);
+                mDaySpinner.setMaxValue(mCurrentDayOfMonth);
                 mDaySpinner.setWrapSelectorWheel(false);
-                mMonthSpinner.setDisplayedValues(null);
-                mMonthSpinner.setMinValue(mCurrentDate.getActualMinimum(Calendar.MONTH));
-                mMonthSpinner.setMaxValue(mCurrentDate.get(Calendar.MONTH));
-                mMonthSpinner.setWrapSelectorWheel(false);
+                minMonth = 0;
+                maxMonth = mCurrentMonth;
+                wrapMonth = false;
             } else {
                 mDaySpinner.setMinValue(1);
-                mDaySpinner.setMaxValue(mCurrentDate.getActualMaximum(Calendar.DAY_OF_MONTH));
+                mDaySpinner.setMaxValue(daysInMonth);
                 mDaySpinner.setWrapSelectorWheel(true);
-                mMonthSpinner.setDisplayedValues(null);
-                mMonthSpinner.setMinValue(0);
-                mMonthSpinner.setMaxValue(11);
-                mMonthSpinner.setWrapSelectorWheel(true);
+                minMonth = 0;
+                maxMonth = NUMBER_OF_MONTHS - 1;
+                wrapMonth = true;
             }
-
-            // make sure the month names are a zero based array
-            // with the months in the month spinner
-            String[] displayedValues = Arrays.copyOfRange(mShortMonths,
-                    mMonthSpinner.getMinValue(), mMonthSpinner.getMaxValue() + 1);
-            mMonthSpinner.setDisplayedValues(displayedValues);
+            updateMonthRange(minMonth, maxMonth, wrapMonth);
 
             // year spinner range does not change based on the current date
-            mYearSpinner.setMinValue(mMinDate.get(Calendar.YEAR));
-            mYearSpinner.setMaxValue(mMaxDate.get(Calendar.YEAR));
+            mYearSpinner.setMinValue(EpochDays.getYear(mMinDate));
+            mYearSpinner.setMaxValue(EpochDays.getYear(mMaxDate));
             mYearSpinner.setWrapSelectorWheel(false);
 
             // set the spinner values
-            mYearSpinner.setValue(mCurrentDate.get(Calendar.YEAR));
-            mMonthSpinner.setValue(mCurrentDate.get(Calendar.MONTH));
-            mDaySpinner.setValue(mCurrentDate.get(Calendar.DAY_OF_MONTH));
+            mYearSpinner.setValue(mCurrentYear);
+            mMonthSpinner.setValue(mCurrentMonth);
+            mDaySpinner.setValue(mCurrentDayOfMonth);
+
+            mYearSpinner.endBatchUpdate();
+            mMonthSpinner.endBatchUpdate();
+            mDaySpinner.endBatchUpdate();
 
             if (usingNumericMonths()) {
                 mMonthSpinnerInput.setRawInputType(InputType.TYPE_CLASS_NUMBER);
             }
         }
 
+        /**
+         * Sets the range of the month spinner, and its month names. Does nothing if the
+         * range is not changed, so the month names are not measured again.
+         *
+         * @param wrap Whether the month spinner wraps. It never wraps on the min or max
+         *             date, even when the range is the whole year.
+         */
+        private void updateMonthRange(int minMonth, int maxMonth, boolean wrap) {
+            final boolean wholeYear = minMonth == 0 && maxMonth == NUMBER_OF_MONTHS - 1;
+            final String[] displayedValues = mMonthSpinner.getDisplayedValues();
+            if (displayedValues == null || mMonthSpinner.getMinValue() != minMonth
+                    || mMonthSpinner.getMaxValue() != maxMonth
+                    || displayedValues != (wholeYear ? mShortMonths : mPartialMonths)) {
+                // make sure the month names are a zero based array
+                // with the months in the month spinner
+                mPartialMonths = wholeYear ? null
+                        : Arrays.copyOfRange(mShortMonths, minMonth, maxMonth + 1);
+                mMonthSpinner.setDisplayedValues(null);
+                mMonthSpinner.setMinValue(minMonth);
+                mMonthSpinner.setMaxValue(maxMonth);
+                mMonthSpinner.setDisplayedValues(wholeYear ? mShortMonths : mPartialMonths);
+            }
+            mMonthSpinner.setWrapSelectorWheel(wrap);
+        }
+
         /**
          * Updates the calendar view with the current date.
          */
         private void updateCalendarView() {
-            mCalendarView.setDate(mCurrentDate.getTimeInMillis(), false, false);
+            mCalendarView.setDate(EpochDays.toMillis(mCurrentDate, mTimeZone), false, false);
         }
 
 
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.widget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A graph of nodes with edges from each node to the nodes depending on it, that sorts the
+ * nodes so every node comes after the nodes it depends on.
+ *
+ * The graph is meant to be cleared and built again when edges change. Lists of edges are
+ * reused between builds.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class DirectedAcyclicGraph<T> {
+
+    // Dependencies of each node, in the order added.
+    private final HashMap<T, ArrayList<T>> mIncomingEdges = new HashMap<>();
+    // Dependents of each node, in the sorted order.
+    private final HashMap<T, ArrayList<T>> mOutgoingEdges = new HashMap<>();
+    private final ArrayList<T> mNodes = new ArrayList<>();
+
+    private final ArrayList<T> mSortResult = new ArrayList<>();
+    private final HashSet<T> mSortVisited = new HashSet<>();
+    private final HashSet<T> mSortVisiting = new HashSet<>();
+
+    private final ArrayList<ArrayList<T>> mListPool = new ArrayList<>();
+
+    /**
+     * Adds a node to the graph. Does nothing if the node is already in the graph.
+     */
+    void addNode(T node) {
+        if (!mIncomingEdges.containsKey(node)) {
+            mIncomingEdges.put(node, null);
+            mNodes.add(node);
+        }
+    }
+
+    boolean contains(T node) {
+        return mIncomingEdges.containsKey(node);
+    }
+
+    /**
+     * Adds an edge meaning node depends on dependency. Both must be already in the graph.
+     */
+    void addEdge(T node, T dependency) {
+        if (!contains(node) || !contains(dependency)) {
+            throw new IllegalArgumentException("All nodes must be present in the graph before"
+                    + " being added as an edge");
+        }
+        ArrayList<T> edges = mIncomingEdges.get(node);
+        if (edges == null) {
+            edges = obtainList();
+            mIncomingEdges.put(node, edges);
+        }
+        edges.add(dependency);
+    }
+
+    /**
+     * @return The nodes that node depends on, or null if none.
+     */
+    List<T> getIncomingEdges(T node) {
+        return mIncomingEdges.get(node);
+    }
+
+    /**
+     * @return The nodes depending on node, in the sorted order, or null if none. Only valid
+     *         after {@link #getSortedList()}.
+     */
+    List<T> getOutgoingEdges(T node) {
+        return mOutgoingEdges.get(node);
+    }
+
+    void clear() {
+        for (ArrayList<T> edges : mIncomingEdges.values()) {
+            recycleList(edges);
+        }
+        for (ArrayList<T> edges : mOutgoingEdges.values()) {
+            recycleList(edges);
+        }
+        mIncomingEdges.clear();
+        mOutgoingEdges.clear();
+        mNodes.clear();
+        mSortResult.clear();
+    }
+
+    /**
+     * Sorts the nodes topologically, so that each node comes after its dependencies. Nodes
+     * not depending on each other keep the order they were added in. An edge closing a
+     * cycle is ignored for the sort.
+     *
+     * @return The sorted nodes. Do not modify it, it's owned by the graph.
+     */
+    ArrayList<T> getSortedList() {
+        mSortResult.clear();
+        mSortVisited.clear();
+        mSortVisiting.clear();
+        for (int i = 0, size = mNodes.size(); i < size; i++) {
+            visit(mNodes.get(i));
+        }
+
+        for (ArrayList<T> edges : mOutgoingEdges.values()) {
+            recycleList(edges);
+        }
+        mOutgoingEdges.clear();
+        for (int i = 0, size = mSortResult.size(); i < size; i++) {
+            final T node = mSortResult.get(i);
+            final ArrayList<T> dependencies = mIncomingEdges.get(node);
+            if (dependencies == null) {
+                continue;
+            }
+            for (int j = 0, count = dependencies.size(); j < count; j++) {
+                final T dependency = dependencies.get(j);
+                ArrayList<T> dependents = mOutgoingEdges.get(dependency);
+                if (dependents == null) {
+                    dependents = obtainList();
+                    mOutgoingEdges.put(dependency, dependents);
+                }
+                dependents.add(node);
+            }
+        }
+        return mSortResult;
+    }
+
+    private void visit(T node) {
+        if (mSortVisited.contains(node) || !mSortVisiting.add(node)) {
+            // Sorted already, or an edge back to a node being sorted.
+            return;
+        }
+        final ArrayList<T> dependencies = mIncomingEdges.get(node);
+        if (dependencies != null) {
+            for (int i = 0, size = dependencies.size(); i < size; i++) {
+                visit(dependencies.get(i));
+            }
+        }
+        mSortVisiting.remove(node);
+        mSortVisited.add(node);
+        mSortResult.add(node);
+    }
+
+    private ArrayList<T> obtainList() {
+        final int size = mListPool.size();
+        return size > 0 ? mListPool.remove(size - 1) : new ArrayList<T>();
+    }
+
+    private void recycleList(ArrayList<T> list) {
+        if (list != null) {
+            list.clear();
+            mListPool.add(list);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.widget;
+
+import java.util.TimeZone;
+
+/**
+ * Date arithmetic on epoch days, the number of days since 1970-01-01, in the proleptic
+ * Gregorian calendar. Months are zero based, like {@link java.util.Calendar}.
+ *
+ * Unlike a {@link java.util.Calendar}, nothing is allocated nor looked up by locale, so
+ * the date can be computed on every tick of a picker.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class EpochDays {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    // Days from 0000-03-01 to 1970-01-01.
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    private static final int DAYS_PER_400_YEARS = 146097;
+
+    private static final int[][] DAYS_IN_MONTH = {
+            { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 },
+            { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 },
+    };
+
+    private EpochDays() {
+    }
+
+    static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    static int getDaysInMonth(int year, int month) {
+        return DAYS_IN_MONTH[isLeapYear(year) ? 1 : 0][month];
+    }
+
+    /**
+     * Returns the epoch day of a date. Like a lenient calendar, a month or a day out of
+     * range rolls over to the next ones.
+     */
+    static int of(int year, int month, int dayOfMonth) {
+        year += floorDiv(month, 12);
+        month = floorMod(month, 12);
+        // Count years from March, so the leap day is the last day of a year.
+        if (month < 2) {
+            year--;
+            month += 12;
+        }
+        final int era = floorDiv(year, 400);
+        final int yearOfEra = year - era * 400;
+        final int dayOfYear = (153 * (month - 2) + 2) / 5;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_TO_1970 + dayOfMonth - 1;
+    }
+
+    static int getYear(int epochDay) {
+        final int day = epochDay + DAYS_0000_TO_1970;
+        final int era = floorDiv(day, DAYS_PER_400_YEARS);
+        final int dayOfEra = day - era * DAYS_PER_400_YEARS;
+        final int yearOfEra = getYearOfEra(dayOfEra);
+        final int marchMonth = getMarchMonth(dayOfEra, yearOfEra);
+        return era * 400 + yearOfEra + (marchMonth >= 10 ? 1 : 0);
+    }
+
+    static int getMonth(int epochDay) {
+        final int dayOfEra = floorMod(epochDay + DAYS_0000_TO_1970, DAYS_PER_400_YEARS);
+        final int marchMonth = getMarchMonth(dayOfEra, getYearOfEra(dayOfEra));
+        return marchMonth < 10 ? marchMonth + 2 : marchMonth - 10;
+    }
+
+    static int getDayOfMonth(int epochDay) {
+        final int dayOfEra = floorMod(epochDay + DAYS_0000_TO_1970, DAYS_PER_400_YEARS);
+        final int dayOfYear = getDayOfMarchYear(dayOfEra, getYearOfEra(dayOfEra));
+        final int marchMonth = (5 * dayOfYear + 2) / 153;
+        return dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+    }
+
+    /**
+     * Adds months to a date. The day of month is pinned to the last day of the new month,
+     * like {@link java.util.Calendar#add(int, int)}.
+     */
+    static int addMonths(int epochDay, int months) {
+        final int month = getMonth(epochDay) + months;
+        final int year = getYear(epochDay) + floorDiv(month, 12);
+        final int monthOfYear = floorMod(month, 12);
+        final int dayOfMonth = Math.min(getDayOfMonth(epochDay),
+                getDaysInMonth(year, monthOfYear));
+        return of(year, monthOfYear, dayOfMonth);
+    }
+
+    /**
+     * @return The epoch day of the local date at the time in millis.
+     */
+    static int fromMillis(long millis, TimeZone timeZone) {
+        final long localMillis = millis + timeZone.getOffset(millis);
+        return (int) floorDiv(localMillis, MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return The time in millis of the local midnight starting the epoch day. A midnight
+     *         repeated by a transition is the earlier one, and a skipped one is moved
+     *         forward by the length of the gap.
+     */
+    static long toMillis(int epochDay, TimeZone timeZone) {
+        final long localMillis = epochDay * MILLIS_PER_DAY;
+        // The offsets before and after a transition around the midnight, if any.
+        final int offsetBefore = timeZone.getOffset(localMillis - MILLIS_PER_DAY);
+        final int offsetAfter = timeZone.getOffset(localMillis + MILLIS_PER_DAY);
+        final long millisBefore = localMillis - offsetBefore;
+        if (timeZone.getOffset(millisBefore) == offsetBefore) {
+            return millisBefore;
+        }
+        final long millisAfter = localMillis - offsetAfter;
+        if (timeZone.getOffset(millisAfter) == offsetAfter) {
+            return millisAfter;
+        }
+        // Skipped, the wall clock jumps from before the midnight to after it.
+        return millisBefore;
+    }
+
+    private static int getYearOfEra(int dayOfEra) {
+        return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    }
+
+    private static int getDayOfMarchYear(int dayOfEra, int yearOfEra) {
+        return dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    }
+
+    // Month counted from March, 0 to 11.
+    private static int getMarchMonth(int dayOfEra, int yearOfEra) {
+        return (5 * getDayOfMarchYear(dayOfEra, yearOfEra) + 2) / 153;
+    }
+
+    private static int floorDiv(int x, int y) {
+        final int q = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static int floorMod(int x, int y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
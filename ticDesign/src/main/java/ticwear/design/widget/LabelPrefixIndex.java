@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.widget;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Index of labels sorted in lower case, to find the first label starting with a
+ * prefix in logarithmic time.
+ *
+ * Labels starting with a prefix are a range of the sorted labels, found by two
+ * binary searches. The lowest original index in the range is then read from a
+ * sparse table of range minimums, built in O(n log n).
+ *
+ * Created by tankery on 10/18/16.
+ */
+class LabelPrefixIndex {
+
+    // Labels in lower case, sorted.
+    private final String[] mSortedLabels;
+    // mMinIndices[k][i] is the lowest original index of sorted labels [i, i + 2^k).
+    // Level 0 is the original index of each sorted label.
+    private final int[][] mMinIndices;
+
+    LabelPrefixIndex(String[] labels) {
+        final int count = labels.length;
+        final String[] lowerLabels = new String[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            lowerLabels[i] = labels[i].toLowerCase();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return lowerLabels[lhs].compareTo(lowerLabels[rhs]);
+            }
+        });
+
+        mSortedLabels = new String[count];
+        final int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            mSortedLabels[i] = lowerLabels[order[i]];
+            indices[i] = order[i];
+        }
+
+        final int levels = count == 0 ? 1 : log2(count) + 1;
+        mMinIndices = new int[levels][];
+        mMinIndices[0] = indices;
+        for (int k = 1; k < levels; k++) {
+            final int[] lower = mMinIndices[k - 1];
+            final int half = 1 << (k - 1);
+            final int[] level = new int[count - (1 << k) + 1];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = Math.min(lower[i], lower[i + half]);
+            }
+            mMinIndices[k] = level;
+        }
+    }
+
+    /**
+     * Finds the first label that starts with prefix, ignoring case.
+     *
+     * @return Index of the label in the original labels, or -1 if not found.
+     */
+    int find(String prefix) {
+        prefix = prefix.toLowerCase();
+
+        // Lower bound of the prefix, labels starting with it are sorted from there.
+        int low = 0;
+        int high = mSortedLabels.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mSortedLabels[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final int start = low;
+
+        // End of the labels starting with the prefix.
+        high = mSortedLabels.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mSortedLabels[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final int end = low;
+
+        if (start == end) {
+            return -1;
+        }
+        final int k = log2(end - start);
+        return Math.min(mMinIndices[k][start], mMinIndices[k][end - (1 << k)]);
+    }
+
+    private static int log2(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+}
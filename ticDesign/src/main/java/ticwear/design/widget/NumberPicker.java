@@ -38,8 +38,8 @@ import android.text.TextUtils;
 import android.text.method.NumberKeyListener;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.util.SparseArray;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.LayoutInflater.Filter;
@@ -106,6 +106,27 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
 
     static final String LOG_TAG = "NumPicker";
 
+    /** @hide */
+    @IntDef({FLING_NOTIFY_EVERY_VALUE, FLING_NOTIFY_ONCE_PER_FRAME, FLING_NOTIFY_FINAL_VALUE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface FlingNotifyMode {}
+
+    /**
+     * Notify the value change listener of every value crossed by a fling.
+     */
+    public static final int FLING_NOTIFY_EVERY_VALUE = 0;
+
+    /**
+     * Notify the value change listener at most once per frame during a fling, with the
+     * last value of the frame.
+     */
+    public static final int FLING_NOTIFY_ONCE_PER_FRAME = 1;
+
+    /**
+     * Notify the value change listener only once a fling settles, with the final value.
+     */
+    public static final int FLING_NOTIFY_FINAL_VALUE = 2;
+
     /**
      * The number of items show in the selector wheel.
      */
@@ -279,6 +300,16 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
      */
     private String[] mDisplayedValues;
 
+    /**
+     * Index of the displayed values, for type-to-select. Built on first use.
+     */
+    private LabelPrefixIndex mDisplayedValuesIndex;
+
+    /**
+     * The provider of labels to be displayed instead the indices.
+     */
+    private ValueProvider mValueProvider;
+
     /**
      * Lower value of the range of numbers allowed for the NumberPicker
      */
@@ -299,6 +330,29 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
      */
     private OnValueChangeListener mOnValueChangeListener;
 
+    /**
+     * How the value change listener is notified during a fling.
+     */
+    private int mFlingNotifyMode = FLING_NOTIFY_EVERY_VALUE;
+
+    /**
+     * Whether value changes are held back, until the fling settles or the frame ends.
+     */
+    private boolean mDeferringNotify;
+
+    /**
+     * Whether a value change is held back, the value before it, and the signed number of
+     * steps the value moved since then.
+     */
+    private boolean mHasDeferredNotify;
+    private int mDeferredPreviousValue;
+    private int mDeferredSteps;
+
+    /**
+     * Signed number of steps of the grouped value change being notified, or 0.
+     */
+    private int mNotifyingSteps;
+
     /**
      * Listener to be notified upon scroll state change.
      */
@@ -315,9 +369,10 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
     private long mLongPressUpdateInterval = DEFAULT_LONG_PRESS_UPDATE_INTERVAL;
 
     /**
-     * Cache for the string representation of selector indices.
+     * Cache for the labels of recently shown selector indices.
      */
-    private final SparseArray<String> mSelectorIndexToStringCache = new SparseArray<String>();
+    private final SelectorLabelCache mSelectorLabelCache =
+            new SelectorLabelCache(SelectorLabelCache.DEFAULT_MAX_SIZE);
 
     /**
      * The selector indices whose value are show by the selector.
@@ -501,6 +556,33 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
      */
     private boolean mHideWheelUntilFocused;
 
+    /**
+     * Depth of nested batch updates.
+     *
+     * @see #beginBatchUpdate()
+     */
+    private int mBatchUpdateDepth;
+
+    /**
+     * Whether the selector wheel needs update at the end of the batch update.
+     */
+    private boolean mBatchWheelChanged;
+
+    /**
+     * Whether the max width needs computing at the end of the batch update.
+     */
+    private boolean mBatchWidthChanged;
+
+    /**
+     * Frame statistics of the current scroll, if the scroll listener wants them.
+     */
+    private FrameStats mFrameStats;
+
+    /**
+     * Time of the last frame drawn while scrolling, in nanoseconds.
+     */
+    private long mLastFrameTimeNanos;
+
     /**
      * Interface to listen for changes of the current value.
      */
@@ -552,6 +634,80 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         public void onScrollStateChange(NumberPicker view, @ScrollState int scrollState);
     }
 
+    /**
+     * An {@link OnScrollListener} that also gets the frame statistics of each scroll.
+     */
+    public interface OnScrollFrameStatsListener extends OnScrollListener {
+
+        /**
+         * Callback invoked when a scroll ends, before the scroll state changes to
+         * {@link OnScrollListener#SCROLL_STATE_IDLE}.
+         *
+         * @param view The view whose scroll is being reported.
+         * @param stats Frame statistics of the scroll. Only valid during the call.
+         */
+        void onScrollFrameStats(NumberPicker view, FrameStats stats);
+    }
+
+    /**
+     * Frame statistics of a scroll of the selector wheel.
+     */
+    public static class FrameStats {
+        /**
+         * Count of frames drawn.
+         */
+        public int frameCount;
+
+        /**
+         * Count of frames that came later than one and a half of the display's frame interval.
+         */
+        public int slowFrameCount;
+
+        /**
+         * The longest interval between two frames, in nanoseconds.
+         */
+        public long maxFrameIntervalNanos;
+
+        /**
+         * Total time spent in drawing the selector wheel, in nanoseconds.
+         */
+        public long totalDrawNanos;
+
+        /**
+         * The longest time spent in drawing the selector wheel in a frame, in nanoseconds.
+         */
+        public long maxDrawNanos;
+
+        long expectedFrameIntervalNanos;
+
+        void reset(long expectedFrameIntervalNanos) {
+            frameCount = 0;
+            slowFrameCount = 0;
+            maxFrameIntervalNanos = 0;
+            totalDrawNanos = 0;
+            maxDrawNanos = 0;
+            this.expectedFrameIntervalNanos = expectedFrameIntervalNanos;
+        }
+
+        void addFrame(long intervalNanos, long drawNanos) {
+            frameCount++;
+            if (intervalNanos > expectedFrameIntervalNanos * 3 / 2) {
+                slowFrameCount++;
+            }
+            maxFrameIntervalNanos = Math.max(maxFrameIntervalNanos, intervalNanos);
+            totalDrawNanos += drawNanos;
+            maxDrawNanos = Math.max(maxDrawNanos, drawNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "FrameStats{frames=" + frameCount + ", slow=" + slowFrameCount
+                    + ", maxIntervalMs=" + maxFrameIntervalNanos / 1000000f
+                    + ", maxDrawMs=" + maxDrawNanos / 1000000f
+                    + ", totalDrawMs=" + totalDrawNanos / 1000000f + "}";
+        }
+    }
+
     /**
      * Interface used to format current value into a string for presentation.
      */
@@ -566,6 +722,40 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         public String format(int value);
     }
 
+    /**
+     * Interface used to provide the labels of values, in place of an array of displayed values.
+     * Labels are only asked for the values shown, so the range of values can be huge.
+     *
+     * @see #setValueProvider(ValueProvider)
+     */
+    public interface ValueProvider {
+
+        /**
+         * Returns the label of a value.
+         *
+         * @param value A value between the min and max value of the picker, inclusive.
+         * @return The label to display.
+         */
+        String getLabel(int value);
+
+        /**
+         * Finds the first value whose label starts with prefix, ignoring case. Used to
+         * select a value by typing.
+         *
+         * @param prefix The text typed.
+         * @return The value, or -1 if no label starts with prefix.
+         */
+        int findValueByPrefix(String prefix);
+
+        /**
+         * Returns a label at least as wide as the others, to compute the width of the
+         * picker from.
+         *
+         * @return The widest label, or null to not compute the width.
+         */
+        String getWidestLabel();
+    }
+
     /**
      * Create a new number picker.
      *
@@ -916,10 +1106,12 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
                 if (!mFlingScroller.isFinished()) {
                     mFlingScroller.forceFinished(true);
                     mAdjustScroller.forceFinished(true);
+                    endDeferredNotify();
                     onScrollStateChange(OnScrollListener.SCROLL_STATE_IDLE);
                 } else if (!mAdjustScroller.isFinished()) {
                     mFlingScroller.forceFinished(true);
                     mAdjustScroller.forceFinished(true);
+                    endDeferredNotify();
                 } else if (mLastDownEventY < mTopSelectionDividerTop) {
                     hideSoftInput();
                     postChangeCurrentByOneFromLongPress(
@@ -1136,6 +1328,9 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         }
         scrollBy(0, currentScrollerY - mPreviousScrollerY);
         mPreviousScrollerY = currentScrollerY;
+        if (mDeferringNotify && mFlingNotifyMode == FLING_NOTIFY_ONCE_PER_FRAME) {
+            flushDeferredNotify();
+        }
         if (scroller.isFinished()) {
             onScrollerFinished(scroller);
         } else {
@@ -1223,6 +1418,75 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         mOnValueChangeListener = onValueChangedListener;
     }
 
+    /**
+     * Sets how the value change listener is notified during a fling. A listener doing heavy
+     * work on each change, like updating other pickers, can be notified once per frame, or
+     * only with the final value, instead of for every value crossed.
+     * <p>
+     * The default is {@link #FLING_NOTIFY_EVERY_VALUE}.
+     *
+     * @param flingNotifyMode One of {@link #FLING_NOTIFY_EVERY_VALUE},
+     *            {@link #FLING_NOTIFY_ONCE_PER_FRAME} or {@link #FLING_NOTIFY_FINAL_VALUE}.
+     * @see #getPredictedValue()
+     * @see #getGroupedChangeSteps()
+     */
+    public void setFlingNotifyMode(@FlingNotifyMode int flingNotifyMode) {
+        mFlingNotifyMode = flingNotifyMode;
+    }
+
+    /**
+     * @return How the value change listener is notified during a fling.
+     */
+    @FlingNotifyMode
+    public int getFlingNotifyMode() {
+        return mFlingNotifyMode;
+    }
+
+    /**
+     * Returns the signed number of steps of the value change being notified to the
+     * {@link OnValueChangeListener}, if it groups the changes held back during a fling.
+     * Unlike the difference of the old and new values, this tells which way, and how
+     * many times, a wrapping wheel went round. A grouped change is also notified if the
+     * wheel went round to the old value.
+     *
+     * @return The steps, positive if the value is incremented, or 0 if the change being
+     *         notified is not a grouped one.
+     * @see #setFlingNotifyMode(int)
+     */
+    public int getGroupedChangeSteps() {
+        return mNotifyingSteps;
+    }
+
+    /**
+     * Returns the value this NumberPicker will settle on, predicted from the scroll in
+     * progress. Returns the current value if not scrolling.
+     *
+     * @return The predicted value.
+     */
+    public int getPredictedValue() {
+        final Scroller scroller;
+        if (!mFlingScroller.isFinished()) {
+            scroller = mFlingScroller;
+        } else if (!mAdjustScroller.isFinished()) {
+            scroller = mAdjustScroller;
+        } else {
+            return mValue;
+        }
+        if (mSelectorElementHeight == 0) {
+            return mValue;
+        }
+        // The wheel is adjusted to the closest value when the scroll ends.
+        final int offset = mCurrentScrollOffset - mInitialScrollOffset
+                + scroller.getFinalY() - scroller.getCurrY();
+        final int value = mValue - Math.round((float) offset / mSelectorElementHeight);
+        if (mWrapSelectorWheel) {
+            final int count = mMaxValue - mMinValue + 1;
+            return mMinValue + ((value - mMinValue) % count + count) % count;
+        } else {
+            return Math.min(Math.max(value, mMinValue), mMaxValue);
+        }
+    }
+
     /**
      * Set listener to be notified for scroll state changes.
      *
@@ -1232,6 +1496,26 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         mOnScrollListener = onScrollListener;
     }
 
+    /**
+     * Sets whether the labels of the selector wheel are rendered once into bitmaps,
+     * so a frame of scrolling only draws bitmaps. This costs a bitmap for each of the
+     * recently shown values. Disabled by default.
+     *
+     * @param enabled Whether to cache labels as bitmaps.
+     */
+    public void setSelectorBitmapCacheEnabled(boolean enabled) {
+        mSelectorLabelCache.setBitmapEnabled(enabled);
+        invalidate();
+    }
+
+    /**
+     * @return Whether the labels of the selector wheel are cached as bitmaps.
+     * @see #setSelectorBitmapCacheEnabled(boolean)
+     */
+    public boolean isSelectorBitmapCacheEnabled() {
+        return mSelectorLabelCache.isBitmapEnabled();
+    }
+
     /**
      * Set the formatter to be used for formatting the current value.
      * <p>
@@ -1248,8 +1532,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             return;
         }
         mFormatter = formatter;
-        initializeSelectorWheelIndices();
-        updateInputTextView();
+        onValuesChanged(false);
     }
 
     /**
@@ -1355,14 +1638,15 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             return;
         }
         int maxTextWidth = 0;
-        if (mDisplayedValues == null) {
-            float maxDigitWidth = 0;
-            for (int i = 0; i <= 9; i++) {
-                final float digitWidth = mSelectorWheelPaint.measureText(formatNumberWithLocale(i));
-                if (digitWidth > maxDigitWidth) {
-                    maxDigitWidth = digitWidth;
-                }
+        if (mValueProvider != null) {
+            final String widestLabel = mValueProvider.getWidestLabel();
+            if (widestLabel == null) {
+                return;
             }
+            maxTextWidth = (int) TextWidthCache.getMaxWidth(mSelectorWheelPaint,
+                    new String[] { widestLabel });
+        } else if (mDisplayedValues == null) {
+            final float maxDigitWidth = TextWidthCache.getMaxDigitWidth(mSelectorWheelPaint);
             int numberOfDigits = 0;
             int current = mMaxValue;
             while (current > 0) {
@@ -1371,13 +1655,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             }
             maxTextWidth = (int) (numberOfDigits * maxDigitWidth);
         } else {
-            final int valueCount = mDisplayedValues.length;
-            for (int i = 0; i < valueCount; i++) {
-                final float textWidth = mSelectorWheelPaint.measureText(mDisplayedValues[i]);
-                if (textWidth > maxTextWidth) {
-                    maxTextWidth = (int) textWidth;
-                }
-            }
+            maxTextWidth = (int) TextWidthCache.getMaxWidth(mSelectorWheelPaint, mDisplayedValues);
         }
         maxTextWidth += mInputText.getPaddingLeft() + mInputText.getPaddingRight();
         if (mMaxWidth != maxTextWidth) {
@@ -1491,10 +1769,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             mValue = mMinValue;
         }
         updateWrapSelectorWheel();
-        initializeSelectorWheelIndices();
-        updateInputTextView();
-        tryComputeMaxWidth();
-        invalidate();
+        onValuesChanged(true);
     }
 
     /**
@@ -1528,10 +1803,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             mValue = mMaxValue;
         }
         updateWrapSelectorWheel();
-        initializeSelectorWheelIndices();
-        updateInputTextView();
-        tryComputeMaxWidth();
-        invalidate();
+        onValuesChanged(true);
     }
 
     /**
@@ -1557,16 +1829,87 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             return;
         }
         mDisplayedValues = displayedValues;
-        if (mDisplayedValues != null) {
+        mDisplayedValuesIndex = null;
+        if (displayedValues != null) {
+            mValueProvider = null;
+        }
+        updateInputType();
+        onValuesChanged(true);
+    }
+
+    /**
+     * Gets the provider of labels to be displayed instead of string values.
+     *
+     * @return The value provider, or null.
+     */
+    public ValueProvider getValueProvider() {
+        return mValueProvider;
+    }
+
+    /**
+     * Sets the provider of labels to be displayed instead of string values. Unlike
+     * {@link #setDisplayedValues(String[])}, labels are only asked for the values shown,
+     * so the memory used does not depend on the range of values.
+     * <p>
+     * This replaces the displayed values.
+     *
+     * @param valueProvider The value provider, or null to show the values as numbers.
+     */
+    public void setValueProvider(ValueProvider valueProvider) {
+        if (mValueProvider == valueProvider) {
+            return;
+        }
+        mValueProvider = valueProvider;
+        if (valueProvider != null) {
+            mDisplayedValues = null;
+            mDisplayedValuesIndex = null;
+        }
+        updateInputType();
+        onValuesChanged(true);
+    }
+
+    private void updateInputType() {
+        if (hasLabels()) {
             // Allow text entry rather than strictly numeric entry.
             mInputText.setRawInputType(InputType.TYPE_CLASS_TEXT
                     | InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
         } else {
             mInputText.setRawInputType(InputType.TYPE_CLASS_NUMBER);
         }
-        updateInputTextView();
-        initializeSelectorWheelIndices();
-        tryComputeMaxWidth();
+    }
+
+    /**
+     * @return Whether values are displayed as labels, instead of numbers.
+     */
+    private boolean hasLabels() {
+        return mDisplayedValues != null || mValueProvider != null;
+    }
+
+    /**
+     * @return The text to display for value.
+     */
+    private String getDisplayedValue(int value) {
+        if (mDisplayedValues != null) {
+            return mDisplayedValues[value - mMinValue];
+        } else if (mValueProvider != null) {
+            return mValueProvider.getLabel(value);
+        } else {
+            return formatNumber(value);
+        }
+    }
+
+    /**
+     * @return The first value whose label starts with prefix, or -1 if not found.
+     */
+    private int findValueByPrefix(String prefix) {
+        if (mValueProvider != null) {
+            return mValueProvider.findValueByPrefix(prefix);
+        }
+        if (mDisplayedValuesIndex == null) {
+            mDisplayedValuesIndex = new LabelPrefixIndex(mDisplayedValues);
+        }
+        final int index = mDisplayedValuesIndex.find(prefix);
+        return index < 0 ? -1 : mMinValue + index;
     }
 
     @Override
@@ -1583,6 +1926,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         removeAllCallbacks();
+        endDeferredNotify();
     }
 
     @CallSuper
@@ -1624,6 +1968,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             super.onDraw(canvas);
             return;
         }
+        final long drawStartNanos = mFrameStats != null ? System.nanoTime() : 0;
         final boolean showSelectorWheel = mHideWheelUntilFocused ? hasFocus() : true;
         float x = (getRight() - getLeft()) / 2;
         float y = mCurrentScrollOffset;
@@ -1648,7 +1993,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         int[] selectorIndices = mSelectorIndices;
         for (int i = 0; i < selectorIndices.length; i++) {
             int selectorIndex = selectorIndices[i];
-            String scrollSelectorValue = mSelectorIndexToStringCache.get(selectorIndex);
+            SelectorLabelCache.Label label = ensureCachedScrollSelectorValue(selectorIndex);
             // Do not draw the middle item if input is visible since the input
             // is shown only if the wheel is static and it covers the middle
             // item. Otherwise, if the user starts editing the text via the
@@ -1656,7 +2001,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             // with the new one.
             if ((showSelectorWheel && i != SELECTOR_MIDDLE_ITEM_INDEX) ||
                 (i == SELECTOR_MIDDLE_ITEM_INDEX && mInputText.getVisibility() != VISIBLE)) {
-                canvas.drawText(scrollSelectorValue, x, y, mSelectorWheelPaint);
+                mSelectorLabelCache.draw(canvas, label, x, y, mSelectorWheelPaint);
             }
             y += mSelectorElementHeight;
         }
@@ -1675,6 +2020,14 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             mSelectionDivider.setBounds(0, topOfBottomDivider, getRight(), bottomOfBottomDivider);
             mSelectionDivider.draw(canvas);
         }
+
+        if (mFrameStats != null) {
+            final long now = System.nanoTime();
+            if (mLastFrameTimeNanos != 0) {
+                mFrameStats.addFrame(drawStartNanos - mLastFrameTimeNanos, now - drawStartNanos);
+            }
+            mLastFrameTimeNanos = drawStartNanos;
+        }
     }
 
     @Override
@@ -1747,7 +2100,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
      * these indices.
      */
     private void initializeSelectorWheelIndices() {
-        mSelectorIndexToStringCache.clear();
+        mSelectorLabelCache.clear();
         int[] selectorIndices = mSelectorIndices;
         int current = getValue();
         for (int i = 0; i < mSelectorIndices.length; i++) {
@@ -1779,6 +2132,13 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         }
         int previous = mValue;
         mValue = current;
+        if (mBatchUpdateDepth > 0) {
+            mBatchWheelChanged = true;
+            if (notifyChange) {
+                notifyChange(previous, current);
+            }
+            return;
+        }
         updateInputTextView();
         if (notifyChange) {
             notifyChange(previous, current);
@@ -1787,6 +2147,54 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         invalidate();
     }
 
+    /**
+     * Updates the selector wheel and the input text for a change of values, or defers it
+     * to the end of the batch update.
+     *
+     * @param widthChanged Whether the max width of values may be changed.
+     */
+    private void onValuesChanged(boolean widthChanged) {
+        if (mBatchUpdateDepth > 0) {
+            mBatchWheelChanged = true;
+            mBatchWidthChanged |= widthChanged;
+            return;
+        }
+        initializeSelectorWheelIndices();
+        updateInputTextView();
+        if (widthChanged) {
+            tryComputeMaxWidth();
+        }
+        invalidate();
+    }
+
+    /**
+     * Starts a batch update. Until the matching {@link #endBatchUpdate()}, changes of
+     * the min and max values, the displayed values, the formatter and the current value
+     * don't update the selector wheel nor measure the values. They are applied once when
+     * the batch ends. Value change listeners are still notified as values change.
+     * <p>
+     * Batch updates can be nested.
+     */
+    public void beginBatchUpdate() {
+        mBatchUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch update started by {@link #beginBatchUpdate()}, and applies the changes.
+     */
+    public void endBatchUpdate() {
+        if (mBatchUpdateDepth == 0) {
+            throw new IllegalStateException("endBatchUpdate without beginBatchUpdate");
+        }
+        if (--mBatchUpdateDepth > 0 || !mBatchWheelChanged) {
+            return;
+        }
+        final boolean widthChanged = mBatchWidthChanged;
+        mBatchWheelChanged = false;
+        mBatchWidthChanged = false;
+        onValuesChanged(widthChanged);
+    }
+
     /**
      * Changes the current value by one which is increment or
      * decrement based on the passes argument.
@@ -1845,12 +2253,14 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         if (scroller == mFlingScroller) {
             if (!ensureScrollWheelAdjusted()) {
                 updateInputTextView();
+                endDeferredNotify();
             }
             onScrollStateChange(OnScrollListener.SCROLL_STATE_IDLE);
         } else {
             if (mScrollState != OnScrollListener.SCROLL_STATE_TOUCH_SCROLL) {
                 updateInputTextView();
             }
+            endDeferredNotify();
         }
     }
 
@@ -1867,17 +2277,45 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
             focusThisIfNeed();
         }
 
+        if (scrollState == OnScrollListener.SCROLL_STATE_IDLE) {
+            reportFrameStats();
+        } else if (mScrollState == OnScrollListener.SCROLL_STATE_IDLE) {
+            startFrameStats();
+        }
+
         mScrollState = scrollState;
         if (mOnScrollListener != null) {
             mOnScrollListener.onScrollStateChange(this, scrollState);
         }
     }
 
+    private void startFrameStats() {
+        if (!(mOnScrollListener instanceof OnScrollFrameStatsListener)) {
+            mFrameStats = null;
+            return;
+        }
+        if (mFrameStats == null) {
+            mFrameStats = new FrameStats();
+        }
+        final Display display = getDisplay();
+        final float refreshRate = display != null ? display.getRefreshRate() : 60;
+        mFrameStats.reset((long) (1000000000 / refreshRate));
+        mLastFrameTimeNanos = 0;
+    }
+
+    private void reportFrameStats() {
+        if (mFrameStats != null && mOnScrollListener instanceof OnScrollFrameStatsListener) {
+            ((OnScrollFrameStatsListener) mOnScrollListener).onScrollFrameStats(this, mFrameStats);
+        }
+        mFrameStats = null;
+    }
+
     /**
      * Flings the selector with the given <code>velocityY</code>.
      */
     private void fling(int velocityY) {
         mPreviousScrollerY = 0;
+        mDeferringNotify = mFlingNotifyMode != FLING_NOTIFY_EVERY_VALUE;
 
         if (velocityY > 0) {
             mFlingScroller.fling(0, 0, 0, velocityY, 0, 0, 0, Integer.MAX_VALUE);
@@ -1935,24 +2373,22 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
     /**
      * Ensures we have a cached string representation of the given <code>
      * selectorIndex</code> to avoid multiple instantiations of the same string.
+     *
+     * @return The cached label of <code>selectorIndex</code>.
      */
-    private void ensureCachedScrollSelectorValue(int selectorIndex) {
-        SparseArray<String> cache = mSelectorIndexToStringCache;
-        String scrollSelectorValue = cache.get(selectorIndex);
-        if (scrollSelectorValue != null) {
-            return;
+    private SelectorLabelCache.Label ensureCachedScrollSelectorValue(int selectorIndex) {
+        SelectorLabelCache cache = mSelectorLabelCache;
+        SelectorLabelCache.Label label = cache.get(selectorIndex);
+        if (label != null) {
+            return label;
         }
+        String scrollSelectorValue;
         if (selectorIndex < mMinValue || selectorIndex > mMaxValue) {
             scrollSelectorValue = "";
         } else {
-            if (mDisplayedValues != null) {
-                int displayedValueIndex = selectorIndex - mMinValue;
-                scrollSelectorValue = mDisplayedValues[displayedValueIndex];
-            } else {
-                scrollSelectorValue = formatNumber(selectorIndex);
-            }
+            scrollSelectorValue = getDisplayedValue(selectorIndex);
         }
-        cache.put(selectorIndex, scrollSelectorValue);
+        return cache.put(selectorIndex, scrollSelectorValue);
     }
 
     private String formatNumber(int value) {
@@ -1985,8 +2421,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
          * find the correct value in the displayed values for the current
          * number.
          */
-        String text = (mDisplayedValues == null) ? formatNumber(mValue)
-                : mDisplayedValues[mValue - mMinValue];
+        String text = getDisplayedValue(mValue);
         if (!TextUtils.isEmpty(text) && !text.equals(mInputText.getText().toString())) {
             mInputText.setText(text);
             return true;
@@ -2000,11 +2435,64 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
      * NumberPicker.
      */
     private void notifyChange(int previous, int current) {
+        if (mDeferringNotify) {
+            if (!mHasDeferredNotify) {
+                mHasDeferredNotify = true;
+                mDeferredPreviousValue = previous;
+            }
+            mDeferredSteps += getSteps(previous, current);
+            return;
+        }
         if (mOnValueChangeListener != null) {
             mOnValueChangeListener.onValueChange(this, previous, mValue);
         }
     }
 
+    /**
+     * Notifies the listener of the value changes held back so far, as one change.
+     */
+    private void flushDeferredNotify() {
+        if (!mHasDeferredNotify) {
+            return;
+        }
+        mHasDeferredNotify = false;
+        final int steps = mDeferredSteps;
+        mDeferredSteps = 0;
+        if ((steps != 0 || mDeferredPreviousValue != mValue) && mOnValueChangeListener != null) {
+            mNotifyingSteps = steps;
+            try {
+                mOnValueChangeListener.onValueChange(this, mDeferredPreviousValue, mValue);
+            } finally {
+                mNotifyingSteps = 0;
+            }
+        }
+    }
+
+    /**
+     * @return The signed number of steps of a change of one value, which is taken the
+     *         shorter way round if the wheel wraps.
+     */
+    private int getSteps(int previous, int current) {
+        int steps = current - previous;
+        if (mWrapSelectorWheel) {
+            final int count = mMaxValue - mMinValue + 1;
+            if (steps > count / 2) {
+                steps -= count;
+            } else if (steps < -count / 2) {
+                steps += count;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Stops holding back value changes, and notifies the listener of those held back.
+     */
+    private void endDeferredNotify() {
+        mDeferringNotify = false;
+        flushDeferredNotify();
+    }
+
     /**
      * Posts a command for changing the current value by one.
      *
@@ -2071,19 +2559,17 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
      * @return The selected index given its displayed <code>value</code>.
      */
     private int getSelectedPos(String value) {
-        if (mDisplayedValues == null) {
+        if (!hasLabels()) {
             try {
                 return Integer.parseInt(value);
             } catch (NumberFormatException e) {
                 // Ignore as if it's not a number we don't care
             }
         } else {
-            for (int i = 0; i < mDisplayedValues.length; i++) {
-                // Don't force the user to type in jan when ja will do
-                value = value.toLowerCase();
-                if (mDisplayedValues[i].toLowerCase().startsWith(value)) {
-                    return mMinValue + i;
-                }
+            // Don't force the user to type in jan when ja will do
+            final int found = findValueByPrefix(value);
+            if (found >= 0) {
+                return found;
             }
 
             /*
@@ -2158,7 +2644,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
         @Override
         public CharSequence filter(
                 CharSequence source, int start, int end, Spanned dest, int dstart, int dend) {
-            if (mDisplayedValues == null) {
+            if (!hasLabels()) {
                 CharSequence filtered = super.filter(source, start, end, dest, dstart, dend);
                 if (filtered == null) {
                     filtered = source.subSequence(start, end);
@@ -2191,13 +2677,11 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
                 }
                 String result = String.valueOf(dest.subSequence(0, dstart)) + filtered
                         + dest.subSequence(dend, dest.length());
-                String str = String.valueOf(result).toLowerCase();
-                for (String val : mDisplayedValues) {
-                    String valLowerCase = val.toLowerCase();
-                    if (valLowerCase.startsWith(str)) {
-                        postSetSelectionCommand(result.length(), val.length());
-                        return val.subSequence(dstart, val.length());
-                    }
+                final int found = findValueByPrefix(result);
+                if (found >= 0) {
+                    String val = getDisplayedValue(found);
+                    postSetSelectionCommand(result.length(), val.length());
+                    return val.subSequence(dstart, val.length());
                 }
                 return "";
             }
@@ -2787,8 +3271,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
                 value = getWrappedSelectorIndex(value);
             }
             if (value >= mMinValue) {
-                return (mDisplayedValues == null) ? formatNumber(value)
-                        : mDisplayedValues[value - mMinValue];
+                return getDisplayedValue(value);
             }
             return null;
         }
@@ -2799,8 +3282,7 @@ public class NumberPicker extends LinearLayout implements SidePanelEventDispatch
                 value = getWrappedSelectorIndex(value);
             }
             if (value <= mMaxValue) {
-                return (mDisplayedValues == null) ? formatNumber(value)
-                        : mDisplayedValues[value - mMinValue];
+                return getDisplayedValue(value);
             }
             return null;
         }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the labels drawn by the selector wheel of {@link NumberPicker}.
+ *
+ * Labels are kept for the most recently shown indices only. With the bitmap cache enabled,
+ * each label is also measured and rendered once into a bitmap, so drawing it in a frame is
+ * a bitmap blit. The bitmaps are dropped when the paint changes its color, text size or
+ * typeface.
+ *
+ * Indices are kept as primitive ints, and the least recently used label is found by a scan
+ * of the few entries, so a lookup in a frame allocates nothing.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class SelectorLabelCache {
+
+    static final int DEFAULT_MAX_SIZE = 32;
+
+    static class Label {
+        final String text;
+        Bitmap bitmap;
+
+        Label(String text) {
+            this.text = text;
+        }
+    }
+
+    // Entries by slot: the index, its label, and when it was used last. A slot with a
+    // null label is free.
+    private final int[] mIndices;
+    private final Label[] mLabels;
+    private final long[] mLastUsed;
+    private long mUseCount;
+
+    private boolean mBitmapEnabled;
+
+    // The paint state cached bitmaps are rendered with.
+    private int mColor;
+    private float mTextSize;
+    private Typeface mTypeface;
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+
+    SelectorLabelCache(int maxSize) {
+        mIndices = new int[maxSize];
+        mLabels = new Label[maxSize];
+        mLastUsed = new long[maxSize];
+    }
+
+    void setBitmapEnabled(boolean enabled) {
+        if (mBitmapEnabled != enabled) {
+            mBitmapEnabled = enabled;
+            if (!enabled) {
+                dropBitmaps();
+            }
+        }
+    }
+
+    boolean isBitmapEnabled() {
+        return mBitmapEnabled;
+    }
+
+    Label get(int index) {
+        final int slot = findSlot(index);
+        if (slot < 0) {
+            return null;
+        }
+        mLastUsed[slot] = ++mUseCount;
+        return mLabels[slot];
+    }
+
+    /**
+     * Puts the label of index, replacing the one of the index, or else the least
+     * recently used one if the cache is full.
+     */
+    Label put(int index, String text) {
+        int slot = findSlot(index);
+        if (slot < 0) {
+            slot = findLeastRecentlyUsedSlot();
+        }
+        Label label = new Label(text);
+        mIndices[slot] = index;
+        mLabels[slot] = label;
+        mLastUsed[slot] = ++mUseCount;
+        return label;
+    }
+
+    void clear() {
+        Arrays.fill(mLabels, null);
+    }
+
+    private int findSlot(int index) {
+        for (int i = 0; i < mLabels.length; i++) {
+            if (mLabels[i] != null && mIndices[i] == index) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return A free slot, or the least recently used one if there is none.
+     */
+    private int findLeastRecentlyUsedSlot() {
+        int slot = 0;
+        for (int i = 0; i < mLabels.length; i++) {
+            if (mLabels[i] == null) {
+                return i;
+            }
+            if (mLastUsed[i] < mLastUsed[slot]) {
+                slot = i;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Draws the label centered at x, with its baseline at y.
+     */
+    void draw(Canvas canvas, Label label, float x, float y, Paint paint) {
+        if (label.text.isEmpty()) {
+            return;
+        }
+        if (!mBitmapEnabled) {
+            canvas.drawText(label.text, x, y, paint);
+            return;
+        }
+
+        if (paint.getColor() != mColor || paint.getTextSize() != mTextSize
+                || paint.getTypeface() != mTypeface) {
+            dropBitmaps();
+            mColor = paint.getColor();
+            mTextSize = paint.getTextSize();
+            mTypeface = paint.getTypeface();
+            paint.getFontMetrics(mFontMetrics);
+        }
+
+        if (label.bitmap == null) {
+            label.bitmap = render(label, paint);
+        }
+        canvas.drawBitmap(label.bitmap, x - label.bitmap.getWidth() / 2,
+                y + mFontMetrics.ascent, null);
+    }
+
+    private Bitmap render(Label label, Paint paint) {
+        final int width = (int) Math.ceil(paint.measureText(label.text));
+        final int height = (int) Math.ceil(mFontMetrics.descent - mFontMetrics.ascent);
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        final Paint.Align align = paint.getTextAlign();
+        paint.setTextAlign(Paint.Align.CENTER);
+        canvas.drawText(label.text, width / 2f, -mFontMetrics.ascent, paint);
+        paint.setTextAlign(align);
+        return bitmap;
+    }
+
+    private void dropBitmaps() {
+        for (Label label : mLabels) {
+            if (label != null) {
+                label.bitmap = null;
+            }
+        }
+    }
+}
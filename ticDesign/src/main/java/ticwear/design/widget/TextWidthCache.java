@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.widget;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Process-wide cache of the max width of a set of texts, shared by all {@link NumberPicker}s.
+ *
+ * Widths are keyed by the typeface, text size and locale of the paint, and the content of
+ * the text set, so pickers reconfigured with the same values don't measure them again.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class TextWidthCache {
+
+    private static final int MAX_SIZE = 64;
+
+    private static final LruCache<Key, Float> sWidths = new LruCache<>(MAX_SIZE);
+
+    private TextWidthCache() {
+    }
+
+    /**
+     * Returns the max width of the ten digits, formatted in the default locale.
+     */
+    static float getMaxDigitWidth(Paint paint) {
+        final Locale locale = Locale.getDefault();
+        Key key = new Key(paint, locale, null);
+        Float width = sWidths.get(key);
+        if (width == null) {
+            float maxDigitWidth = 0;
+            for (int i = 0; i <= 9; i++) {
+                final float digitWidth = paint.measureText(String.format(locale, "%d", i));
+                if (digitWidth > maxDigitWidth) {
+                    maxDigitWidth = digitWidth;
+                }
+            }
+            width = maxDigitWidth;
+            sWidths.put(key, width);
+        }
+        return width;
+    }
+
+    /**
+     * Returns the max width of texts.
+     */
+    static float getMaxWidth(Paint paint, String[] texts) {
+        Key key = new Key(paint, null, texts);
+        Float width = sWidths.get(key);
+        if (width == null) {
+            float maxTextWidth = 0;
+            for (String text : texts) {
+                final float textWidth = paint.measureText(text);
+                if (textWidth > maxTextWidth) {
+                    maxTextWidth = textWidth;
+                }
+            }
+            width = maxTextWidth;
+            // Keep a copy, in case the array is changed later.
+            sWidths.put(new Key(paint, null, texts.clone()), width);
+        }
+        return width;
+    }
+
+    private static class Key {
+        final Typeface typeface;
+        final float textSize;
+        final Locale textLocale;
+        // Locale of digits, null for texts.
+        final Locale digitLocale;
+        final String[] texts;
+        final int hashCode;
+
+        Key(Paint paint, Locale digitLocale, String[] texts) {
+            this.typeface = paint.getTypeface();
+            this.textSize = paint.getTextSize();
+            this.textLocale = paint.getTextLocale();
+            this.digitLocale = digitLocale;
+            this.texts = texts;
+
+            int h = typeface != null ? typeface.hashCode() : 0;
+            h = 31 * h + Float.floatToIntBits(textSize);
+            h = 31 * h + (textLocale != null ? textLocale.hashCode() : 0);
+            h = 31 * h + (digitLocale != null ? digitLocale.hashCode() : 0);
+            h = 31 * h + Arrays.hashCode(texts);
+            hashCode = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hashCode == other.hashCode
+                    && typeface == other.typeface
+                    && textSize == other.textSize
+                    && equals(textLocale, other.textLocale)
+                    && equals(digitLocale, other.digitLocale)
+                    && Arrays.equals(texts, other.texts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        private static boolean equals(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -536,6 +536,7 @@ class TimePickerSpinnerDelegate extends TimePicker.AbstractTimePickerDelegate {
     }
 
     private void updateHourControl() {
+        mHourSpinner.beginBatchUpdate();
         if (is24HourView()) {
             // 'k' means 1-24 hour
             if (mHourFormat == 'k') {
@@ -556,6 +557,7 @@ class TimePickerSpinnerDelegate extends TimePicker.AbstractTimePickerDelegate {
             }
         }
         mHourSpinner.setFormatter(mHourWithTwoDigit ? NumberPicker.getTwoDigitFormatter() : null);
+        mHourSpinner.endBatchUpdate();
     }
 
     private void updateMinuteControl() {
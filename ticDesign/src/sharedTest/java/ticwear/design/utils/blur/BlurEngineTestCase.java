@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Golden image tests shared by every {@link BlurEngine}.
+ *
+ * Exact engines must reproduce the golden images bit by bit, approximate engines must stay
+ * within the tolerance they declare.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public abstract class BlurEngineTestCase {
+
+    private static final int[] RADII = {1, 2, 3, 5, 8, 12, 25};
+
+    // Large enough for multi-threaded passes.
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    // Odd-sized and degenerated images, smaller than most of the radii.
+    private static final int[][] SMALL_SIZES = {{37, 5}, {1, 9}, {9, 1}};
+
+    private BlurEngine mEngine;
+
+    protected abstract BlurEngine createEngine();
+
+    /**
+     * @return the largest allowed difference of a channel from the golden image,
+     *         0 for an exact engine.
+     */
+    protected abstract int getMaxDifference();
+
+    /**
+     * @return the allowed mean difference of all channels from the golden image.
+     */
+    protected abstract double getMeanDifference();
+
+    @Before
+    public void setUp() throws Exception {
+        mEngine = createEngine();
+    }
+
+    @Test
+    public void testMatchesGolden() {
+        for (int radius : RADII) {
+            assertMatchesGolden(WIDTH, HEIGHT, radius);
+        }
+    }
+
+    @Test
+    public void testMatchesGoldenOnSmallImages() {
+        for (int[] size : SMALL_SIZES) {
+            int w = size[0];
+            int h = size[1];
+            for (int radius : RADII) {
+                if (getMaxDifference() == 0) {
+                    assertMatchesGolden(w, h, radius);
+                } else {
+                    // Edges dominate when the radius is larger than the image, approximate
+                    // engines are only checked to keep the pixels they do not own.
+                    int[] source = GoldenImages.createSource(w, h);
+                    int[] pixels = source.clone();
+                    mEngine.blur(pixels, w, h, radius);
+                    for (int i = 0; i < pixels.length; i++) {
+                        assertEquals("alpha of pixel " + i, source[i] >>> 24, pixels[i] >>> 24);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPreservesAlpha() {
+        int w = WIDTH;
+        int h = HEIGHT;
+        int[] source = GoldenImages.createSource(w, h);
+        int[] pixels = source.clone();
+        mEngine.blur(pixels, w, h, 8);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals("alpha of pixel " + i, source[i] >>> 24, pixels[i] >>> 24);
+        }
+    }
+
+    @Test
+    public void testKeepsFlatImage() {
+        int w = 64;
+        int h = 48;
+        int[] pixels = new int[w * h];
+        Arrays.fill(pixels, 0xff3c7a1e);
+        int[] expected = pixels.clone();
+        mEngine.blur(pixels, w, h, 10);
+        assertArrayEquals(expected, pixels);
+    }
+
+    @Test
+    public void testIgnoresZeroRadius() {
+        int w = 37;
+        int h = 5;
+        int[] expected = GoldenImages.createSource(w, h);
+        int[] pixels = expected.clone();
+        mEngine.blur(pixels, w, h, 0);
+        assertArrayEquals(expected, pixels);
+    }
+
+    private void assertMatchesGolden(int w, int h, int radius) {
+        int[] golden = GoldenImages.createGolden(w, h, radius);
+        int[] pixels = GoldenImages.createSource(w, h);
+        mEngine.blur(pixels, w, h, radius);
+
+        String image = mEngine.getName() + " " + w + "x" + h + " radius " + radius;
+        if (getMaxDifference() == 0) {
+            assertArrayEquals(image, golden, pixels);
+            return;
+        }
+        int max = GoldenImages.maxDifference(golden, pixels);
+        assertTrue(image + " max difference " + max, max <= getMaxDifference());
+        double mean = GoldenImages.meanDifference(golden, pixels);
+        assertTrue(image + " mean difference " + mean, mean <= getMeanDifference());
+    }
+
+    @Test
+    public void testReusesEngineAcrossSizes() {
+        // Scratch buffers of a larger image must not leak into a smaller one.
+        int[] first = GoldenImages.createSource(37, 5);
+        mEngine.blur(first, 37, 5, 3);
+        int[] large = GoldenImages.createSource(WIDTH, HEIGHT);
+        mEngine.blur(large, WIDTH, HEIGHT, 12);
+        int[] second = GoldenImages.createSource(37, 5);
+        mEngine.blur(second, 37, 5, 3);
+        assertArrayEquals(first, second);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A simple JVM timing harness of {@link FastXmlSerializer} against the
+ * {@link LegacyFastXmlSerializer}, on {@link XmlUtils#writeMapXml} payloads.
+ *
+ * Not a unit test, run its main method. Each case is warmed up first, then the best of a
+ * few rounds is reported, to keep JIT and GC noise out.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class FastXmlSerializerBenchmark {
+
+    private static final int[] ENTRIES = {50, 500, 5000};
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final long ROUND_NANOS = 200 * 1000 * 1000;
+
+    private interface Target {
+        XmlSerializer create() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int entries : ENTRIES) {
+            final Map<String, Object> map = XmlPayloads.createMap(new Random(entries), entries);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            XmlUtils.writeMapXml(map, out);
+            final int size = out.size();
+            final ByteBuffer buffer = ByteBuffer.allocate(size);
+
+            System.out.println(entries + " entries, " + size + " bytes:");
+            run("legacy stream", map, new Target() {
+                @Override
+                public XmlSerializer create() throws Exception {
+                    out.reset();
+                    XmlSerializer serializer = new LegacyFastXmlSerializer();
+                    serializer.setOutput(out, "utf-8");
+                    return serializer;
+                }
+            });
+            run("fast stream", map, new Target() {
+                @Override
+                public XmlSerializer create() throws Exception {
+                    out.reset();
+                    XmlSerializer serializer = new FastXmlSerializer();
+                    serializer.setOutput(out, "utf-8");
+                    return serializer;
+                }
+            });
+            run("fast buffer", map, new Target() {
+                @Override
+                public XmlSerializer create() throws Exception {
+                    buffer.clear();
+                    FastXmlSerializer serializer = new FastXmlSerializer();
+                    serializer.setOutput(buffer);
+                    return serializer;
+                }
+            });
+        }
+    }
+
+    private static void run(String name, Map<String, Object> map, Target target)
+            throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            long end;
+            int count = 0;
+            do {
+                XmlPayloads.writeDocument(map, target.create());
+                count++;
+                end = System.nanoTime();
+            } while (end - start < ROUND_NANOS);
+            if (round >= WARM_UP_ROUNDS) {
+                best = Math.min(best, (end - start) / count);
+            }
+        }
+        System.out.println(String.format("  %-14s %10d ns/op", name, best));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Output of {@link FastXmlSerializer} must be byte-identical to the
+ * {@link LegacyFastXmlSerializer}, whatever the output target is.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class FastXmlSerializerTest {
+
+    // Large enough to flush the 8K buffers many times.
+    private static final int ENTRIES = 2000;
+
+    private Map<String, Object> mMap;
+    private byte[] mExpected;
+
+    @Before
+    public void setUp() throws Exception {
+        mMap = XmlPayloads.createMap(new Random(20161018), ENTRIES);
+        mExpected = writeLegacy(mMap, "utf-8");
+    }
+
+    @Test
+    public void testOutputStreamIsIdentical() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(out, "utf-8");
+        XmlPayloads.writeDocument(mMap, serializer);
+        assertArrayEquals(mExpected, out.toByteArray());
+    }
+
+    @Test
+    public void testWriteMapXmlIsIdentical() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlUtils.writeMapXml(mMap, out);
+        assertArrayEquals(mExpected, out.toByteArray());
+    }
+
+    @Test
+    public void testByteBufferIsIdentical() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(mExpected.length);
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(buffer);
+        XmlPayloads.writeDocument(mMap, serializer);
+        assertArrayEquals(mExpected, Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    @Test
+    public void testDirectByteBufferIsIdentical() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(mExpected.length);
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(buffer);
+        XmlPayloads.writeDocument(mMap, serializer);
+        buffer.flip();
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        assertArrayEquals(mExpected, actual);
+    }
+
+    @Test
+    public void testFullByteBufferFails() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(mExpected.length - 1);
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(buffer);
+        try {
+            XmlPayloads.writeDocument(mMap, serializer);
+            fail("Writing into a full buffer should fail");
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testChannelIsIdentical() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(Channels.newChannel(out));
+        XmlPayloads.writeDocument(mMap, serializer);
+        assertArrayEquals(mExpected, out.toByteArray());
+    }
+
+    @Test
+    public void testFileChannelIsIdentical() throws Exception {
+        File file = File.createTempFile("FastXmlSerializerTest", ".xml");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                FastXmlSerializer serializer = new FastXmlSerializer();
+                serializer.setOutput(out.getChannel());
+                XmlPayloads.writeDocument(mMap, serializer);
+            } finally {
+                out.close();
+            }
+
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = in.getChannel();
+                ByteBuffer actual = ByteBuffer.allocate((int) channel.size());
+                while (actual.hasRemaining() && channel.read(actual) >= 0) {
+                    // Read until full.
+                }
+                assertArrayEquals(mExpected, actual.array());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOtherEncodingIsIdentical() throws Exception {
+        byte[] expected = writeLegacy(mMap, "utf-16");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(out, "utf-16");
+        XmlPayloads.writeDocument(mMap, serializer);
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void testTextFromCharArrayIsIdentical() throws Exception {
+        Random random = new Random(42);
+        ByteArrayOutputStream legacyOut = new ByteArrayOutputStream();
+        LegacyFastXmlSerializer legacy = new LegacyFastXmlSerializer();
+        legacy.setOutput(legacyOut, "utf-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(out, "utf-8");
+
+        legacy.startTag(null, "text");
+        serializer.startTag(null, "text");
+        for (int i = 0; i < 500; i++) {
+            char[] text = ("--" + XmlPayloads.createText(random, random.nextInt(64)) + "--")
+                    .toCharArray();
+            legacy.text(text, 2, text.length - 4);
+            serializer.text(text, 2, text.length - 4);
+        }
+        legacy.endTag(null, "text");
+        serializer.endTag(null, "text");
+        legacy.flush();
+        serializer.flush();
+
+        assertArrayEquals(legacyOut.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void testUnpairedSurrogateFails() throws Exception {
+        FastXmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(new ByteArrayOutputStream(), "utf-8");
+        try {
+            serializer.text("a\ud800b");
+            serializer.flush();
+            fail("An unpaired surrogate should fail like the charset encoder");
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+
+    private static byte[] writeLegacy(Map<String, Object> map, String encoding)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LegacyFastXmlSerializer serializer = new LegacyFastXmlSerializer();
+        serializer.setOutput(out, encoding);
+        XmlPayloads.writeDocument(map, serializer);
+        return out.toByteArray();
+    }
+}
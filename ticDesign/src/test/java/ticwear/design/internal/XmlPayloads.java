@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.internal;
+
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Maps to write with {@link XmlUtils#writeMapXml}, for the serializer tests and benchmark.
+ *
+ * Created by tankery on 10/18/16.
+ */
+class XmlPayloads {
+
+    static final String FEATURE_INDENT = "http://xmlpull.org/v1/doc/features.html#indent-output";
+
+    private XmlPayloads() {
+    }
+
+    /**
+     * Create a map like a shared preferences file, with text that covers ASCII, escaped
+     * characters, two and three bytes characters and surrogate pairs.
+     */
+    static Map<String, Object> createMap(Random random, int entries) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = "key_" + i;
+            switch (i % 8) {
+                case 0:
+                case 1:
+                case 2:
+                    map.put(key, createText(random, random.nextInt(64)));
+                    break;
+                case 3:
+                    map.put(key, random.nextInt());
+                    break;
+                case 4:
+                    map.put(key, random.nextLong());
+                    break;
+                case 5:
+                    map.put(key, random.nextBoolean());
+                    break;
+                case 6:
+                    map.put(key, random.nextFloat());
+                    break;
+                default:
+                    map.put(key, createCollection(random, i));
+                    break;
+            }
+        }
+        return map;
+    }
+
+    private static Object createCollection(Random random, int i) {
+        switch ((i / 8) % 4) {
+            case 0: {
+                int[] array = new int[random.nextInt(16)];
+                for (int j = 0; j < array.length; j++) {
+                    array[j] = random.nextInt();
+                }
+                return array;
+            }
+            case 1: {
+                List<Object> list = new ArrayList<>();
+                for (int j = random.nextInt(8); j > 0; j--) {
+                    list.add(createText(random, random.nextInt(16)));
+                }
+                list.add(null);
+                return list;
+            }
+            case 2: {
+                Set<String> set = new HashSet<>();
+                for (int j = random.nextInt(8); j > 0; j--) {
+                    set.add(createText(random, random.nextInt(16)));
+                }
+                return set;
+            }
+            default: {
+                Map<String, Object> map = new HashMap<>();
+                map.put("name", createText(random, 8));
+                map.put("value", random.nextDouble());
+                return map;
+            }
+        }
+    }
+
+    static String createText(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    builder.append("&<>\"");
+                    break;
+                case 1:
+                    builder.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 2:
+                    builder.append((char) (0x800 + random.nextInt(0xc000)));
+                    break;
+                case 3:
+                    builder.appendCodePoint(0x10000 + random.nextInt(0x10000));
+                    break;
+                default:
+                    builder.append((char) (' ' + random.nextInt(95)));
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the map as a document, like {@link XmlUtils#writeMapXml(Map, java.io.OutputStream)}
+     * does, into a serializer with its output already set.
+     */
+    static void writeDocument(Map<String, Object> map, XmlSerializer serializer)
+            throws IOException, XmlPullParserException {
+        serializer.startDocument(null, true);
+        serializer.setFeature(FEATURE_INDENT, true);
+        XmlUtils.writeMapXml(map, null, serializer);
+        serializer.endDocument();
+    }
+}
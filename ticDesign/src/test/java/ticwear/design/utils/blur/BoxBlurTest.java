@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+/**
+ * {@link BoxBlur} approximates the golden images with three box passes.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class BoxBlurTest extends BlurEngineTestCase {
+
+    @Override
+    protected BlurEngine createEngine() {
+        return new BoxBlur();
+    }
+
+    @Override
+    protected int getMaxDifference() {
+        return 24;
+    }
+
+    @Override
+    protected double getMeanDifference() {
+        return 3;
+    }
+}
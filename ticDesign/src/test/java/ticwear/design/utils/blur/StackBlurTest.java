@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.utils.blur;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * {@link StackBlur} must produce exactly the golden images, on one or more threads.
+ *
+ * Created by tankery on 10/18/16.
+ */
+@RunWith(Parameterized.class)
+public class StackBlurTest extends BlurEngineTestCase {
+
+    @Parameters(name = "{0} threads")
+    public static Collection<Object[]> threadCounts() {
+        return Arrays.asList(new Object[][] {{1}, {4}});
+    }
+
+    private final int mThreadCount;
+
+    public StackBlurTest(int threadCount) {
+        mThreadCount = threadCount;
+    }
+
+    @Override
+    protected BlurEngine createEngine() {
+        return new StackBlur(mThreadCount);
+    }
+
+    @Override
+    protected int getMaxDifference() {
+        return 0;
+    }
+
+    @Override
+    protected double getMeanDifference() {
+        return 0;
+    }
+}
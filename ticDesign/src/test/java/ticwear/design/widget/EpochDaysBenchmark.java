@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ticwear.design.widget;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * A simple JVM timing harness of a picker tick on {@link EpochDays} against one on a
+ * {@link Calendar}: a day is added, and the fields shown by the date picker are read.
+ *
+ * Not a unit test, run its main method. Each case walks 100 years day by day, and is
+ * warmed up first, then the best of a few rounds is reported, to keep JIT and GC noise out.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class EpochDaysBenchmark {
+
+    private static final int START_YEAR = 1950;
+    private static final int YEARS = 100;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final long ROUND_NANOS = 200 * 1000 * 1000;
+
+    private interface Walk {
+        /**
+         * @return A checksum of the fields, so the walk is not optimized away.
+         */
+        int run();
+    }
+
+    // Written by every walk, so none is optimized away.
+    private static int sChecksum;
+
+    public static void main(String[] args) {
+        final int days = EpochDays.of(START_YEAR + YEARS, Calendar.JANUARY, 1)
+                - EpochDays.of(START_YEAR, Calendar.JANUARY, 1);
+        System.out.println(YEARS + " years, " + days + " ticks:");
+        run("calendar", days, new Walk() {
+            @Override
+            public int run() {
+                final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+                calendar.clear();
+                calendar.set(START_YEAR, Calendar.JANUARY, 1);
+                int checksum = 0;
+                for (int i = 0; i < days; i++) {
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+                    checksum += calendar.get(Calendar.YEAR) + calendar.get(Calendar.MONTH)
+                            + calendar.get(Calendar.DAY_OF_MONTH)
+                            + calendar.getActualMaximum(Calendar.DAY_OF_MONTH);
+                }
+                return checksum;
+            }
+        });
+        run("epoch days", days, new Walk() {
+            @Override
+            public int run() {
+                int epochDay = EpochDays.of(START_YEAR, Calendar.JANUARY, 1);
+                int checksum = 0;
+                for (int i = 0; i < days; i++) {
+                    epochDay++;
+                    final int year = EpochDays.getYear(epochDay);
+                    final int month = EpochDays.getMonth(epochDay);
+                    checksum += year + month + EpochDays.getDayOfMonth(epochDay)
+                            + EpochDays.getDaysInMonth(year, month);
+                }
+                return checksum;
+            }
+        });
+    }
+
+    private static void run(String name, int ticks, Walk walk) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            long end;
+            int count = 0;
+            do {
+                sChecksum += walk.run();
+                count++;
+                end = System.nanoTime();
+            } while (end - start < ROUND_NANOS);
+            if (round >= WARM_UP_ROUNDS) {
+                best = Math.min(best, (end - start) / count);
+            }
+        }
+        System.out.println(String.format("  %-14s %10d ns/walk %6d ns/tick",
+                name, best, best / ticks));
+    }
+}
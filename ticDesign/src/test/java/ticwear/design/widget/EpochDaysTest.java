@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ticwear.design.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link EpochDays} must give the same dates as a proleptic {@link GregorianCalendar},
+ * over all the years a calendar can count from 1 AD.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class EpochDaysTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static final int MIN_YEAR = 1;
+    private static final int MAX_YEAR = 9999;
+
+    private static final int[] MONTH_DELTAS = {-1201, -25, -13, -12, -1, 1, 2, 11, 12, 13, 25};
+
+    // Zones with a daylight saving transition at midnight, or a day skipped.
+    private static final String[] TIME_ZONES = {
+            "UTC", "Asia/Shanghai", "America/Los_Angeles", "America/Sao_Paulo",
+            "Asia/Tehran", "Pacific/Apia", "Australia/Lord_Howe",
+    };
+
+    private GregorianCalendar mCalendar;
+
+    @Before
+    public void setUp() {
+        mCalendar = createCalendar(UTC);
+    }
+
+    @Test
+    public void testEpoch() {
+        assertEquals(0, EpochDays.of(1970, Calendar.JANUARY, 1));
+        assertEquals(1970, EpochDays.getYear(0));
+        assertEquals(Calendar.JANUARY, EpochDays.getMonth(0));
+        assertEquals(1, EpochDays.getDayOfMonth(0));
+        assertEquals(-1, EpochDays.of(1969, Calendar.DECEMBER, 31));
+    }
+
+    @Test
+    public void testMatchesCalendarOnEveryDay() {
+        mCalendar.set(MIN_YEAR, Calendar.JANUARY, 1);
+        int epochDay = EpochDays.fromMillis(mCalendar.getTimeInMillis(), UTC);
+        while (mCalendar.get(Calendar.YEAR) <= MAX_YEAR) {
+            final int year = mCalendar.get(Calendar.YEAR);
+            final int month = mCalendar.get(Calendar.MONTH);
+            final int dayOfMonth = mCalendar.get(Calendar.DAY_OF_MONTH);
+            if (EpochDays.of(year, month, dayOfMonth) != epochDay
+                    || EpochDays.getYear(epochDay) != year
+                    || EpochDays.getMonth(epochDay) != month
+                    || EpochDays.getDayOfMonth(epochDay) != dayOfMonth) {
+                assertEquals(format(year, month, dayOfMonth), format(epochDay));
+                assertEquals(epochDay, EpochDays.of(year, month, dayOfMonth));
+            }
+            mCalendar.add(Calendar.DAY_OF_MONTH, 1);
+            epochDay++;
+        }
+        assertEquals(EpochDays.of(MAX_YEAR + 1, Calendar.JANUARY, 1), epochDay);
+    }
+
+    @Test
+    public void testRollsOverLikeLenientCalendar() {
+        final int[][] dates = {
+                {2016, 12, 1}, {2016, -1, 1}, {2016, -13, 15}, {2016, 25, 31},
+                {2016, Calendar.FEBRUARY, 30}, {2015, Calendar.FEBRUARY, 29},
+                {2016, Calendar.MARCH, 0}, {2016, Calendar.JANUARY, -365}, {2016, 0, 400},
+        };
+        for (int[] date : dates) {
+            mCalendar.set(date[0], date[1], date[2]);
+            assertEquals(date[0] + "/" + date[1] + "/" + date[2],
+                    EpochDays.fromMillis(mCalendar.getTimeInMillis(), UTC),
+                    EpochDays.of(date[0], date[1], date[2]));
+        }
+    }
+
+    @Test
+    public void testAddMonthsMatchesCalendar() {
+        final int lastYear = MAX_YEAR - 101;
+        for (int year = MIN_YEAR + 101; year <= lastYear; year++) {
+            for (int month = Calendar.JANUARY; month <= Calendar.DECEMBER; month++) {
+                final int daysInMonth = EpochDays.getDaysInMonth(year, month);
+                // The first day, and the days which may be pinned to the end of a month.
+                for (int dayOfMonth = 1; dayOfMonth <= daysInMonth;
+                     dayOfMonth = dayOfMonth == 1 ? 28 : dayOfMonth + 1) {
+                    final int epochDay = EpochDays.of(year, month, dayOfMonth);
+                    for (int months : MONTH_DELTAS) {
+                        mCalendar.set(year, month, dayOfMonth);
+                        mCalendar.add(Calendar.MONTH, months);
+                        final int expected =
+                                EpochDays.fromMillis(mCalendar.getTimeInMillis(), UTC);
+                        final int actual = EpochDays.addMonths(epochDay, months);
+                        if (actual != expected) {
+                            assertEquals(format(year, month, dayOfMonth) + " + " + months,
+                                    format(expected), format(actual));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLeapYearsMatchCalendar() {
+        for (int year = MIN_YEAR; year <= MAX_YEAR; year++) {
+            assertEquals(String.valueOf(year),
+                    mCalendar.isLeapYear(year), EpochDays.isLeapYear(year));
+            for (int month = Calendar.JANUARY; month <= Calendar.DECEMBER; month++) {
+                mCalendar.set(year, month, 1);
+                assertEquals(year + "/" + month,
+                        mCalendar.getActualMaximum(Calendar.DAY_OF_MONTH),
+                        EpochDays.getDaysInMonth(year, month));
+            }
+        }
+    }
+
+    @Test
+    public void testMillisMatchCalendar() {
+        for (String id : TIME_ZONES) {
+            final TimeZone timeZone = TimeZone.getTimeZone(id);
+            final GregorianCalendar calendar = createCalendar(timeZone);
+            final int lastDay = EpochDays.of(2040, Calendar.JANUARY, 1);
+            for (int epochDay = EpochDays.of(1900, Calendar.JANUARY, 1); epochDay < lastDay;
+                 epochDay++) {
+                final int year = EpochDays.getYear(epochDay);
+                final int month = EpochDays.getMonth(epochDay);
+                final int dayOfMonth = EpochDays.getDayOfMonth(epochDay);
+                final String date = id + " " + format(year, month, dayOfMonth);
+
+                // The first moment of the day, a skipped midnight is moved forward.
+                final long millis = EpochDays.toMillis(epochDay, timeZone);
+                if (EpochDays.fromMillis(millis, timeZone) > epochDay) {
+                    // The whole day is skipped.
+                    assertTrue(date, EpochDays.fromMillis(millis - 1, timeZone) < epochDay);
+                    continue;
+                }
+                assertEquals(date, epochDay, EpochDays.fromMillis(millis, timeZone));
+                assertTrue(date, EpochDays.fromMillis(millis - 1, timeZone) < epochDay);
+
+                calendar.clear();
+                calendar.set(year, month, dayOfMonth);
+                final long midnight = calendar.getTimeInMillis();
+                if (millis != midnight) {
+                    // A midnight repeated by a transition, the calendar may take either.
+                    assertTrue(date, millis < midnight);
+                    assertEquals(date, midnight + timeZone.getOffset(midnight),
+                            millis + timeZone.getOffset(millis));
+                }
+            }
+        }
+    }
+
+    private static GregorianCalendar createCalendar(TimeZone timeZone) {
+        GregorianCalendar calendar = new GregorianCalendar(timeZone);
+        // Proleptic, like EpochDays.
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+        calendar.clear();
+        return calendar;
+    }
+
+    private static String format(int epochDay) {
+        return format(EpochDays.getYear(epochDay), EpochDays.getMonth(epochDay),
+                EpochDays.getDayOfMonth(epochDay));
+    }
+
+    private static String format(int year, int month, int dayOfMonth) {
+        return String.format("%04d-%02d-%02d", year, month + 1, dayOfMonth);
+    }
+}
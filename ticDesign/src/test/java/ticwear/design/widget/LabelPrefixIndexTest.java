@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ticwear.design.widget;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link LabelPrefixIndex} finds the first label starting with a prefix, like a scan
+ * of the labels in order would.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class LabelPrefixIndexTest {
+
+    private static final long SEED = 20161018L;
+    private static final int ROUNDS = 500;
+    private static final String ALPHABET = "abAB";
+
+    @Test
+    public void testFindsFirstLabelIgnoringCase() {
+        LabelPrefixIndex index = new LabelPrefixIndex(
+                new String[] {"March", "May", "mango", "April", "August"});
+
+        assertEquals(0, index.find("m"));
+        assertEquals(1, index.find("MAY"));
+        assertEquals(3, index.find("a"));
+        assertEquals(4, index.find("au"));
+        assertEquals(0, index.find(""));
+        assertEquals(-1, index.find("june"));
+        assertEquals(-1, index.find("mayday"));
+    }
+
+    @Test
+    public void testEmptyLabels() {
+        LabelPrefixIndex index = new LabelPrefixIndex(new String[0]);
+
+        assertEquals(-1, index.find(""));
+        assertEquals(-1, index.find("a"));
+    }
+
+    @Test
+    public void testMatchesScanOnRandomLabels() {
+        Random random = new Random(SEED);
+        for (int round = 0; round < ROUNDS; round++) {
+            String[] labels = new String[random.nextInt(40)];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = randomString(random, 4);
+            }
+            LabelPrefixIndex index = new LabelPrefixIndex(labels);
+
+            for (int i = 0; i < 20; i++) {
+                String prefix = randomString(random, 3);
+                assertEquals(prefix, scan(labels, prefix), index.find(prefix));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        char[] chars = new char[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+
+    private static int scan(String[] labels, String prefix) {
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].toLowerCase().startsWith(prefix.toLowerCase())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
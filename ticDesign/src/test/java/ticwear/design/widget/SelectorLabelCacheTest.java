@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016 Mobvoi Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package ticwear.design.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link SelectorLabelCache} keeps the labels of the most recently used indices.
+ *
+ * Created by tankery on 10/18/16.
+ */
+public class SelectorLabelCacheTest {
+
+    private static final int MAX_SIZE = 4;
+
+    private SelectorLabelCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new SelectorLabelCache(MAX_SIZE);
+    }
+
+    @Test
+    public void testGetsPutLabel() {
+        SelectorLabelCache.Label label = mCache.put(2016, "2016");
+        assertSame(label, mCache.get(2016));
+        assertEquals("2016", mCache.get(2016).text);
+        assertNull(mCache.get(2017));
+    }
+
+    @Test
+    public void testReplacesLabelOfSameIndex() {
+        mCache.put(1, "one");
+        SelectorLabelCache.Label label = mCache.put(1, "uno");
+        assertSame(label, mCache.get(1));
+        // Still room for the others.
+        for (int i = 2; i <= MAX_SIZE; i++) {
+            mCache.put(i, String.valueOf(i));
+        }
+        assertSame(label, mCache.get(1));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        for (int i = 0; i < MAX_SIZE; i++) {
+            mCache.put(i, String.valueOf(i));
+        }
+        // 0 is used again, so 1 is the least recently used.
+        assertNotNull(mCache.get(0));
+        mCache.put(MAX_SIZE, String.valueOf(MAX_SIZE));
+
+        assertNull(mCache.get(1));
+        assertNotNull(mCache.get(0));
+        for (int i = 2; i <= MAX_SIZE; i++) {
+            assertNotNull(String.valueOf(i), mCache.get(i));
+        }
+    }
+
+    @Test
+    public void testKeepsNegativeAndLargeIndices() {
+        mCache.put(-1, "-1");
+        mCache.put(Integer.MAX_VALUE, "max");
+        mCache.put(0, "0");
+        assertEquals("-1", mCache.get(-1).text);
+        assertEquals("max", mCache.get(Integer.MAX_VALUE).text);
+        assertEquals("0", mCache.get(0).text);
+    }
+
+    @Test
+    public void testClear() {
+        mCache.put(1, "1");
+        mCache.put(2, "2");
+        mCache.clear();
+        assertNull(mCache.get(1));
+        assertNull(mCache.get(2));
+        for (int i = 0; i < MAX_SIZE; i++) {
+            mCache.put(i, String.valueOf(i));
+        }
+        for (int i = 0; i < MAX_SIZE; i++) {
+            assertNotNull(String.valueOf(i), mCache.get(i));
+        }
+    }
+}